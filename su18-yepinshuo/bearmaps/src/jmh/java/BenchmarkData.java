@@ -0,0 +1,60 @@
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Inputs shared by the benchmarks: the OSM data and the queries in the same parameter files the
+ * tests use. Paths are relative to the bearmaps directory, which benchmarks must run from.
+ */
+class BenchmarkData {
+    static final String OSM_DB_PATH = "../library-su18/bearmaps/berkeley-2018.osm.xml";
+    static final String PATH_PARAMS_FILE = "path_params.txt";
+    static final String RASTER_PARAMS_FILE = "raster_params.txt";
+
+    /** Returns every query in <code>path_params.txt</code>. */
+    static List<RouteRequestParams> routeQueries() throws IOException {
+        List<String> lines = readParams(PATH_PARAMS_FILE);
+        List<RouteRequestParams> queries = new ArrayList<>();
+        for (int i = 0; i + 4 <= lines.size(); i += 4) {
+            queries.add(new RouteRequestParams.Builder()
+                    .setStartLon(Double.parseDouble(lines.get(i)))
+                    .setStartLat(Double.parseDouble(lines.get(i + 1)))
+                    .setEndLon(Double.parseDouble(lines.get(i + 2)))
+                    .setEndLat(Double.parseDouble(lines.get(i + 3)))
+                    .create());
+        }
+        return queries;
+    }
+
+    /** Returns every query in <code>raster_params.txt</code>. */
+    static List<RasterRequestParams> rasterQueries() throws IOException {
+        List<String> lines = readParams(RASTER_PARAMS_FILE);
+        List<RasterRequestParams> queries = new ArrayList<>();
+        for (int i = 0; i + 6 <= lines.size(); i += 6) {
+            queries.add(new RasterRequestParams.Builder()
+                    .setUllon(Double.parseDouble(lines.get(i)))
+                    .setUllat(Double.parseDouble(lines.get(i + 1)))
+                    .setLrlon(Double.parseDouble(lines.get(i + 2)))
+                    .setLrlat(Double.parseDouble(lines.get(i + 3)))
+                    .setW(Double.parseDouble(lines.get(i + 4)))
+                    .setH(Double.parseDouble(lines.get(i + 5)))
+                    .create());
+        }
+        return queries;
+    }
+
+    /** Returns the non-blank lines of a parameter file after its two comment lines. */
+    private static List<String> readParams(String file) throws IOException {
+        List<String> lines = Files.readAllLines(Paths.get(file), Charset.defaultCharset());
+        List<String> params = new ArrayList<>();
+        for (String line : lines.subList(2, lines.size())) {
+            if (!line.trim().isEmpty()) {
+                params.add(line.trim());
+            }
+        }
+        return params;
+    }
+}
@@ -0,0 +1,35 @@
+import bearmaps.bench.Workload;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+
+/**
+ * <code>GraphDB.closest</code> at random points over the map, the query every route and the
+ * distance matrix start with.
+ */
+public class ClosestWorkload implements Workload {
+    private GraphDB graph;
+    private final double[] lons = new double[QUERIES];
+    private final double[] lats = new double[QUERIES];
+    private int next;
+
+    @Override
+    public void setUp(String... params) {
+        graph = new GraphDB(BenchmarkData.OSM_DB_PATH);
+        Random random = new Random(61);
+        for (int i = 0; i < QUERIES; i += 1) {
+            lons[i] = MapServer.ROOT_ULLON + random.nextDouble() * MapServer.ROOT_LON_DELTA;
+            lats[i] = MapServer.ROOT_ULLAT - random.nextDouble() * MapServer.ROOT_LAT_DELTA;
+        }
+    }
+
+    @Override
+    public void run(Blackhole bh) {
+        int i = next;
+        next = (i + 1) & (QUERIES - 1);
+        bh.consume(graph.closest(lons[i], lats[i]));
+    }
+
+    /** Number of precomputed query points; a power of two. */
+    private static final int QUERIES = 1 << 12;
+}
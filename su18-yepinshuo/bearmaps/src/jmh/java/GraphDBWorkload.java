@@ -0,0 +1,35 @@
+import bearmaps.bench.Workload;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Builds a <code>GraphDB</code> from the Berkeley OSM file with one loader, or reads it from a
+ * binary snapshot. Takes the loader as its parameter: a <code>GraphDB.LoadMode</code>, or
+ * SNAPSHOT to read a snapshot written in setup.
+ */
+public class GraphDBWorkload implements Workload {
+    private String loader;
+    private File snapshot;
+
+    @Override
+    public void setUp(String... params) throws IOException {
+        loader = params[0];
+        if (loader.equals("SNAPSHOT")) {
+            snapshot = File.createTempFile("bearmaps", ".graph");
+            snapshot.deleteOnExit();
+            File source = new File(BenchmarkData.OSM_DB_PATH);
+            GraphSnapshot.write(new GraphDB(BenchmarkData.OSM_DB_PATH), snapshot, source);
+        }
+    }
+
+    @Override
+    public void run(Blackhole bh) throws IOException {
+        if (snapshot != null) {
+            bh.consume(GraphSnapshot.read(snapshot));
+            return;
+        }
+        bh.consume(new GraphDB(BenchmarkData.OSM_DB_PATH, GraphDB.LoadMode.valueOf(loader)));
+    }
+}
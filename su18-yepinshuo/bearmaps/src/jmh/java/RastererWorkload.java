@@ -0,0 +1,25 @@
+import bearmaps.bench.Workload;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+
+/** <code>Rasterer.getMapRaster</code> over the queries in <code>raster_params.txt</code>. */
+public class RastererWorkload implements Workload {
+    private Rasterer rasterer;
+    private List<RasterRequestParams> queries;
+    private int next;
+
+    @Override
+    public void setUp(String... params) throws IOException {
+        rasterer = new Rasterer();
+        queries = BenchmarkData.rasterQueries();
+    }
+
+    @Override
+    public void run(Blackhole bh) {
+        RasterRequestParams q = queries.get(next);
+        next = (next + 1) % queries.size();
+        bh.consume(rasterer.getMapRaster(q));
+    }
+}
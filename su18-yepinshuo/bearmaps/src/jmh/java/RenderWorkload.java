@@ -0,0 +1,45 @@
+import bearmaps.bench.Workload;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <code>MapServer.renderImage</code> for the rasters of <code>raster_params.txt</code>. Takes
+ * the overlay as its parameter: "none", or "route" to draw the first route of
+ * <code>path_params.txt</code> over every raster. Tiles come from the server's tile cache,
+ * which the warmup fills, so this measures compositing rather than PNG decoding.
+ */
+public class RenderWorkload implements Workload {
+    private List<RasterResultParams> rasters;
+    private RouteOverlay route;
+    private int next;
+
+    @Override
+    public void setUp(String... params) throws IOException {
+        MapServer.initialize();
+        Rasterer rasterer = new Rasterer();
+        rasters = new ArrayList<>();
+        for (RasterRequestParams q : BenchmarkData.rasterQueries()) {
+            RasterResultParams result = rasterer.getMapRaster(q);
+            if (result.querySuccess) {
+                rasters.add(result);
+            }
+        }
+        route = RouteOverlay.EMPTY;
+        if (params[0].equals("route")) {
+            RouteRequestParams q = BenchmarkData.routeQueries().get(0);
+            GraphDB graph = new GraphDB(BenchmarkData.OSM_DB_PATH);
+            route = RouteOverlay.of(graph,
+                    Router.shortestPath(graph, q.startLon, q.startLat, q.endLon, q.endLat));
+        }
+    }
+
+    @Override
+    public void run(Blackhole bh) {
+        RasterResultParams raster = rasters.get(next);
+        next = (next + 1) % rasters.size();
+        bh.consume(MapServer.renderImage(raster, route));
+    }
+}
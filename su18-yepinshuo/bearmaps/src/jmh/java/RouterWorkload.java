@@ -0,0 +1,60 @@
+import bearmaps.bench.Workload;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Route queries from <code>path_params.txt</code>. Takes two parameters: the length, "short",
+ * "medium" or "long" for that third of the queries by straight-line length, and the algorithm,
+ * "astar" for A*, "alt" for A* with 16 ALT landmarks or "ch" for the contraction hierarchy.
+ */
+public class RouterWorkload implements Workload {
+    private GraphDB graph;
+    private boolean ch;
+    private List<RouteRequestParams> queries;
+    private int next;
+
+    @Override
+    public void setUp(String... params) throws IOException {
+        String length = params[0];
+        String algorithm = params[1];
+        graph = new GraphDB(BenchmarkData.OSM_DB_PATH);
+        ch = algorithm.equals("ch");
+        if (ch) {
+            graph.prepareContractionHierarchy();
+        } else if (algorithm.equals("alt")) {
+            graph.prepareLandmarks(graph.getCostModel(CostModel.DISTANCE), LANDMARKS);
+        }
+        List<RouteRequestParams> all = BenchmarkData.routeQueries();
+        all.sort(Comparator.comparingDouble(q ->
+                GraphDB.greatCircle(q.startLon, q.startLat, q.endLon, q.endLat)));
+        int third = (all.size() + 2) / 3;
+        switch (length) {
+            case "short":
+                queries = all.subList(0, third);
+                break;
+            case "medium":
+                queries = all.subList(third, Math.min(2 * third, all.size()));
+                break;
+            default:
+                queries = all.subList(Math.min(2 * third, all.size() - 1), all.size());
+                break;
+        }
+    }
+
+    @Override
+    public void run(Blackhole bh) {
+        RouteRequestParams q = queries.get(next);
+        next = (next + 1) % queries.size();
+        if (ch) {
+            bh.consume(Router.shortestPathCH(graph, q.startLon, q.startLat, q.endLon, q.endLat));
+            return;
+        }
+        bh.consume(Router.shortestPath(graph, q.startLon, q.startLat, q.endLon, q.endLat));
+    }
+
+    /** Landmarks for the "alt" algorithm. */
+    private static final int LANDMARKS = 16;
+}
@@ -0,0 +1,24 @@
+package bearmaps.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the bearmaps benchmarks with the GC profiler, so that every result also reports the
+ * allocation rate per operation. Run from the bearmaps directory, e.g. with
+ * <code>mvn -P jmh package</code> and then <code>java -jar target/benchmarks.jar</code>; any JMH
+ * command line options are passed on, e.g. a regular expression to select benchmarks or
+ * <code>-p length=long</code>.
+ */
+public class Benchmarks {
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
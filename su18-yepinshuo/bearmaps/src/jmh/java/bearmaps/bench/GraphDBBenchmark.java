@@ -0,0 +1,44 @@
+package bearmaps.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to build a <code>GraphDB</code> with each loader and from a binary snapshot, see
+ * GraphDBWorkload. Each invocation is a full load, so this runs in single-shot mode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+public class GraphDBBenchmark {
+    /** A <code>GraphDB.LoadMode</code>, or SNAPSHOT to read a snapshot written in setup. */
+    @Param({"STREAMING", "TWO_PASS", "SAX", "SNAPSHOT"})
+    public String loader;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp() throws Exception {
+        workload = Workload.create("GraphDBWorkload", loader);
+    }
+
+    @Benchmark
+    public void construct(Blackhole bh) throws Exception {
+        workload.run(bh);
+    }
+}
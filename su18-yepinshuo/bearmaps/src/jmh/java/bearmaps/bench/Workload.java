@@ -0,0 +1,35 @@
+package bearmaps.bench;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * One benchmarked operation on the bearmaps classes. Those live in the default package, which
+ * a named package cannot import, while JMH only accepts benchmarks in a named package. So each
+ * operation is written in the default package against this interface, and the benchmarks here
+ * create it by class name with <code>create</code>. After setup every call is a plain interface
+ * call to a single implementation, which the JIT inlines.
+ */
+public interface Workload {
+    /**
+     * Prepares the inputs. Called once per trial, before any call to <code>run</code>.
+     * @param params The benchmark's parameters, in the order its <code>@Param</code> fields are
+     *               declared.
+     */
+    void setUp(String... params) throws Exception;
+
+    /** Runs the operation once and hands its result to <code>bh</code>. */
+    void run(Blackhole bh) throws Exception;
+
+    /**
+     * Creates and sets up the workload with the given class name.
+     * @param className Name of a public class in the default package implementing Workload.
+     * @param params Passed on to <code>setUp</code>.
+     * @return The workload, ready to run.
+     */
+    static Workload create(String className, String... params) throws Exception {
+        Workload workload = (Workload) Class.forName(className)
+                .getDeclaredConstructor().newInstance();
+        workload.setUp(params);
+        return workload;
+    }
+}
@@ -0,0 +1,304 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Compressed sparse row (CSR) representation of the road graph. OSM ids are remapped to dense
+ * int indices in [0, size()), coordinates are kept in primitive arrays and the adjacency of
+ * vertex i is the slice targets[offsets[i]] ... targets[offsets[i + 1] - 1].
+ *
+ * Routing and nearest-neighbor code should work on indices and only translate back to OSM ids
+ * at the boundary, using <code>id</code> and <code>indexOf</code>. Indices are assigned by the
+ * loader, and <code>GraphDB</code> then renumbers them along a Hilbert curve with
+ * <code>permute(hilbertOrder())</code>, so nearby vertices are nearby in memory.
+ */
+public class CompactGraph {
+    /** OSM id of every vertex, by index. */
+    private final long[] ids;
+    /** All OSM ids in ascending order, used to look up the index of an id. */
+    private final long[] sortedIds;
+    /** sortedIndex[i] is the index of the vertex whose id is sortedIds[i]. */
+    private final int[] sortedIndex;
+    private final double[] lons;
+    private final double[] lats;
+    /** Edges of vertex i are in [offsets[i], offsets[i + 1]). Length is size() + 1. */
+    private final int[] offsets;
+    /** Index of the vertex at the other end of each edge. */
+    private final int[] targets;
+    /** Great-circle length of each edge in miles. */
+    private final double[] lengths;
+
+    /**
+     * Builds the compact graph from the vertices of a cleaned GraphDB. Duplicate neighbors
+     * (e.g. two ways sharing a segment) are collapsed into a single edge.
+     * @param vMap Map from OSM id to vertex, as built by GraphBuildingHandler.
+     */
+    public CompactGraph(Map<Long, GraphDB.Vertex> vMap) {
+        int n = vMap.size();
+        ids = new long[n];
+        lons = new double[n];
+        lats = new double[n];
+        int i = 0;
+        for (GraphDB.Vertex v : vMap.values()) {
+            ids[i] = v.id;
+            lons[i] = v.lon;
+            lats[i] = v.lat;
+            i += 1;
+        }
+        sortedIds = new long[n];
+        sortedIndex = new int[n];
+        buildLookup(ids, sortedIds, sortedIndex);
+
+        offsets = new int[n + 1];
+        int total = 0;
+        for (GraphDB.Vertex v : vMap.values()) {
+            total += v.neighbors.size();
+        }
+        int[] allTargets = new int[total];
+        int[] seenBy = new int[n];
+        int m = 0;
+        for (i = 0; i < n; i += 1) {
+            offsets[i] = m;
+            for (long w : vMap.get(ids[i]).neighbors) {
+                int j = indexOf(w);
+                if (j < 0 || seenBy[j] == i + 1) {
+                    continue;
+                }
+                seenBy[j] = i + 1;
+                allTargets[m] = j;
+                m += 1;
+            }
+        }
+        offsets[n] = m;
+        targets = Arrays.copyOf(allTargets, m);
+        lengths = new double[m];
+        for (i = 0; i < n; i += 1) {
+            for (int e = offsets[i]; e < offsets[i + 1]; e += 1) {
+                lengths[e] = distance(i, targets[e]);
+            }
+        }
+    }
+
+    /**
+     * Creates a compact graph directly from its arrays, e.g. when reading a snapshot. The arrays
+     * are used as is and must not be modified afterwards.
+     */
+    CompactGraph(long[] ids, double[] lons, double[] lats,
+                 int[] offsets, int[] targets, double[] lengths) {
+        this.ids = ids;
+        this.lons = lons;
+        this.lats = lats;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.lengths = lengths;
+        sortedIds = new long[ids.length];
+        sortedIndex = new int[ids.length];
+        buildLookup(ids, sortedIds, sortedIndex);
+    }
+
+    /** Builds the sorted id arrays used by <code>indexOf</code>. */
+    private static void buildLookup(long[] ids, long[] sortedIds, int[] sortedIndex) {
+        System.arraycopy(ids, 0, sortedIds, 0, ids.length);
+        Arrays.parallelSort(sortedIds);
+        IntStream.range(0, ids.length).parallel()
+                .forEach(i -> sortedIndex[Arrays.binarySearch(sortedIds, ids[i])] = i);
+    }
+
+    /**
+     * Returns the vertices in the order they are met along a Hilbert curve through the bounding
+     * box of their projected coordinates. Vertices close on the map are close in this order, so
+     * a graph laid out in it by <code>permute</code> keeps the neighbors of a vertex, and the
+     * vertices a search or the k-d tree visits one after another, on nearby cache lines.
+     * @return <code>order[i]</code> is the vertex that comes i-th along the curve.
+     */
+    public int[] hilbertOrder() {
+        long[] positions = hilbertPositions();
+        int n = positions.length;
+        /*
+         * Curve position in the high bits, vertex in the low bits, so one sort does it all.
+         * Positions take all 32 high bits, so the sign bit is flipped to sort them unsigned.
+         */
+        long[] keys = new long[n];
+        for (int v = 0; v < n; v += 1) {
+            keys[v] = (positions[v] << Integer.SIZE | v) ^ Long.MIN_VALUE;
+        }
+        Arrays.parallelSort(keys);
+        int[] order = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    /** Returns the position of every vertex along the curve of <code>hilbertOrder</code>. */
+    long[] hilbertPositions() {
+        int n = size();
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        double minX = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int v = 0; v < n; v += 1) {
+            xs[v] = GraphDB.projectToX(lons[v], lats[v]);
+            ys[v] = GraphDB.projectToY(lons[v], lats[v]);
+            minX = Math.min(minX, xs[v]);
+            maxX = Math.max(maxX, xs[v]);
+            minY = Math.min(minY, ys[v]);
+            maxY = Math.max(maxY, ys[v]);
+        }
+        double scale = (HILBERT_SIDE - 1) / Math.max(Math.max(maxX - minX, maxY - minY), 1e-12);
+        long[] positions = new long[n];
+        for (int v = 0; v < n; v += 1) {
+            int x = (int) ((xs[v] - minX) * scale);
+            int y = (int) ((ys[v] - minY) * scale);
+            positions[v] = hilbertIndex(x, y);
+        }
+        return positions;
+    }
+
+    /**
+     * Returns the distance along the Hilbert curve filling a <code>HILBERT_SIDE</code> square
+     * grid of the cell (x, y).
+     * @source https://en.wikipedia.org/wiki/Hilbert_curve
+     */
+    static long hilbertIndex(int x, int y) {
+        long d = 0;
+        for (int s = HILBERT_SIDE / 2; s > 0; s /= 2) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            d += (long) s * s * ((3 * rx) ^ ry);
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = HILBERT_SIDE - 1 - x;
+                    y = HILBERT_SIDE - 1 - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+
+    /**
+     * Returns the same graph with its vertices renumbered, vertex <code>order[i]</code> becoming
+     * vertex i, and the edges of every vertex sorted by target. OSM ids, and so
+     * <code>id</code> and <code>indexOf</code>, are unaffected.
+     * @param order A permutation of the vertices, e.g. <code>hilbertOrder()</code>.
+     * @return The renumbered graph.
+     */
+    public CompactGraph permute(int[] order) {
+        int n = size();
+        int[] rank = new int[n];
+        long[] newIds = new long[n];
+        double[] newLons = new double[n];
+        double[] newLats = new double[n];
+        int[] newOffsets = new int[n + 1];
+        for (int i = 0; i < n; i += 1) {
+            int v = order[i];
+            rank[v] = i;
+            newIds[i] = ids[v];
+            newLons[i] = lons[v];
+            newLats[i] = lats[v];
+            newOffsets[i + 1] = newOffsets[i] + offsets[v + 1] - offsets[v];
+        }
+        int[] newTargets = new int[targets.length];
+        double[] newLengths = new double[lengths.length];
+        IntStream.range(0, n).parallel().forEach(i -> {
+            int v = order[i];
+            int start = newOffsets[i];
+            for (int e = offsets[v]; e < offsets[v + 1]; e += 1) {
+                /* Insertion sort by target; road vertices have a handful of edges. */
+                int w = rank[targets[e]];
+                double length = lengths[e];
+                int j = start + e - offsets[v];
+                while (j > start && newTargets[j - 1] > w) {
+                    newTargets[j] = newTargets[j - 1];
+                    newLengths[j] = newLengths[j - 1];
+                    j -= 1;
+                }
+                newTargets[j] = w;
+                newLengths[j] = length;
+            }
+        });
+        return new CompactGraph(newIds, newLons, newLats, newOffsets, newTargets, newLengths);
+    }
+
+    /** Returns the number of vertices. */
+    public int size() {
+        return ids.length;
+    }
+
+    /** Returns the number of directed edges (each road segment is stored in both directions). */
+    public int edgeCount() {
+        return targets.length;
+    }
+
+    /**
+     * Returns the dense index of an OSM id.
+     * @param id OSM id of a vertex.
+     * @return The index of that vertex, or -1 if it is not in the graph.
+     */
+    public int indexOf(long id) {
+        int k = Arrays.binarySearch(sortedIds, id);
+        return k < 0 ? -1 : sortedIndex[k];
+    }
+
+    /** Returns the OSM id of the vertex at index <code>v</code>. */
+    public long id(int v) {
+        return ids[v];
+    }
+
+    public double lon(int v) {
+        return lons[v];
+    }
+
+    public double lat(int v) {
+        return lats[v];
+    }
+
+    /** Returns the position of the first edge of vertex <code>v</code>. */
+    public int firstEdge(int v) {
+        return offsets[v];
+    }
+
+    /** Returns one past the position of the last edge of vertex <code>v</code>. */
+    public int endEdge(int v) {
+        return offsets[v + 1];
+    }
+
+    /**
+     * Returns the edge from <code>v</code> to <code>w</code>, or -1 if they are not adjacent.
+     * Scans the edges of <code>v</code>, which are few on a road network.
+     */
+    public int edge(int v, int w) {
+        for (int e = offsets[v]; e < offsets[v + 1]; e += 1) {
+            if (targets[e] == w) {
+                return e;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the index of the vertex edge <code>e</code> points to. */
+    public int target(int e) {
+        return targets[e];
+    }
+
+    /** Returns the great-circle length of edge <code>e</code> in miles. */
+    public double length(int e) {
+        return lengths[e];
+    }
+
+    /**
+     * Returns the great-circle distance between the vertices at indices v and w, in miles.
+     * Same formula as <code>GraphDB.distance</code>.
+     */
+    public double distance(int v, int w) {
+        return GraphDB.greatCircle(lons[v], lats[v], lons[w], lats[w]);
+    }
+
+    /** Side of the grid the Hilbert curve fills, so curve positions take 32 bits. */
+    private static final int HILBERT_SIDE = 1 << 16;
+}
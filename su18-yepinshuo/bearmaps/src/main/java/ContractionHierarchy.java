@@ -0,0 +1,483 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Contraction Hierarchies (CH) over a <code>CompactGraph</code>.
+ *
+ * Preprocessing contracts vertices one at a time, least important first (ranked by edge
+ * difference plus the number of already contracted neighbors). Contracting v adds a shortcut
+ * u - w for every pair of remaining neighbors whose shortest path goes through v, which is
+ * checked with a bounded witness search. Every vertex then keeps only its edges to vertices
+ * contracted after it, the "upward" graph.
+ *
+ * A query runs Dijkstra upward from both endpoints and stops once neither frontier can improve
+ * the best meeting point, so it only ever explores the small top of the hierarchy and its cost
+ * barely depends on route length. Shortcuts are unpacked into original edges afterwards, so the
+ * result is a shortest path in the original graph, the same as <code>Router.shortestPath</code>.
+ *
+ * @source https://en.wikipedia.org/wiki/Contraction_hierarchies
+ */
+public class ContractionHierarchy {
+    /**
+     * Witness searches give up after settling this many vertices, which may add extra shortcuts
+     * but never loses a shortest path. Searches that only estimate a priority use the smaller
+     * limit, since they run far more often than actual contractions.
+     */
+    private static final int WITNESS_SETTLE_LIMIT = 500;
+    private static final int ESTIMATE_SETTLE_LIMIT = 40;
+
+    private final CompactGraph graph;
+    /** rank[v] is the position of v in the contraction order. */
+    private final int[] rank;
+    /** Upward edges of v are in [upOffsets[v], upOffsets[v + 1]). */
+    private final int[] upOffsets;
+    private final int[] upTargets;
+    private final double[] upWeights;
+    /** The contracted vertex a shortcut skips, or -1 for an original edge. */
+    private final int[] upMiddles;
+
+    /** Per-thread forward and backward search state for queries. */
+    private final ThreadLocal<SearchContext[]> contexts;
+
+    /**
+     * Runs the preprocessing. This takes a while on large graphs and is meant to be done once,
+     * at startup.
+     * @param graph The graph to contract. Edges are assumed to be two-way.
+     */
+    public ContractionHierarchy(CompactGraph graph) {
+        this.graph = graph;
+        int n = graph.size();
+        Builder b = new Builder(graph);
+        b.contractAll();
+
+        rank = b.rank;
+        upOffsets = new int[n + 1];
+        for (int v = 0; v < n; v += 1) {
+            upOffsets[v + 1] = upOffsets[v] + b.upCount[v];
+        }
+        int m = upOffsets[n];
+        upTargets = new int[m];
+        upWeights = new double[m];
+        upMiddles = new int[m];
+        for (int v = 0; v < n; v += 1) {
+            System.arraycopy(b.upTargets[v], 0, upTargets, upOffsets[v], b.upCount[v]);
+            System.arraycopy(b.upWeights[v], 0, upWeights, upOffsets[v], b.upCount[v]);
+            System.arraycopy(b.upMiddles[v], 0, upMiddles, upOffsets[v], b.upCount[v]);
+        }
+        contexts = ThreadLocal.withInitial(() ->
+                new SearchContext[]{new SearchContext(graph), new SearchContext(graph)});
+    }
+
+    public CompactGraph graph() {
+        return graph;
+    }
+
+    /** Returns the number of upward edges, original edges and shortcuts together. */
+    public int upwardEdgeCount() {
+        return upTargets.length;
+    }
+
+    /**
+     * Returns the shortest path between two vertices as OSM ids, start first.
+     * @param s Compact index of the start vertex.
+     * @param t Compact index of the destination vertex.
+     * @return The path, or an empty list if t cannot be reached from s.
+     */
+    public List<Long> shortestPath(int s, int t) {
+        SearchContext[] pair = contexts.get();
+        SearchContext fwd = pair[0];
+        SearchContext bwd = pair[1];
+        fwd.begin();
+        bwd.begin();
+        fwd.reach(s, 0, -1, 0);
+        fwd.fringe().insert(s, 0);
+        bwd.reach(t, 0, -1, 0);
+        bwd.fringe().insert(t, 0);
+
+        double best = Double.POSITIVE_INFINITY;
+        int meet = -1;
+        while (true) {
+            double fwdMin = fwd.fringe().isEmpty()
+                    ? Double.POSITIVE_INFINITY : fwd.fringe().key(fwd.fringe().min());
+            double bwdMin = bwd.fringe().isEmpty()
+                    ? Double.POSITIVE_INFINITY : bwd.fringe().key(bwd.fringe().min());
+            if (Math.min(fwdMin, bwdMin) >= best) {
+                break;
+            }
+            SearchContext sc = fwdMin <= bwdMin ? fwd : bwd;
+            SearchContext other = sc == fwd ? bwd : fwd;
+            int v = sc.fringe().removeMin();
+            sc.settle(v);
+            if (other.isReached(v) && sc.distTo(v) + other.distTo(v) < best) {
+                best = sc.distTo(v) + other.distTo(v);
+                meet = v;
+            }
+            relaxUpward(sc, v);
+        }
+        Metrics.SETTLED_NODES.record(fwd.settledCount() + bwd.settledCount());
+        if (meet < 0) {
+            return Collections.emptyList();
+        }
+
+        /* Hierarchy path s ... meet ... t, then unpack every shortcut along it. */
+        LinkedList<Integer> upPath = new LinkedList<>();
+        for (int x = meet; x != -1; x = fwd.edgeTo(x)) {
+            upPath.addFirst(x);
+        }
+        for (int x = bwd.edgeTo(meet); x != -1; x = bwd.edgeTo(x)) {
+            upPath.addLast(x);
+        }
+        List<Long> path = new ArrayList<>();
+        path.add(graph.id(s));
+        Integer prev = null;
+        for (int x : upPath) {
+            if (prev != null) {
+                unpack(prev, x, path);
+            }
+            prev = x;
+        }
+        return path;
+    }
+
+    /**
+     * Returns the shortest distance from every source to every target with the bucket algorithm:
+     * an upward search from each target leaves its distance at every vertex it settles, and an
+     * upward search from each source then meets those entries, so the matrix costs one upward
+     * search per source and per target. Searches run in parallel.
+     * @param sources Compact indices of the sources.
+     * @param targets Compact indices of the targets.
+     * @return <code>result[i][j]</code> is the distance from source i to target j, or
+     * <code>Double.POSITIVE_INFINITY</code> if there is no path.
+     */
+    public double[][] distanceMatrix(int[] sources, int[] targets) {
+        int[][] reached = new int[targets.length][];
+        double[][] dists = new double[targets.length][];
+        IntStream.range(0, targets.length).parallel().forEach(j -> {
+            SearchContext sc = contexts.get()[1];
+            int[] settled = searchUpward(sc, targets[j]);
+            double[] d = new double[settled.length];
+            for (int k = 0; k < settled.length; k += 1) {
+                d[k] = sc.distTo(settled[k]);
+            }
+            reached[j] = settled;
+            dists[j] = d;
+        });
+
+        /* Bucket entries of vertex v are in [bucketOffsets[v], bucketOffsets[v + 1]). */
+        int n = graph.size();
+        int[] bucketOffsets = new int[n + 1];
+        for (int[] settled : reached) {
+            for (int v : settled) {
+                bucketOffsets[v + 1] += 1;
+            }
+        }
+        for (int v = 0; v < n; v += 1) {
+            bucketOffsets[v + 1] += bucketOffsets[v];
+        }
+        int[] bucketTargets = new int[bucketOffsets[n]];
+        double[] bucketDists = new double[bucketOffsets[n]];
+        int[] fill = Arrays.copyOf(bucketOffsets, n);
+        for (int j = 0; j < targets.length; j += 1) {
+            for (int k = 0; k < reached[j].length; k += 1) {
+                int slot = fill[reached[j][k]]++;
+                bucketTargets[slot] = j;
+                bucketDists[slot] = dists[j][k];
+            }
+        }
+
+        double[][] result = new double[sources.length][];
+        IntStream.range(0, sources.length).parallel().forEach(i -> {
+            double[] row = new double[targets.length];
+            Arrays.fill(row, Double.POSITIVE_INFINITY);
+            SearchContext sc = contexts.get()[0];
+            for (int v : searchUpward(sc, sources[i])) {
+                double d = sc.distTo(v);
+                for (int b = bucketOffsets[v]; b < bucketOffsets[v + 1]; b += 1) {
+                    row[bucketTargets[b]] = Math.min(row[bucketTargets[b]], d + bucketDists[b]);
+                }
+            }
+            result[i] = row;
+        });
+        return result;
+    }
+
+    /** Runs a full upward search from s and returns the vertices it settled, in order. */
+    private int[] searchUpward(SearchContext sc, int s) {
+        sc.begin();
+        sc.reach(s, 0, -1, 0);
+        sc.fringe().insert(s, 0);
+        int[] settled = new int[64];
+        int count = 0;
+        while (!sc.fringe().isEmpty()) {
+            int v = sc.fringe().removeMin();
+            sc.settle(v);
+            if (count == settled.length) {
+                settled = Arrays.copyOf(settled, count * 2);
+            }
+            settled[count++] = v;
+            relaxUpward(sc, v);
+        }
+        return Arrays.copyOf(settled, count);
+    }
+
+    private void relaxUpward(SearchContext sc, int v) {
+        for (int e = upOffsets[v]; e < upOffsets[v + 1]; e += 1) {
+            int w = upTargets[e];
+            double d = sc.distTo(v) + upWeights[e];
+            if (sc.isSettled(w)) {
+                continue;
+            }
+            if (!sc.isReached(w)) {
+                sc.reach(w, d, v, 0);
+                sc.fringe().insert(w, d);
+            } else if (d < sc.distTo(w)) {
+                sc.relax(w, d, v);
+                sc.fringe().decreaseKey(w, d);
+            }
+        }
+    }
+
+    /** Appends the original vertices from a (exclusive) to b (inclusive) to path. */
+    private void unpack(int a, int b, List<Long> path) {
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = a;
+        stack[top++] = b;
+        while (top > 0) {
+            int to = stack[--top];
+            int from = stack[--top];
+            int middle = upMiddles[upEdge(from, to)];
+            if (middle < 0) {
+                path.add(graph.id(to));
+            } else {
+                if (top + 4 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[top++] = middle;
+                stack[top++] = to;
+                stack[top++] = from;
+                stack[top++] = middle;
+            }
+        }
+    }
+
+    /** Returns the position of the upward edge between a and b, stored at the lower ranked one. */
+    private int upEdge(int a, int b) {
+        int lo = rank[a] < rank[b] ? a : b;
+        int hi = lo == a ? b : a;
+        for (int e = upOffsets[lo]; e < upOffsets[lo + 1]; e += 1) {
+            if (upTargets[e] == hi) {
+                return e;
+            }
+        }
+        throw new IllegalStateException("No edge between " + graph.id(a) + " and " + graph.id(b));
+    }
+
+    /** Mutable graph used while contracting. Each undirected edge is stored at both ends. */
+    private static class Builder {
+        private final int n;
+        private int[][] targets;
+        private double[][] weights;
+        private int[][] middles;
+        private int[] degree;
+        private final boolean[] contracted;
+        private final int[] deletedNeighbors;
+        private final int[] rank;
+
+        private final int[][] upTargets;
+        private final double[][] upWeights;
+        private final int[][] upMiddles;
+        private final int[] upCount;
+
+        /** Witness search state, stamped like SearchContext. */
+        private final double[] witnessDist;
+        private final int[] witnessStamp;
+        private final IndexedMinHeap witnessFringe;
+        private int witnessEpoch;
+
+        Builder(CompactGraph g) {
+            n = g.size();
+            targets = new int[n][];
+            weights = new double[n][];
+            middles = new int[n][];
+            degree = new int[n];
+            for (int v = 0; v < n; v += 1) {
+                int d = g.endEdge(v) - g.firstEdge(v);
+                targets[v] = new int[Math.max(d, 2)];
+                weights[v] = new double[Math.max(d, 2)];
+                middles[v] = new int[Math.max(d, 2)];
+                for (int e = g.firstEdge(v); e < g.endEdge(v); e += 1) {
+                    addOrImproveHalf(v, g.target(e), g.length(e), -1);
+                }
+            }
+            contracted = new boolean[n];
+            deletedNeighbors = new int[n];
+            rank = new int[n];
+            upTargets = new int[n][];
+            upWeights = new double[n][];
+            upMiddles = new int[n][];
+            upCount = new int[n];
+            witnessDist = new double[n];
+            witnessStamp = new int[n];
+            witnessFringe = new IndexedMinHeap(n);
+        }
+
+        void contractAll() {
+            IndexedMinHeap order = new IndexedMinHeap(n);
+            for (int v = 0; v < n; v += 1) {
+                order.insert(v, priority(v));
+            }
+            int next = 0;
+            while (!order.isEmpty()) {
+                int v = order.removeMin();
+                /* Lazy update: priorities go stale as neighbors get contracted. */
+                double p = priority(v);
+                if (!order.isEmpty() && p > order.key(order.min())) {
+                    order.insert(v, p);
+                    continue;
+                }
+                contract(v);
+                rank[v] = next;
+                next += 1;
+            }
+        }
+
+        /** Edge difference plus the number of contracted neighbors; lower goes first. */
+        private double priority(int v) {
+            int shortcuts = addShortcuts(v, false);
+            int remaining = 0;
+            for (int i = 0; i < degree[v]; i += 1) {
+                if (!contracted[targets[v][i]]) {
+                    remaining += 1;
+                }
+            }
+            return 2 * (shortcuts - remaining) + deletedNeighbors[v];
+        }
+
+        private void contract(int v) {
+            addShortcuts(v, true);
+            int count = 0;
+            upTargets[v] = new int[degree[v]];
+            upWeights[v] = new double[degree[v]];
+            upMiddles[v] = new int[degree[v]];
+            for (int i = 0; i < degree[v]; i += 1) {
+                int w = targets[v][i];
+                if (!contracted[w]) {
+                    upTargets[v][count] = w;
+                    upWeights[v][count] = weights[v][i];
+                    upMiddles[v][count] = middles[v][i];
+                    count += 1;
+                    deletedNeighbors[w] += 1;
+                }
+            }
+            upCount[v] = count;
+            contracted[v] = true;
+            /* v's edges are no longer needed in the working graph. */
+            targets[v] = null;
+            weights[v] = null;
+            middles[v] = null;
+            degree[v] = 0;
+        }
+
+        /**
+         * Counts, and if <code>add</code> is true inserts, the shortcuts needed to contract v.
+         * @return The number of shortcuts.
+         */
+        private int addShortcuts(int v, boolean add) {
+            int shortcuts = 0;
+            for (int i = 0; i < degree[v]; i += 1) {
+                int u = targets[v][i];
+                if (contracted[u]) {
+                    continue;
+                }
+                double maxLimit = 0;
+                for (int j = 0; j < degree[v]; j += 1) {
+                    if (j != i && !contracted[targets[v][j]]) {
+                        maxLimit = Math.max(maxLimit, weights[v][i] + weights[v][j]);
+                    }
+                }
+                int settleLimit = add ? WITNESS_SETTLE_LIMIT : ESTIMATE_SETTLE_LIMIT;
+                witnessSearch(u, v, maxLimit, settleLimit);
+                for (int j = 0; j < degree[v]; j += 1) {
+                    int w = targets[v][j];
+                    if (j == i || contracted[w]) {
+                        continue;
+                    }
+                    double via = weights[v][i] + weights[v][j];
+                    if (witnessStamp[w] == witnessEpoch && witnessDist[w] <= via) {
+                        continue;
+                    }
+                    shortcuts += 1;
+                    if (add) {
+                        addOrImprove(u, w, via, v);
+                    }
+                }
+            }
+            return shortcuts;
+        }
+
+        /** Dijkstra from source over uncontracted vertices other than skip, up to limit. */
+        private void witnessSearch(int source, int skip, double limit, int settleLimit) {
+            witnessEpoch += 1;
+            witnessFringe.clear();
+            witnessStamp[source] = witnessEpoch;
+            witnessDist[source] = 0;
+            witnessFringe.insert(source, 0);
+            int settled = 0;
+            while (!witnessFringe.isEmpty() && settled < settleLimit) {
+                int x = witnessFringe.removeMin();
+                settled += 1;
+                if (witnessDist[x] > limit) {
+                    break;
+                }
+                for (int i = 0; i < degree[x]; i += 1) {
+                    int y = targets[x][i];
+                    if (y == skip || contracted[y]) {
+                        continue;
+                    }
+                    double d = witnessDist[x] + weights[x][i];
+                    if (witnessStamp[y] != witnessEpoch) {
+                        witnessStamp[y] = witnessEpoch;
+                        witnessDist[y] = d;
+                        witnessFringe.insert(y, d);
+                    } else if (d < witnessDist[y] && witnessFringe.contains(y)) {
+                        witnessDist[y] = d;
+                        witnessFringe.decreaseKey(y, d);
+                    }
+                }
+            }
+        }
+
+        /** Adds the edges u - w and w - u, or lowers their weight if they already exist. */
+        private void addOrImprove(int u, int w, double weight, int middle) {
+            addOrImproveHalf(u, w, weight, middle);
+            addOrImproveHalf(w, u, weight, middle);
+        }
+
+        private void addOrImproveHalf(int u, int w, double weight, int middle) {
+            for (int i = 0; i < degree[u]; i += 1) {
+                if (targets[u][i] == w) {
+                    if (weight < weights[u][i]) {
+                        weights[u][i] = weight;
+                        middles[u][i] = middle;
+                    }
+                    return;
+                }
+            }
+            if (degree[u] == targets[u].length) {
+                int capacity = targets[u].length * 2;
+                targets[u] = Arrays.copyOf(targets[u], capacity);
+                weights[u] = Arrays.copyOf(weights[u], capacity);
+                middles[u] = Arrays.copyOf(middles[u], capacity);
+            }
+            targets[u][degree[u]] = w;
+            weights[u][degree[u]] = weight;
+            middles[u][degree[u]] = middle;
+            degree[u] += 1;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * What a route minimises: a cost for every edge of a <code>CompactGraph</code>, computed once
+ * into an array aligned with the edges so that searches never look at way attributes or strings.
+ *
+ * A* needs a lower bound on the cost from any vertex to the destination. Every edge is at least
+ * as long as the great-circle distance between its ends, so if no edge costs less than
+ * <code>minCostPerMile</code> per mile of its length, then the great-circle distance times
+ * <code>minCostPerMile</code> never overestimates. The bound is measured from the costs
+ * themselves, so it holds for any profile, including custom ones.
+ */
+public class CostModel {
+    /** Name of the profile that minimises distance in miles. */
+    public static final String DISTANCE = "distance";
+    /** Name of the profile that minimises travel time in seconds. */
+    public static final String TRAVEL_TIME = "time";
+
+    /** Computes the cost of one edge. */
+    @FunctionalInterface
+    public interface EdgeCost {
+        /**
+         * @param e The edge.
+         * @param length The edge's length in miles.
+         * @param attributes The way attributes of the graph.
+         * @return The edge's cost, which must not be negative.
+         */
+        double cost(int e, double length, EdgeAttributes attributes);
+    }
+
+    private final String name;
+    private final double[] costs;
+    private final double minCostPerMile;
+
+    private CostModel(String name, double[] costs, double minCostPerMile) {
+        this.name = name;
+        this.costs = costs;
+        this.minCostPerMile = minCostPerMile;
+    }
+
+    /**
+     * Computes a profile over every edge of g.
+     * @param name The profile's name.
+     * @param g The graph.
+     * @param edgeCost The cost of each edge.
+     * @return The profile.
+     */
+    public static CostModel of(String name, GraphDB g, EdgeCost edgeCost) {
+        CompactGraph cg = g.getCompactGraph();
+        EdgeAttributes attributes = g.getEdgeAttributes();
+        double[] costs = new double[cg.edgeCount()];
+        double minCostPerMile = Double.POSITIVE_INFINITY;
+        for (int e = 0; e < costs.length; e += 1) {
+            double length = cg.length(e);
+            double cost = edgeCost.cost(e, length, attributes);
+            if (!(cost >= 0)) {
+                throw new IllegalArgumentException(
+                        "Profile " + name + " gives edge " + e + " cost " + cost);
+            }
+            costs[e] = cost;
+            if (length > 0) {
+                minCostPerMile = Math.min(minCostPerMile, cost / length);
+            }
+        }
+        if (minCostPerMile == Double.POSITIVE_INFINITY) {
+            minCostPerMile = 0;
+        }
+        return new CostModel(name, costs, minCostPerMile);
+    }
+
+    /** Returns the profile that minimises distance in miles. */
+    public static CostModel distance(GraphDB g) {
+        return of(DISTANCE, g, (e, length, attributes) -> length);
+    }
+
+    /**
+     * Returns the profile that minimises travel time in seconds, at each way's speed limit, or
+     * at a typical speed for its highway class where the limit is unknown.
+     */
+    public static CostModel travelTime(GraphDB g) {
+        return of(TRAVEL_TIME, g, (e, length, attributes) ->
+                length / speed(attributes, e) * SECONDS_PER_HOUR);
+    }
+
+    /** Returns the speed limit of edge e in mph, or its class's typical speed if unknown. */
+    static double speed(EdgeAttributes attributes, int e) {
+        float limit = attributes.maxSpeed(e);
+        if (limit > 0) {
+            return limit;
+        }
+        int c = attributes.highwayClass(e);
+        return c < 0 ? DEFAULT_SPEED_MPH : CLASS_SPEEDS_MPH[c];
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /** Returns the cost of edge <code>e</code>. */
+    public double cost(int e) {
+        return costs[e];
+    }
+
+    /** Returns the lowest cost per mile of any edge, for the A* heuristic. */
+    public double minCostPerMile() {
+        return minCostPerMile;
+    }
+
+    /**
+     * Typical speeds in mph of each class in <code>EdgeAttributes.HIGHWAY_CLASSES</code>, used
+     * where a way has no speed limit.
+     */
+    private static final double[] CLASS_SPEEDS_MPH = {
+        65, 55, 45, 35, 30, 25, 25, 10, 45, 40, 35, 30, 25
+    };
+    /** Speed of edges with neither a speed limit nor a highway class. */
+    private static final double DEFAULT_SPEED_MPH = 25;
+    private static final double SECONDS_PER_HOUR = 3600;
+}
@@ -0,0 +1,168 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Many-to-many route costs: the cheapest cost from each of a set of sources to each of a set of
+ * targets, as needed for dispatch.
+ *
+ * Every point is snapped to its closest vertex once, and points that snap to the same vertex
+ * share their work. Each distinct source then runs one Dijkstra search that stops as soon as
+ * every distinct target is settled, instead of one search per source and target. Under the
+ * distance profile, with a contraction hierarchy prepared, the bucket algorithm of
+ * <code>ContractionHierarchy.distanceMatrix</code> is used instead.
+ *
+ * Rows are computed in parallel on a pool shared by all requests, sized by
+ * -Dbearmaps.matrixThreads (the number of processors by default), so a large matrix cannot take
+ * over the machine.
+ */
+public class DistanceMatrix {
+    private static final ForkJoinPool POOL = new ForkJoinPool(Integer.getInteger(
+            "bearmaps.matrixThreads", Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * Returns the cost of the cheapest route from each source to each target.
+     * @param g <code>GraphDB</code> data source.
+     * @param model The routing profile.
+     * @param srcLons The longitudes of the sources.
+     * @param srcLats The latitudes of the sources.
+     * @param destLons The longitudes of the targets.
+     * @param destLats The latitudes of the targets.
+     * @return <code>result[i][j]</code> is the cost from source i to target j, or
+     * <code>Double.POSITIVE_INFINITY</code> if target j cannot be reached from source i.
+     */
+    public static double[][] compute(GraphDB g, CostModel model,
+                                     double[] srcLons, double[] srcLats,
+                                     double[] destLons, double[] destLats) {
+        KdTree tree = g.getKdTree();
+        int[] sources = snap(tree, srcLons, srcLats);
+        int[] targets = snap(tree, destLons, destLats);
+        int[] distinctSources = distinct(sources);
+        int[] distinctTargets = distinct(targets);
+
+        double[][] distinctRows = new double[distinctSources.length][];
+        ContractionHierarchy ch = g.getContractionHierarchy();
+        if (ch != null && model.name().equals(CostModel.DISTANCE)) {
+            /* Parallel streams started from a pool thread stay in that pool. */
+            inPool(() -> System.arraycopy(ch.distanceMatrix(distinctSources, distinctTargets), 0,
+                    distinctRows, 0, distinctRows.length));
+        } else {
+            CompactGraph cg = g.getCompactGraph();
+            HashMap<Integer, Integer> columns = indexOf(distinctTargets);
+            inPool(() -> IntStream.range(0, distinctSources.length).parallel().forEach(i ->
+                    distinctRows[i] = row(cg, model, distinctSources[i], columns)));
+        }
+
+        HashMap<Integer, Integer> rowOf = indexOf(distinctSources);
+        HashMap<Integer, Integer> columnOf = indexOf(distinctTargets);
+        double[][] result = new double[sources.length][targets.length];
+        for (int i = 0; i < sources.length; i += 1) {
+            double[] row = distinctRows[rowOf.get(sources[i])];
+            for (int j = 0; j < targets.length; j += 1) {
+                result[i][j] = row[columnOf.get(targets[j])];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Runs Dijkstra from source until every target is settled.
+     * @param columns Maps each target vertex to its column.
+     * @return The cost to each target, by column.
+     */
+    private static double[] row(CompactGraph cg, CostModel model, int source,
+                                HashMap<Integer, Integer> columns) {
+        double[] row = new double[columns.size()];
+        Arrays.fill(row, Double.POSITIVE_INFINITY);
+        int remaining = columns.size();
+        SearchContext sc = SearchContext.acquire(cg);
+        IndexedMinHeap fringe = sc.fringe();
+        sc.reach(source, 0, -1, 0);
+        fringe.insert(source, 0);
+        while (!fringe.isEmpty() && remaining > 0) {
+            int v = fringe.removeMin();
+            sc.settle(v);
+            Integer column = columns.get(v);
+            if (column != null) {
+                row[column] = sc.distTo(v);
+                remaining -= 1;
+            }
+            for (int e = cg.firstEdge(v); e < cg.endEdge(v); e += 1) {
+                int w = cg.target(e);
+                if (sc.isSettled(w)) {
+                    continue;
+                }
+                double d = sc.distTo(v) + model.cost(e);
+                if (!sc.isReached(w)) {
+                    sc.reach(w, d, v, 0);
+                    fringe.insert(w, d);
+                } else if (d < sc.distTo(w)) {
+                    sc.relax(w, d, v);
+                    fringe.decreaseKey(w, d);
+                }
+            }
+        }
+        return row;
+    }
+
+    /** Runs task on the shared pool and waits for it. */
+    private static void inPool(Runnable task) {
+        try {
+            POOL.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while computing a distance matrix", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Returns the compact index of the closest vertex to each point.
+     * @throws IllegalArgumentException If a point has no closest vertex, e.g. because it is not
+     *                                  a finite point or the graph is empty.
+     */
+    private static int[] snap(KdTree tree, double[] lons, double[] lats) {
+        if (lons.length != lats.length) {
+            throw new IllegalArgumentException("Every point needs a longitude and a latitude.");
+        }
+        int[] snapped = new int[lons.length];
+        IntStream.range(0, lons.length).parallel()
+                .forEach(i -> snapped[i] = tree.nearest(lons[i], lats[i]));
+        for (int i = 0; i < snapped.length; i += 1) {
+            if (snapped[i] < 0) {
+                throw new IllegalArgumentException(String.format(
+                        "Incorrect parameters: no vertex near %f,%f.", lons[i], lats[i]));
+            }
+        }
+        return snapped;
+    }
+
+    /** Returns the distinct values of vs in order of first appearance. */
+    private static int[] distinct(int[] vs) {
+        List<Integer> seen = new ArrayList<>();
+        HashMap<Integer, Integer> index = new HashMap<>();
+        for (int v : vs) {
+            if (index.putIfAbsent(v, seen.size()) == null) {
+                seen.add(v);
+            }
+        }
+        return seen.stream().mapToInt(i -> i).toArray();
+    }
+
+    /** Maps each value of vs, which must be distinct, to its position. */
+    private static HashMap<Integer, Integer> indexOf(int[] vs) {
+        HashMap<Integer, Integer> index = new HashMap<>();
+        for (int i = 0; i < vs.length; i += 1) {
+            index.put(vs[i], i);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,253 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Per-edge way attributes, in the same order as the edges of a <code>CompactGraph</code>, so that
+ * the way id, name, highway class and speed limit of edge <code>e</code> are array reads.
+ *
+ * Names are interned into one table shared by every edge of a way and every way with the same
+ * name. Highway types are stored as their index in <code>HIGHWAY_CLASSES</code>, and speed
+ * limits as miles per hour, parsed once from the OSM <code>maxspeed</code> tag.
+ *
+ * The table is filled by <code>OsmGraphLoader</code> or <code>GraphBuildingHandler</code> through
+ * a <code>Builder</code> while the XML is parsed, and laid out against the compact graph once it
+ * exists.
+ */
+public class EdgeAttributes {
+    /** The highway types the graph keeps, in the order of their class numbers. */
+    public static final String[] HIGHWAY_CLASSES = {
+        "motorway", "trunk", "primary", "secondary", "tertiary", "unclassified", "residential",
+        "living_street", "motorway_link", "trunk_link", "primary_link", "secondary_link",
+        "tertiary_link"
+    };
+    /** Class number of edges whose way had no known highway type. */
+    public static final int NO_CLASS = -1;
+
+    private final long[] wayIds;
+    /** Index of each edge's name in <code>names</code>, or -1 if its way has none. */
+    private final int[] nameIds;
+    private final String[] names;
+    private final byte[] highways;
+    /** Speed limit of each edge in miles per hour, or NaN if its way has none. */
+    private final float[] speeds;
+
+    EdgeAttributes(long[] wayIds, int[] nameIds, String[] names, byte[] highways,
+                   float[] speeds) {
+        this.wayIds = wayIds;
+        this.nameIds = nameIds;
+        this.names = names;
+        this.highways = highways;
+        this.speeds = speeds;
+    }
+
+    /** Returns the number of edges described. */
+    public int size() {
+        return wayIds.length;
+    }
+
+    /** Returns the OSM id of the way edge <code>e</code> belongs to. */
+    public long wayId(int e) {
+        return wayIds[e];
+    }
+
+    /** Returns the name of the way edge <code>e</code> belongs to, or null if it has none. */
+    public String name(int e) {
+        int i = nameIds[e];
+        return i < 0 ? null : names[i];
+    }
+
+    /** Returns the index of edge <code>e</code>'s name in the name table, or -1. */
+    int nameId(int e) {
+        return nameIds[e];
+    }
+
+    /** Returns the number of distinct way names. */
+    int nameCount() {
+        return names.length;
+    }
+
+    /** Returns the name with the given index in the name table. */
+    String nameAt(int i) {
+        return names[i];
+    }
+
+    /** Returns the highway class of edge <code>e</code>, or <code>NO_CLASS</code>. */
+    public int highwayClass(int e) {
+        return highways[e];
+    }
+
+    /** Returns the highway type of edge <code>e</code>, e.g. "residential", or null. */
+    public String highway(int e) {
+        int c = highways[e];
+        return c < 0 ? null : HIGHWAY_CLASSES[c];
+    }
+
+    /** Returns the speed limit of edge <code>e</code> in miles per hour, or NaN if unknown. */
+    public float maxSpeed(int e) {
+        return speeds[e];
+    }
+
+    /** Returns the class number of an OSM highway type, or <code>NO_CLASS</code>. */
+    public static int highwayClass(String highway) {
+        if (highway != null) {
+            for (int c = 0; c < HIGHWAY_CLASSES.length; c += 1) {
+                if (HIGHWAY_CLASSES[c].equals(highway)) {
+                    return c;
+                }
+            }
+        }
+        return NO_CLASS;
+    }
+
+    /**
+     * Parses an OSM <code>maxspeed</code> value such as "25 mph", "40" or "50 km/h". Bare numbers
+     * are km/h, as in OSM.
+     * @return The speed in miles per hour, or NaN if the value is missing or not a number.
+     */
+    public static float parseSpeed(String maxSpeed) {
+        if (maxSpeed == null) {
+            return Float.NaN;
+        }
+        String s = maxSpeed.trim();
+        int end = 0;
+        while (end < s.length() && (Character.isDigit(s.charAt(end)) || s.charAt(end) == '.')) {
+            end += 1;
+        }
+        if (end == 0) {
+            return Float.NaN;
+        }
+        float value;
+        try {
+            value = Float.parseFloat(s.substring(0, end));
+        } catch (NumberFormatException e) {
+            return Float.NaN;
+        }
+        String unit = s.substring(end).trim();
+        if (unit.equals("mph")) {
+            return value;
+        }
+        return value * KMH_TO_MPH;
+    }
+
+    /**
+     * Collects ways and their vertex pairs while the OSM file is parsed. Vertices are known by
+     * OSM id at that point; <code>build</code> turns the pairs into edge indices.
+     */
+    public static class Builder {
+        private long[] wayIds = new long[1024];
+        private int[] wayNames = new int[1024];
+        private byte[] wayHighways = new byte[1024];
+        private float[] waySpeeds = new float[1024];
+        private int ways;
+        private final HashMap<String, Integer> nameIndex = new HashMap<>();
+        private final List<String> names = new ArrayList<>();
+
+        private long[] froms = new long[1024];
+        private long[] tos = new long[1024];
+        private int[] segmentWays = new int[1024];
+        private int segments;
+
+        /**
+         * Records a way whose segments are part of the graph.
+         * @return The way's number, to pass to <code>addSegment</code>.
+         */
+        public int addWay(long id, String name, String highway, String maxSpeed) {
+            int nameId = -1;
+            if (name != null) {
+                Integer known = nameIndex.get(name);
+                if (known == null) {
+                    known = names.size();
+                    names.add(name);
+                    nameIndex.put(name, known);
+                }
+                nameId = known;
+            }
+            if (ways == wayIds.length) {
+                wayIds = Arrays.copyOf(wayIds, ways * 2);
+                wayNames = Arrays.copyOf(wayNames, ways * 2);
+                wayHighways = Arrays.copyOf(wayHighways, ways * 2);
+                waySpeeds = Arrays.copyOf(waySpeeds, ways * 2);
+            }
+            wayIds[ways] = id;
+            wayNames[ways] = nameId;
+            wayHighways[ways] = (byte) highwayClass(highway);
+            waySpeeds[ways] = parseSpeed(maxSpeed);
+            ways += 1;
+            return ways - 1;
+        }
+
+        /** Records that way number <code>way</code> joins vertices <code>from</code> and
+         * <code>to</code>. */
+        public void addSegment(int way, long from, long to) {
+            if (segments == froms.length) {
+                froms = Arrays.copyOf(froms, segments * 2);
+                tos = Arrays.copyOf(tos, segments * 2);
+                segmentWays = Arrays.copyOf(segmentWays, segments * 2);
+            }
+            froms[segments] = from;
+            tos[segments] = to;
+            segmentWays[segments] = way;
+            segments += 1;
+        }
+
+        /** Returns the number of segments recorded. */
+        int segmentCount() {
+            return segments;
+        }
+
+        /** Returns the OSM id of the vertex segment <code>s</code> starts at. */
+        long segmentFrom(int s) {
+            return froms[s];
+        }
+
+        /** Returns the OSM id of the vertex segment <code>s</code> ends at. */
+        long segmentTo(int s) {
+            return tos[s];
+        }
+
+        /**
+         * Lays the recorded attributes out against the edges of <code>cg</code>. Both
+         * directions of a segment get its way's attributes; where ways overlap, the way recorded
+         * last wins. Edges no way covers have way id 0 and no attributes.
+         */
+        public EdgeAttributes build(CompactGraph cg) {
+            int m = cg.edgeCount();
+            long[] ids = new long[m];
+            int[] nameIds = new int[m];
+            byte[] highways = new byte[m];
+            float[] speeds = new float[m];
+            Arrays.fill(nameIds, -1);
+            Arrays.fill(highways, (byte) NO_CLASS);
+            Arrays.fill(speeds, Float.NaN);
+            for (int s = 0; s < segments; s += 1) {
+                int v = cg.indexOf(froms[s]);
+                int w = cg.indexOf(tos[s]);
+                if (v < 0 || w < 0) {
+                    continue;
+                }
+                int way = segmentWays[s];
+                int forward = cg.edge(v, w);
+                int backward = cg.edge(w, v);
+                if (forward >= 0) {
+                    ids[forward] = wayIds[way];
+                    nameIds[forward] = wayNames[way];
+                    highways[forward] = wayHighways[way];
+                    speeds[forward] = waySpeeds[way];
+                }
+                if (backward >= 0) {
+                    ids[backward] = wayIds[way];
+                    nameIds[backward] = wayNames[way];
+                    highways[backward] = wayHighways[way];
+                    speeds[backward] = waySpeeds[way];
+                }
+            }
+            return new EdgeAttributes(ids, nameIds, names.toArray(new String[0]), highways,
+                    speeds);
+        }
+    }
+
+    /** Miles per kilometre. */
+    private static final float KMH_TO_MPH = 0.621371f;
+}
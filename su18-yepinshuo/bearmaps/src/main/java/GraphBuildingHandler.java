@@ -31,11 +31,8 @@ public class GraphBuildingHandler extends DefaultHandler {
      * roads, but in practice we walk all over them with such impunity that we forget cars can
      * actually drive on them.
      */
-    private static final Set<String> ALLOWED_HIGHWAY_TYPES = Set.of(
-            "motorway", "trunk", "primary", "secondary", "tertiary", "unclassified", "residential",
-            "living_street", "motorway_link", "trunk_link", "primary_link", "secondary_link",
-            "tertiary_link"
-    );
+    private static final Set<String> ALLOWED_HIGHWAY_TYPES =
+            Set.of(EdgeAttributes.HIGHWAY_CLASSES);
     private String activeState = "";
     private final GraphDB g;
     private GraphDB.Edge tempEdge;
@@ -164,12 +161,16 @@ public class GraphBuildingHandler extends DefaultHandler {
             }
 
             if (connecting) {
+                EdgeAttributes.Builder attributes = g.getEdgeAttributeBuilder();
+                int way = attributes.addWay(tempEdge.id, tempEdge.name, tempEdge.highway,
+                        tempEdge.maxSpeed);
                 // Adding vertices into the vertex list.
                 for (int i = 0; i < tempEdge.vertexList.size() - 1; i++) {
                     long id1 = tempEdge.vertexList.get(i);
                     long id2 = tempEdge.vertexList.get(i + 1);
                     g.getvMap().get(id1).addNeighbor(id2);
                     g.getvMap().get(id2).addNeighbor(id1);
+                    attributes.addSegment(way, id1, id2);
                 }
                 connecting = false;
             }
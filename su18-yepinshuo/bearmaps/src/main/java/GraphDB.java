@@ -10,6 +10,8 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
 
 /**
  * Graph for storing all of the intersection (vertex) and road (edge) information.
@@ -27,75 +29,150 @@ public class GraphDB {
      * @param dbPath Path to the XML file to be parsed.
      */
 
+    /** Vertices by OSM id. Only used while the SAX loader parses; emptied once the compact graph
+     * is built. */
     private HashMap<Long, Vertex> vMap = new HashMap<>();
     private HashMap<Long, Edge> eMap = new HashMap<>();
-    KdNode rootNode;
-    KdTree tree;
+    /** Dense array form of the graph, built once parsing and cleaning are done. */
+    private CompactGraph compact;
+    /** Way attributes collected while parsing. Emptied once the compact graph is built. */
+    private EdgeAttributes.Builder attributeBuilder = new EdgeAttributes.Builder();
+    /** Way attributes of each edge of <code>compact</code>. */
+    private EdgeAttributes attributes;
+    /** Every named OSM node, including ones removed by <code>clean</code>, for search. */
+    private LocationIndex locations;
+    /** Optional routing index, see <code>prepareContractionHierarchy</code>. */
+    private volatile ContractionHierarchy contractionHierarchy;
+    /** Routing profiles by name, built on first use or added with <code>addCostModel</code>. */
+    private final ConcurrentHashMap<String, CostModel> costModels = new ConcurrentHashMap<>();
+    /** Optional ALT bounds by profile name, see <code>prepareLandmarks</code>. */
+    private final ConcurrentHashMap<String, Landmarks> landmarks = new ConcurrentHashMap<>();
+    private KdTree tree;
 
     public GraphDB(String dbPath) {
+        this(dbPath, LOAD_MODE);
+    }
+
+    /**
+     * Parses the OSM file at <code>dbPath</code> with the given loader.
+     * @param dbPath Path to the XML file to be parsed.
+     * @param mode How to read the file.
+     */
+    GraphDB(String dbPath, LoadMode mode) {
         File inputFile = new File(dbPath);
-        try (FileInputStream inputStream = new FileInputStream(inputFile)) {
-            SAXParserFactory factory = SAXParserFactory.newInstance();
-            SAXParser saxParser = factory.newSAXParser();
-            saxParser.parse(inputStream, new GraphBuildingHandler(this));
-        } catch (ParserConfigurationException | SAXException | IOException e) {
-            e.printStackTrace();
+        if (mode == LoadMode.SAX) {
+            try (FileInputStream inputStream = new FileInputStream(inputFile)) {
+                SAXParserFactory factory = SAXParserFactory.newInstance();
+                SAXParser saxParser = factory.newSAXParser();
+                saxParser.parse(inputStream, new GraphBuildingHandler(this));
+            } catch (ParserConfigurationException | SAXException | IOException e) {
+                e.printStackTrace();
+            }
+            locations = indexLocations();
+            clean();
+            compact = new CompactGraph(vMap);
+            vMap = new HashMap<>();
+        } else {
+            OsmGraphLoader loader = new OsmGraphLoader(this);
+            try {
+                if (mode == LoadMode.TWO_PASS) {
+                    loader.parseWays(new FileInputStream(inputFile));
+                    loader.parseNodes(new FileInputStream(inputFile));
+                } else {
+                    loader.parse(new FileInputStream(inputFile));
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            locations = loader.locations();
+            compact = loader.assemble();
         }
-        clean();
-
-        List<KdNode> finalList = new ArrayList<>();
-        finalList.add(0, null);
-        finalList.add(null);
-        List<KdNode> lst = new ArrayList<>();
-
-        for (Vertex v : vMap.values()) {
-            finalList.add(null);
-            finalList.add(null);
-            lst.add(new KdNode(v, true));
+        if (HILBERT_LAYOUT) {
+            compact = compact.permute(compact.hilbertOrder());
         }
-        sortHelper(lst, finalList, 1);
+        attributes = attributeBuilder.build(compact);
+        attributeBuilder = null;
+        tree = new KdTree(compact);
+    }
 
-        rootNode = finalList.get(1);
-        rootHelper(finalList, rootNode, 1);
-        tree = new KdTree(rootNode);
+    /** The ways <code>GraphDB(String)</code> can read an OSM file. */
+    enum LoadMode {
+        /** <code>GraphBuildingHandler</code> on the JDK's SAX parser, one node object per node. */
+        SAX,
+        /** <code>OsmGraphLoader</code>: a byte-level streaming parser into primitive arrays,
+         * then a parallel build of the compact graph. */
+        STREAMING,
+        /** <code>OsmGraphLoader</code> reading the file twice, first the ways and then only the
+         * nodes they use, so that nodes no road uses are never held. Only the ways of the graph
+         * are kept in <code>geteMap()</code>. */
+        TWO_PASS
     }
 
-    private static void rootHelper(List<KdNode> finalList, KdNode node, int index) {
-        if (index * 2 <= finalList.size() - 1) {
-            if (finalList.get(index * 2) != null) {
-                node.setLeft(finalList.get(index * 2));
-                rootHelper(finalList, node.getLeft(), index * 2);
-            }
-            if (finalList.get(index * 2 + 1) != null) {
-                node.setRight(finalList.get(index * 2 + 1));
-                rootHelper(finalList, node.getRight(), index * 2 + 1);
+    /**
+     * Creates a graph from data that was already parsed, cleaned and laid out, as read back by
+     * <code>GraphSnapshot</code>. No XML parsing or k-d tree building happens here.
+     * @param compact The compact graph.
+     * @param attributes The way attributes of each edge of <code>compact</code>.
+     * @param eMap The ways of the graph.
+     * @param locations The named locations.
+     * @param tree The k-d tree over <code>compact</code>.
+     */
+    GraphDB(CompactGraph compact, EdgeAttributes attributes, HashMap<Long, Edge> eMap,
+            LocationIndex locations, KdTree tree) {
+        this.compact = compact;
+        this.attributes = attributes;
+        this.eMap = eMap;
+        this.locations = locations;
+        this.tree = tree;
+        this.attributeBuilder = null;
+    }
+
+    /** Collects every parsed node that has a name into a LocationIndex. */
+    private LocationIndex indexLocations() {
+        List<Vertex> named = new ArrayList<>();
+        for (Vertex v : vMap.values()) {
+            if (v.name != null) {
+                named.add(v);
             }
         }
+        long[] ids = new long[named.size()];
+        double[] lons = new double[named.size()];
+        double[] lats = new double[named.size()];
+        String[] names = new String[named.size()];
+        for (int i = 0; i < named.size(); i += 1) {
+            Vertex v = named.get(i);
+            ids[i] = v.id;
+            lons[i] = v.lon;
+            lats[i] = v.lat;
+            names[i] = v.name;
+        }
+        return new LocationIndex(ids, lons, lats, names);
     }
 
-    private static void sortHelper(List<KdNode> list, List<KdNode> finalList, int index) {
-        if (list.isEmpty()) {
-            return;
-        } else {
-            Collections.sort(list);
-            finalList.set(index, list.get(list.size() / 2));
-            List<KdNode> leftList = new ArrayList<>();
-            List<KdNode> rightList = new ArrayList<>();
-
-            for (int i = 0; i < list.size(); i++) {
-                if (i != list.size() / 2) {
-                    list.get(i).verticalChange();
-                }
-
-                if (i < list.size() / 2) {
-                    leftList.add(list.get(i));
-                } else if (i > list.size() / 2) {
-                    rightList.add(list.get(i));
-                }
+    /**
+     * Returns a graph for the given OSM file, loading it from a binary snapshot when one exists
+     * and is up to date. Otherwise the XML is parsed and a new snapshot is written for next time.
+     * @param dbPath Path to the XML file.
+     * @param snapshotPath Path of the snapshot to read or create.
+     * @return The graph.
+     */
+    public static GraphDB load(String dbPath, String snapshotPath) {
+        File source = new File(dbPath);
+        File snapshot = new File(snapshotPath);
+        try {
+            if (GraphSnapshot.isFresh(snapshot, source)) {
+                return GraphSnapshot.read(snapshot);
             }
-            sortHelper(leftList, finalList, index * 2);
-            sortHelper(rightList, finalList, index * 2 + 1);
+        } catch (IOException e) {
+            e.printStackTrace();
         }
+        GraphDB g = new GraphDB(dbPath);
+        try {
+            GraphSnapshot.write(g, snapshot, source);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return g;
     }
 
     /**
@@ -103,7 +180,7 @@ public class GraphDB {
      * @param s Input string.
      * @return Cleaned string.
      */
-    private static String cleanString(String s) {
+    static String cleanString(String s) {
         return s.replaceAll("[^a-zA-Z ]", "").toLowerCase();
     }
 
@@ -129,9 +206,9 @@ public class GraphDB {
      * @return The longitude of that vertex, or 0.0 if the vertex is not in the graph.
      */
     double lon(long v) {
-        // TODO
-        if (vMap.containsKey(v)) {
-            return vMap.get(v).lon;
+        int i = compact.indexOf(v);
+        if (i >= 0) {
+            return compact.lon(i);
         } else {
             return 0.0;
         }
@@ -143,9 +220,9 @@ public class GraphDB {
      * @return The latitude of that vertex, or 0.0 if the vertex is not in the graph.
      */
     double lat(long v) {
-        // TODO
-        if (vMap.containsKey(v)) {
-            return vMap.get(v).lat;
+        int i = compact.indexOf(v);
+        if (i >= 0) {
+            return compact.lat(i);
         } else {
             return 0.0;
         }
@@ -156,8 +233,7 @@ public class GraphDB {
      * @return An iterable of all vertex IDs in the graph.
      */
     Iterable<Long> vertices() {
-        // TODO
-        return vMap.keySet();
+        return () -> IntStream.range(0, compact.size()).mapToObj(compact::id).iterator();
     }
 
     /**
@@ -167,12 +243,15 @@ public class GraphDB {
      * iterable if the vertex is not in the graph.
      */
     Iterable<Long> adjacent(long v) {
-        // TODO
-        if (vMap.containsKey(v)) {
-            return vMap.get(v).neighbors;
-        } else {
+        int i = compact.indexOf(v);
+        if (i < 0) {
             return Collections.emptySet();
         }
+        List<Long> neighbors = new ArrayList<>(compact.endEdge(i) - compact.firstEdge(i));
+        for (int e = compact.firstEdge(i); e < compact.endEdge(i); e += 1) {
+            neighbors.add(compact.id(compact.target(e)));
+        }
+        return neighbors;
     }
 
     /**
@@ -184,10 +263,23 @@ public class GraphDB {
      * @source https://www.movable-type.co.uk/scripts/latlong.html
      */
     public double distance(long v, long w) {
-        double phi1 = Math.toRadians(lat(v));
-        double phi2 = Math.toRadians(lat(w));
-        double dphi = Math.toRadians(lat(w) - lat(v));
-        double dlambda = Math.toRadians(lon(w) - lon(v));
+        return greatCircle(lon(v), lat(v), lon(w), lat(w));
+    }
+
+    /**
+     * Returns the great-circle distance between two points, in miles.
+     * @param lon1 The longitude of the first point.
+     * @param lat1 The latitude of the first point.
+     * @param lon2 The longitude of the second point.
+     * @param lat2 The latitude of the second point.
+     * @return The great-circle distance between the two points.
+     * @source https://www.movable-type.co.uk/scripts/latlong.html
+     */
+    static double greatCircle(double lon1, double lat1, double lon2, double lat2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        double dphi = Math.toRadians(lat2 - lat1);
+        double dlambda = Math.toRadians(lon2 - lon1);
 
         double a = Math.sin(dphi / 2.0) * Math.sin(dphi / 2.0);
         a += Math.cos(phi1) * Math.cos(phi2) * Math.sin(dlambda / 2.0) * Math.sin(dlambda / 2.0);
@@ -200,116 +292,72 @@ public class GraphDB {
      * @param lon The given longitude.
      * @param lat The given latitude.
      * @return The ID for the vertex closest to the <code>lon</code> and <code>lat</code>.
+     * @throws IllegalStateException If the graph has no vertices.
      */
     public long closest(double lon, double lat) {
-        // TODO
-/*        List<Vertex> vertices = new ArrayList<>(vMap.values());
-        List<Long> ids = new ArrayList<>(vMap.keySet());
-        vMap.put((long) 0, new Vertex(0, lon, lat));
-        long result = vertices.get(0).id;
-        double resultDis = distance(0, result);
-        for (long id : ids) {
-            double dis = distance(0, id);
-            if (dis < resultDis) {
-                resultDis = dis;
-                result = id;
-            }
+        int v = tree.nearest(lon, lat);
+        if (v < 0) {
+            throw new IllegalStateException("The graph has no vertices.");
         }
-        vMap.remove((long) 0);
-        return result; */
-        long result = rootNode.getVertex().id;
-        double resultDistance =
-                distance2D(lon, lat, rootNode.getVertex().lon, rootNode.getVertex().lat);
-        return closestHelper(lon, lat, rootNode, result, resultDistance);
-    }
-
-    public long closestHelper(double lon,
-                              double lat, KdNode node, long result, double resultDistance) {
-        if (distance2D(lon, lat, node.getVertex().lon, node.getVertex().lat) < resultDistance) {
-            result = node.getVertex().id;
-            resultDistance = distance2D(lon, lat, node.getVertex().lon, node.getVertex().lat);
+        return compact.id(v);
+    }
+
+    /**
+     * Returns the IDs of the k vertices closest to the given longitude and latitude, measured the
+     * same way as <code>closest</code>.
+     * @param lon The given longitude.
+     * @param lat The given latitude.
+     * @param k The number of vertices to return.
+     * @return Up to k vertex IDs, closest first; empty if k is 0.
+     * @throws IllegalArgumentException If k is negative.
+     */
+    public List<Long> kNearest(double lon, double lat, int k) {
+        return toIds(tree.kNearest(lon, lat, k));
+    }
+
+    /**
+     * Returns the IDs of all vertices within a great-circle distance of the given point.
+     * @param lon The given longitude.
+     * @param lat The given latitude.
+     * @param miles The radius in miles.
+     * @return The vertex IDs in the radius, closest first.
+     */
+    public List<Long> withinRadius(double lon, double lat, double miles) {
+        return toIds(tree.withinRadius(lon, lat, miles));
+    }
+
+    /** Batch form of <code>closest</code>; the points are processed in parallel. */
+    public long[] closest(double[] lons, double[] lats) {
+        long[] result = new long[lons.length];
+        IntStream.range(0, lons.length).parallel()
+                .forEach(i -> result[i] = closest(lons[i], lats[i]));
+        return result;
+    }
+
+    /** Batch form of <code>kNearest</code>; the points are processed in parallel. */
+    public List<List<Long>> kNearest(double[] lons, double[] lats, int k) {
+        List<List<Long>> result = new ArrayList<>();
+        for (int[] found : tree.kNearest(lons, lats, k)) {
+            result.add(toIds(found));
         }
-        if (node.isVertical()) {
-            if (lon < node.getVertex().lon) {
-                if (node.getLeft() != null) {
-                    result = closestHelper(lon, lat, node.getLeft(), result, resultDistance);
-                    // not prune
-                    if (notPrune(lon, lat, resultDistance, node) && node.getRight() != null) {
-                        resultDistance =
-                                distance2D(lon, lat, vMap.get(result).lon, vMap.get(result).lat);
-                        return closestHelper(lon, lat, node.getRight(), result, resultDistance);
-                    }
-                    return result;
-                } else {
-                    if (notPrune(lon, lat, resultDistance, node) && node.getRight() != null) {
-                        return closestHelper(lon, lat, node.getRight(), result, resultDistance);
-                    }
-                    return result;
-                }
-            } else {
-                if (node.getRight() != null) {
-                    result = closestHelper(lon, lat, node.getRight(), result, resultDistance);
-                    // not prune
-                    if (notPrune(lon, lat, resultDistance, node) && node.getLeft() != null) {
-                        resultDistance =
-                                distance2D(lon, lat, vMap.get(result).lon, vMap.get(result).lat);
-                        return closestHelper(lon, lat, node.getLeft(), result, resultDistance);
-                    }
-                    return result;
-                } else {
-                    if (notPrune(lon, lat, resultDistance, node) && node.getLeft() != null) {
-                        return closestHelper(lon, lat, node.getLeft(), result, resultDistance);
-                    }
-                    return result;
-                }
-            }
-        } else {
-            if (lat < node.getVertex().lat) {
-                if (node.getLeft() != null) {
-                    result = closestHelper(lon, lat, node.getLeft(), result, resultDistance);
-                    // not prune
-                    if (notPrune(lon, lat, resultDistance, node) && node.getRight() != null) {
-                        resultDistance =
-                                distance2D(lon, lat, vMap.get(result).lon, vMap.get(result).lat);
-                        return closestHelper(lon, lat, node.getRight(), result, resultDistance);
-                    }
-                    return result;
-                } else {
-                    if (notPrune(lon, lat, resultDistance, node) && node.getRight() != null) {
-                        return closestHelper(lon, lat, node.getRight(), result, resultDistance);
-                    }
-                    return result;
-                }
-            } else {
-                if (node.getRight() != null) {
-                    result = closestHelper(lon, lat, node.getRight(), result, resultDistance);
-                    // not prune
-                    if (notPrune(lon, lat, resultDistance, node) && node.getLeft() != null) {
-                        resultDistance =
-                                distance2D(lon, lat, vMap.get(result).lon, vMap.get(result).lat);
-                        return closestHelper(lon, lat, node.getLeft(), result, resultDistance);
-                    }
-                    return result;
-                } else {
-                    if (notPrune(lon, lat, resultDistance, node) && node.getLeft() != null) {
-                        return closestHelper(lon, lat, node.getLeft(), result, resultDistance);
-                    }
-                    return result;
-                }
-            }
+        return result;
+    }
+
+    /** Batch form of <code>withinRadius</code>; the points are processed in parallel. */
+    public List<List<Long>> withinRadius(double[] lons, double[] lats, double miles) {
+        List<List<Long>> result = new ArrayList<>();
+        for (int[] found : tree.withinRadius(lons, lats, miles)) {
+            result.add(toIds(found));
         }
+        return result;
     }
 
-    public boolean notPrune(double lon, double lat, double resultDistance, KdNode node) {
-        if (node.isVertical()) {
-            return  !(resultDistance
-                    <= Math.abs(projectToX(lon, lat)
-                            - projectToX(node.getVertex().lon, node.getVertex().lat)));
-        } else {
-            return  !(resultDistance
-                    <= Math.abs(projectToY(lon, lat)
-                            - projectToY(node.getVertex().lon, node.getVertex().lat)));
+    private List<Long> toIds(int[] indices) {
+        List<Long> ids = new ArrayList<>(indices.length);
+        for (int i : indices) {
+            ids.add(compact.id(i));
         }
+        return ids;
     }
 
     static double distance2D(double lon1, double lat1, double lon2, double lat2) {
@@ -351,14 +399,29 @@ public class GraphDB {
     }
 
     /**
-     * In linear time, collect all the names of OSM locations that prefix-match the query string.
+     * Collects all the names of OSM locations that prefix-match the query string, heaviest first.
+     * The matches are found by binary search in <code>LocationIndex</code>, which sorts the names
+     * by their cleaned form, so this takes time logarithmic in the number of names plus
+     * O(m log m) for m matches.
      * @param prefix Prefix string to be searched for. Could be any case, with our without
      *               punctuation.
      * @return A <code>List</code> of the full names of locations whose cleaned name matches the
      * cleaned <code>prefix</code>.
      */
     public List<String> getLocationsByPrefix(String prefix) {
-        return Collections.emptyList();
+        return locations.complete(prefix, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the <code>limit</code> most important location names that prefix-match the query
+     * string, see <code>LocationIndex</code> for the ranking.
+     * @param prefix Prefix string to be searched for. Could be any case, with our without
+     *               punctuation.
+     * @param limit The maximum number of names to return.
+     * @return A <code>List</code> of at most <code>limit</code> full names, most important first.
+     */
+    public List<String> getLocationsByPrefix(String prefix, int limit) {
+        return locations.complete(prefix, limit);
     }
 
     /**
@@ -369,7 +432,7 @@ public class GraphDB {
      * cleaned <code>locationName</code>
      */
     public List<LocationParams> getLocations(String locationName) {
-        return Collections.emptyList();
+        return locations.lookup(locationName);
     }
 
     /**
@@ -383,10 +446,22 @@ public class GraphDB {
      * @source https://www.movable-type.co.uk/scripts/latlong.html
      */
     double bearing(long v, long w) {
-        double phi1 = Math.toRadians(lat(v));
-        double phi2 = Math.toRadians(lat(w));
-        double lambda1 = Math.toRadians(lon(v));
-        double lambda2 = Math.toRadians(lon(w));
+        return bearing(lon(v), lat(v), lon(w), lat(w));
+    }
+
+    /**
+     * Returns the initial bearing from one point to another in degrees, as for vertices.
+     * @param lon1 The longitude of the starting point.
+     * @param lat1 The latitude of the starting point.
+     * @param lon2 The longitude of the end point.
+     * @param lat2 The latitude of the end point.
+     * @return The bearing from the first point to the second in degrees.
+     */
+    static double bearing(double lon1, double lat1, double lon2, double lat2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        double lambda1 = Math.toRadians(lon1);
+        double lambda2 = Math.toRadians(lon2);
 
         double y = Math.sin(lambda2 - lambda1) * Math.cos(phi2);
         double x = Math.cos(phi1) * Math.sin(phi2);
@@ -394,6 +469,16 @@ public class GraphDB {
         return Math.toDegrees(Math.atan2(y, x));
     }
 
+    /** Returns the per-edge way attributes, aligned with <code>getCompactGraph()</code>. */
+    public EdgeAttributes getEdgeAttributes() {
+        return attributes;
+    }
+
+    /** Returns the builder <code>GraphBuildingHandler</code> records ways into while parsing. */
+    EdgeAttributes.Builder getEdgeAttributeBuilder() {
+        return attributeBuilder;
+    }
+
     public HashMap<Long, Vertex> getvMap() {
         return vMap;
     }
@@ -402,22 +487,115 @@ public class GraphDB {
         return eMap;
     }
 
+    public CompactGraph getCompactGraph() {
+        return compact;
+    }
+
+    public KdTree getKdTree() {
+        return tree;
+    }
+
+    public LocationIndex getLocationIndex() {
+        return locations;
+    }
+
+    /**
+     * Runs Contraction Hierarchies preprocessing so that <code>Router.shortestPathCH</code> can
+     * answer queries without searching the whole graph. Call once, before serving routes.
+     */
+    public void prepareContractionHierarchy() {
+        contractionHierarchy = new ContractionHierarchy(compact);
+    }
+
+    /** Returns the contraction hierarchy, or null if it has not been prepared. */
+    public ContractionHierarchy getContractionHierarchy() {
+        return contractionHierarchy;
+    }
+
+    /**
+     * Chooses k landmarks for a routing profile and precomputes their distances, so that
+     * <code>Router.shortestPath</code> uses ALT bounds for it. Much cheaper than
+     * <code>prepareContractionHierarchy</code>, at 2k full searches.
+     * @param model The routing profile.
+     * @param k The number of landmarks.
+     */
+    public void prepareLandmarks(CostModel model, int k) {
+        landmarks.put(model.name(), new Landmarks(compact, model, k));
+    }
+
+    /**
+     * Same as <code>prepareLandmarks(model, k)</code>, but reads the landmarks from
+     * <code>path</code> when they were saved there for this graph, profile and k, and otherwise
+     * saves them there for next time.
+     * @param model The routing profile.
+     * @param k The number of landmarks.
+     * @param path Path of the landmarks file to read or create.
+     */
+    public void prepareLandmarks(CostModel model, int k, String path) {
+        File file = new File(path);
+        try {
+            Landmarks saved = Landmarks.read(file, compact, model, k);
+            if (saved != null) {
+                landmarks.put(model.name(), saved);
+                return;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        prepareLandmarks(model, k);
+        try {
+            landmarks.get(model.name()).write(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns the landmarks prepared for <code>model</code>, or null if there are none, or if they
+     * were prepared for another profile since replaced under the same name.
+     */
+    public Landmarks getLandmarks(CostModel model) {
+        Landmarks l = landmarks.get(model.name());
+        return l != null && l.model() == model ? l : null;
+    }
+
+    /**
+     * Returns the routing profile with the given name. The built-in <code>CostModel.DISTANCE</code>
+     * and <code>CostModel.TRAVEL_TIME</code> profiles are computed the first time they are asked
+     * for.
+     * @param name The profile's name.
+     * @return The profile, or null if there is none by that name.
+     */
+    public CostModel getCostModel(String name) {
+        CostModel model = costModels.get(name);
+        if (model != null) {
+            return model;
+        }
+        if (name.equals(CostModel.DISTANCE)) {
+            return costModels.computeIfAbsent(name, k -> CostModel.distance(this));
+        } else if (name.equals(CostModel.TRAVEL_TIME)) {
+            return costModels.computeIfAbsent(name, k -> CostModel.travelTime(this));
+        }
+        return null;
+    }
+
+    /** Adds or replaces a routing profile, under <code>model.name()</code>. */
+    public void addCostModel(CostModel model) {
+        costModels.put(model.name(), model);
+    }
+
     public static class Vertex {
         double lon;
         double lat;
         long id;
         List<Long> neighbors;
         String name;
-        double distance;
-        Vertex predecessor;
 
         public Vertex(long id, double lon, double lat) {
             this.lon = lon;
             this.lat = lat;
             this.id = id;
             this.neighbors = new ArrayList<>();
-            this.distance = 0;
-            this.predecessor = null;
         }
 
         public void addName(String n) {
@@ -459,8 +637,21 @@ public class GraphDB {
     }
 
 
+    /**
+     * Loader used by <code>GraphDB(String)</code>, chosen with -Dbearmaps.loader=sax,
+     * -Dbearmaps.loader=two_pass or -Dbearmaps.loader=streaming (the default).
+     */
+    private static final LoadMode LOAD_MODE = LoadMode.valueOf(
+            System.getProperty("bearmaps.loader", "streaming").toUpperCase());
+    /**
+     * Whether parsed graphs are renumbered along a Hilbert curve, see
+     * <code>CompactGraph.hilbertOrder</code>. On by default; -Dbearmaps.hilbert=false keeps the
+     * loader's order.
+     */
+    private static final boolean HILBERT_LAYOUT =
+            Boolean.parseBoolean(System.getProperty("bearmaps.hilbert", "true"));
     /** Radius of the Earth in miles. */
-    private static final int R = 3963;
+    static final int R = 3963;
     /** Latitude centered on Berkeley. */
     private static final double ROOT_LAT = (MapServer.ROOT_ULLAT + MapServer.ROOT_LRLAT) / 2;
     /** Longitude centered on Berkeley. */
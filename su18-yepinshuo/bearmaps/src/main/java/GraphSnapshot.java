@@ -0,0 +1,421 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Reads and writes a versioned binary snapshot of a <code>GraphDB</code>, so that a server can
+ * start without parsing the OSM XML or rebuilding the k-d tree.
+ *
+ * Layout (all values big-endian):
+ * <pre>
+ *   header:   int MAGIC, int VERSION, long source length, long source last-modified
+ *   vertices: int n, long[n] ids, double[n] lons, double[n] lats
+ *   edges:    int m, int[n + 1] offsets, int[m] targets, double[m] lengths
+ *   edge attributes: int s, string[s] way names, long[m] way ids, int[m] name indices,
+ *             byte[m] highway classes, float[m] speeds (see EdgeAttributes)
+ *   ways:     int w, then per way: long id, string name, string highway, string maxSpeed,
+ *             int k, long[k] vertex ids
+ *   k-d tree: int t, int[t] vertex per slot, double[t] xs, double[t] ys (see KdTree)
+ *   names:    int l, long[l] ids, double[l] lons, double[l] lats, string[l] names
+ * </pre>
+ * Strings are an int byte length (-1 for null) followed by UTF-8 bytes. The snapshot is stale,
+ * and ignored, if the version or the source file's length or modification time differ. A
+ * snapshot that is fresh but truncated or corrupt fails to read with an IOException. Snapshots
+ * over 2 GB, the most one mapping can hold, are read through several mappings.
+ */
+public class GraphSnapshot {
+    /** "BEAR" in ASCII. */
+    private static final int MAGIC = 0x42454152;
+    /** Bump whenever the layout above changes. */
+    static final int VERSION = 4;
+
+    /**
+     * Returns true if <code>snapshot</code> exists and was written by this version for the
+     * current contents of <code>source</code>.
+     */
+    public static boolean isFresh(File snapshot, File source) throws IOException {
+        if (!snapshot.isFile()) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                return false;
+            }
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            return buf.getInt() == MAGIC && buf.getInt() == VERSION
+                    && buf.getLong() == source.length() && buf.getLong() == source.lastModified();
+        }
+    }
+
+    /**
+     * Writes the snapshot of <code>g</code>. The file is written next to its final location and
+     * then moved into place, so readers never see a partial snapshot.
+     * @param g The graph to save.
+     * @param snapshot The snapshot file to create or replace.
+     * @param source The OSM file <code>g</code> was built from.
+     */
+    public static void write(GraphDB g, File snapshot, File source) throws IOException {
+        CompactGraph cg = g.getCompactGraph();
+        int n = cg.size();
+        File tmp = new File(snapshot.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(source.length());
+            out.writeLong(source.lastModified());
+
+            out.writeInt(n);
+            for (int i = 0; i < n; i += 1) {
+                out.writeLong(cg.id(i));
+            }
+            for (int i = 0; i < n; i += 1) {
+                out.writeDouble(cg.lon(i));
+            }
+            for (int i = 0; i < n; i += 1) {
+                out.writeDouble(cg.lat(i));
+            }
+
+            out.writeInt(cg.edgeCount());
+            for (int i = 0; i <= n; i += 1) {
+                out.writeInt(i < n ? cg.firstEdge(i) : cg.edgeCount());
+            }
+            for (int e = 0; e < cg.edgeCount(); e += 1) {
+                out.writeInt(cg.target(e));
+            }
+            for (int e = 0; e < cg.edgeCount(); e += 1) {
+                out.writeDouble(cg.length(e));
+            }
+
+            EdgeAttributes attributes = g.getEdgeAttributes();
+            out.writeInt(attributes.nameCount());
+            for (int i = 0; i < attributes.nameCount(); i += 1) {
+                writeString(out, attributes.nameAt(i));
+            }
+            for (int e = 0; e < cg.edgeCount(); e += 1) {
+                out.writeLong(attributes.wayId(e));
+            }
+            for (int e = 0; e < cg.edgeCount(); e += 1) {
+                out.writeInt(attributes.nameId(e));
+            }
+            for (int e = 0; e < cg.edgeCount(); e += 1) {
+                out.writeByte(attributes.highwayClass(e));
+            }
+            for (int e = 0; e < cg.edgeCount(); e += 1) {
+                out.writeFloat(attributes.maxSpeed(e));
+            }
+
+            out.writeInt(g.geteMap().size());
+            for (GraphDB.Edge way : g.geteMap().values()) {
+                out.writeLong(way.id);
+                writeString(out, way.name);
+                writeString(out, way.highway);
+                writeString(out, way.maxSpeed);
+                out.writeInt(way.vertexList.size());
+                for (long v : way.vertexList) {
+                    out.writeLong(v);
+                }
+            }
+
+            KdTree tree = g.getKdTree();
+            out.writeInt(tree.size());
+            for (int k = 0; k < tree.size(); k += 1) {
+                out.writeInt(tree.point(k));
+            }
+            for (int k = 0; k < tree.size(); k += 1) {
+                out.writeDouble(tree.x(k));
+            }
+            for (int k = 0; k < tree.size(); k += 1) {
+                out.writeDouble(tree.y(k));
+            }
+
+            LocationIndex locations = g.getLocationIndex();
+            int l = locations.size();
+            out.writeInt(l);
+            for (int i = 0; i < l; i += 1) {
+                out.writeLong(locations.id(i));
+            }
+            for (int i = 0; i < l; i += 1) {
+                out.writeDouble(locations.lon(i));
+            }
+            for (int i = 0; i < l; i += 1) {
+                out.writeDouble(locations.lat(i));
+            }
+            for (int i = 0; i < l; i += 1) {
+                writeString(out, locations.name(i));
+            }
+        }
+        Files.move(tmp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Reads a snapshot through a memory-mapped file. Callers should check
+     * <code>isFresh</code> first.
+     * @param snapshot The snapshot file.
+     * @return The graph stored in the snapshot.
+     * @throws IOException If the file cannot be read, is not a snapshot of this version, or is
+     *                     truncated or corrupt.
+     */
+    public static GraphDB read(File snapshot) throws IOException {
+        return read(snapshot, WINDOW_BYTES);
+    }
+
+    /**
+     * Same as <code>read(snapshot)</code>, mapping at most <code>windowBytes</code> of the file
+     * at a time, which must be at least <code>Long.BYTES</code>.
+     */
+    static GraphDB read(File snapshot, int windowBytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Truncated snapshot: " + snapshot);
+            }
+            Input in = new Input(channel, windowBytes);
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                throw new IOException("Not a version " + VERSION + " snapshot: " + snapshot);
+            }
+            in.getLong();
+            in.getLong();
+            try {
+                return readBody(in);
+            } catch (RuntimeException e) {
+                /* Corruption the count checks in readBody miss, e.g. a bad name index. */
+                throw new IOException("Corrupt snapshot: " + snapshot, e);
+            }
+        }
+    }
+
+    /**
+     * Reads everything after the header. Every count is checked against the bytes left, so a
+     * truncated or corrupt file fails with an IOException instead of a huge allocation.
+     */
+    private static GraphDB readBody(Input in) throws IOException {
+        int n = readCount(in, 3 * Long.BYTES);
+        long[] ids = in.getLongs(n);
+        double[] lons = in.getDoubles(n);
+        double[] lats = in.getDoubles(n);
+
+        int m = readCount(in, Integer.BYTES + Double.BYTES);
+        int[] offsets = in.getInts(n + 1);
+        int[] targets = in.getInts(m);
+        double[] lengths = in.getDoubles(m);
+        CompactGraph cg = new CompactGraph(ids, lons, lats, offsets, targets, lengths);
+
+        int s = readCount(in, Integer.BYTES);
+        String[] wayNames = new String[s];
+        for (int i = 0; i < s; i += 1) {
+            wayNames[i] = readString(in);
+        }
+        long[] wayIds = in.getLongs(m);
+        int[] nameIds = in.getInts(m);
+        byte[] highways = in.getBytes(m);
+        float[] speeds = in.getFloats(m);
+        EdgeAttributes attributes =
+                new EdgeAttributes(wayIds, nameIds, wayNames, highways, speeds);
+
+        int w = readCount(in, Long.BYTES + 4 * Integer.BYTES);
+        HashMap<Long, GraphDB.Edge> eMap = new HashMap<>();
+        for (int i = 0; i < w; i += 1) {
+            long id = in.getLong();
+            String name = readString(in);
+            String highway = readString(in);
+            String maxSpeed = readString(in);
+            int k = readCount(in, Long.BYTES);
+            List<Long> vertexList = new ArrayList<>(k);
+            for (int j = 0; j < k; j += 1) {
+                vertexList.add(in.getLong());
+            }
+            GraphDB.Edge way = new GraphDB.Edge(id, vertexList);
+            way.setName(name);
+            way.setHighway(highway);
+            way.setMaxSpeed(maxSpeed);
+            eMap.put(id, way);
+        }
+
+        int t = readCount(in, Integer.BYTES + 2 * Double.BYTES);
+        int[] points = in.getInts(t);
+        double[] xs = in.getDoubles(t);
+        double[] ys = in.getDoubles(t);
+
+        int l = readCount(in, Long.BYTES + 2 * Double.BYTES + Integer.BYTES);
+        long[] locationIds = in.getLongs(l);
+        double[] locationLons = in.getDoubles(l);
+        double[] locationLats = in.getDoubles(l);
+        String[] names = new String[l];
+        for (int i = 0; i < l; i += 1) {
+            names[i] = readString(in);
+        }
+        LocationIndex locations =
+                new LocationIndex(locationIds, locationLons, locationLats, names);
+        if (in.remaining() > 0) {
+            throw new IOException("Trailing bytes after snapshot");
+        }
+        return new GraphDB(cg, attributes, eMap, locations, new KdTree(cg, points, xs, ys));
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(Input in) throws IOException {
+        int length = in.getInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > in.remaining()) {
+            throw new IOException("Bad string length " + length);
+        }
+        return new String(in.getBytes(length), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a count of items taking at least <code>bytesEach</code> bytes each.
+     * @throws IOException If the count is negative or there are not enough bytes left for it.
+     */
+    private static int readCount(Input in, int bytesEach) throws IOException {
+        int count = in.getInt();
+        if (count < 0 || count > in.remaining() / bytesEach) {
+            throw new IOException("Bad count " + count + " with " + in.remaining()
+                    + " bytes left");
+        }
+        return count;
+    }
+
+    /**
+     * Reads a file through memory-mapped windows, since one mapping cannot exceed 2 GB. Values
+     * and arrays may cross the end of a window; the next window is mapped where the current
+     * one runs out.
+     */
+    private static class Input {
+        private final FileChannel channel;
+        private final long size;
+        private final int windowBytes;
+        /** The mapped window, and the offset in the file of its first byte. */
+        private MappedByteBuffer buf;
+        private long base;
+
+        Input(FileChannel channel, int windowBytes) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            this.windowBytes = windowBytes;
+            map(0);
+        }
+
+        /** Returns the number of bytes left in the file. */
+        long remaining() {
+            return size - base - buf.position();
+        }
+
+        int getInt() throws IOException {
+            need(Integer.BYTES);
+            return buf.getInt();
+        }
+
+        long getLong() throws IOException {
+            need(Long.BYTES);
+            return buf.getLong();
+        }
+
+        byte[] getBytes(int count) throws IOException {
+            byte[] a = new byte[count];
+            int i = 0;
+            while (i < count) {
+                int k = Math.min(count - i, need(1));
+                buf.get(a, i, k);
+                i += k;
+            }
+            return a;
+        }
+
+        int[] getInts(int count) throws IOException {
+            int[] a = new int[count];
+            int i = 0;
+            while (i < count) {
+                int k = Math.min(count - i, need(Integer.BYTES) / Integer.BYTES);
+                buf.asIntBuffer().get(a, i, k);
+                buf.position(buf.position() + k * Integer.BYTES);
+                i += k;
+            }
+            return a;
+        }
+
+        long[] getLongs(int count) throws IOException {
+            long[] a = new long[count];
+            int i = 0;
+            while (i < count) {
+                int k = Math.min(count - i, need(Long.BYTES) / Long.BYTES);
+                buf.asLongBuffer().get(a, i, k);
+                buf.position(buf.position() + k * Long.BYTES);
+                i += k;
+            }
+            return a;
+        }
+
+        float[] getFloats(int count) throws IOException {
+            float[] a = new float[count];
+            int i = 0;
+            while (i < count) {
+                int k = Math.min(count - i, need(Float.BYTES) / Float.BYTES);
+                buf.asFloatBuffer().get(a, i, k);
+                buf.position(buf.position() + k * Float.BYTES);
+                i += k;
+            }
+            return a;
+        }
+
+        double[] getDoubles(int count) throws IOException {
+            double[] a = new double[count];
+            int i = 0;
+            while (i < count) {
+                int k = Math.min(count - i, need(Double.BYTES) / Double.BYTES);
+                buf.asDoubleBuffer().get(a, i, k);
+                buf.position(buf.position() + k * Double.BYTES);
+                i += k;
+            }
+            return a;
+        }
+
+        /**
+         * Makes at least <code>bytes</code> bytes readable from the window, mapping the next
+         * window if the current one has fewer left.
+         * @return The number of bytes readable from the window.
+         * @throws IOException If the file ends first.
+         */
+        private int need(int bytes) throws IOException {
+            if (buf.remaining() < bytes) {
+                map(base + buf.position());
+                if (buf.remaining() < bytes) {
+                    throw new IOException("Truncated snapshot");
+                }
+            }
+            return buf.remaining();
+        }
+
+        private void map(long offset) throws IOException {
+            base = offset;
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                    Math.min(windowBytes, size - offset));
+        }
+    }
+
+    /** Size of the header: magic, version, source length and source modification time. */
+    private static final int HEADER_BYTES = 2 * Integer.BYTES + 2 * Long.BYTES;
+    /** Most of a snapshot mapped at once, 1 GB; a mapping cannot exceed 2 GB. */
+    private static final int WINDOW_BYTES = 1 << 30;
+}
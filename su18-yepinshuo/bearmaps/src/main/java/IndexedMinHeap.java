@@ -0,0 +1,117 @@
+import java.util.NoSuchElementException;
+
+/**
+ * Binary min-heap of int items in [0, capacity) with double priorities. Because the position of
+ * every item is tracked, <code>contains</code> is O(1) and the priority of an item already in the
+ * heap can be lowered in O(log n) with <code>decreaseKey</code>, instead of inserting it again.
+ */
+public class IndexedMinHeap {
+    /** heap[1 ... size] holds the items; heap[0] is unused. */
+    private final int[] heap;
+    /** pos[v] is the position of v in heap, or 0 if v is not in the heap. */
+    private final int[] pos;
+    /** keys[v] is the priority of v while v is in the heap. */
+    private final double[] keys;
+    private int size;
+
+    public IndexedMinHeap(int capacity) {
+        heap = new int[capacity + 1];
+        pos = new int[capacity];
+        keys = new double[capacity];
+        size = 0;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int v) {
+        return pos[v] != 0;
+    }
+
+    /** Adds <code>v</code>, which must not already be in the heap, with priority key. */
+    public void insert(int v, double key) {
+        size += 1;
+        heap[size] = v;
+        pos[v] = size;
+        keys[v] = key;
+        swim(size);
+    }
+
+    /** Lowers the priority of <code>v</code>, which must be in the heap, to key. */
+    public void decreaseKey(int v, double key) {
+        keys[v] = key;
+        swim(pos[v]);
+    }
+
+    /** Returns the priority of <code>v</code>, which must be in the heap. */
+    public double key(int v) {
+        return keys[v];
+    }
+
+    /** Returns the item with the smallest priority without removing it. */
+    public int min() {
+        if (size == 0) {
+            throw new NoSuchElementException("Heap is empty.");
+        }
+        return heap[1];
+    }
+
+    /** Removes and returns the item with the smallest priority. */
+    public int removeMin() {
+        if (size == 0) {
+            throw new NoSuchElementException("Heap is empty.");
+        }
+        int min = heap[1];
+        exchange(1, size);
+        size -= 1;
+        pos[min] = 0;
+        sink(1);
+        return min;
+    }
+
+    /** Removes all items in time proportional to the number of items left in the heap. */
+    public void clear() {
+        for (int i = 1; i <= size; i += 1) {
+            pos[heap[i]] = 0;
+        }
+        size = 0;
+    }
+
+    private void swim(int k) {
+        while (k > 1 && greater(k / 2, k)) {
+            exchange(k / 2, k);
+            k = k / 2;
+        }
+    }
+
+    private void sink(int k) {
+        while (2 * k <= size) {
+            int j = 2 * k;
+            if (j < size && greater(j, j + 1)) {
+                j += 1;
+            }
+            if (!greater(k, j)) {
+                break;
+            }
+            exchange(k, j);
+            k = j;
+        }
+    }
+
+    private boolean greater(int i, int j) {
+        return keys[heap[i]] > keys[heap[j]];
+    }
+
+    private void exchange(int i, int j) {
+        int t = heap[i];
+        heap[i] = heap[j];
+        heap[j] = t;
+        pos[heap[i]] = i;
+        pos[heap[j]] = j;
+    }
+}
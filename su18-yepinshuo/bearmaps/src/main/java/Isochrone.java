@@ -0,0 +1,154 @@
+import java.util.Arrays;
+
+/**
+ * Everything reachable from a point within a cost budget under a routing profile, e.g. within
+ * two miles or five minutes, as needed for coverage planning.
+ *
+ * The search is Dijkstra from the closest vertex to the point that stops as soon as the cheapest
+ * vertex left on the fringe is over the budget. It runs on the calling thread's pooled
+ * <code>SearchContext</code>, and the outline is gathered in pooled per-thread arrays too, so
+ * a query only allocates its result.
+ *
+ * The outline is star-shaped around the start: the plane around it is cut into
+ * <code>SECTORS</code> equal angles, and the polygon joins the farthest reachable point of each
+ * sector, in angle order. Reachable points are the settled vertices and, where the budget runs
+ * out partway along an edge, the point on that edge where it does, so the outline reaches as far
+ * down every road as the budget allows.
+ */
+public class Isochrone {
+    /** Per-thread squared distance, longitude and latitude of the farthest point per sector. */
+    private static final ThreadLocal<double[][]> SECTOR_POOL =
+            ThreadLocal.withInitial(() -> new double[3][Isochrone.SECTORS]);
+
+    private final long[] ids;
+    private final double[] costs;
+    private final double[][] polygon;
+
+    private Isochrone(long[] ids, double[] costs, double[][] polygon) {
+        this.ids = ids;
+        this.costs = costs;
+        this.polygon = polygon;
+    }
+
+    /**
+     * Finds everything reachable from the closest vertex to (lon, lat) within budget.
+     * @param g <code>GraphDB</code> data source.
+     * @param model The routing profile the budget is in, e.g. miles or seconds.
+     * @param lon The longitude of the starting point.
+     * @param lat The latitude of the starting point.
+     * @param budget The largest cost to spend, in the profile's units.
+     * @return The reachable vertices and their outline.
+     */
+    public static Isochrone compute(GraphDB g, CostModel model, double lon, double lat,
+                                    double budget) {
+        if (!(budget >= 0) || Double.isInfinite(budget)) {
+            throw new IllegalArgumentException("Incorrect parameters: budget must be a "
+                    + "non-negative number.");
+        }
+        CompactGraph cg = g.getCompactGraph();
+        int source = cg.indexOf(g.closest(lon, lat));
+        double[][] sectors = SECTOR_POOL.get();
+        Arrays.fill(sectors[0], -1);
+        double x0 = GraphDB.projectToX(cg.lon(source), cg.lat(source));
+        double y0 = GraphDB.projectToY(cg.lon(source), cg.lat(source));
+
+        SearchContext sc = SearchContext.acquire(cg);
+        IndexedMinHeap fringe = sc.fringe();
+        sc.reach(source, 0, -1, 0);
+        fringe.insert(source, 0);
+        while (!fringe.isEmpty() && fringe.key(fringe.min()) <= budget) {
+            int v = fringe.removeMin();
+            sc.settle(v);
+            double dv = sc.distTo(v);
+            extend(sectors, x0, y0, cg.lon(v), cg.lat(v));
+            for (int e = cg.firstEdge(v); e < cg.endEdge(v); e += 1) {
+                int w = cg.target(e);
+                double d = dv + model.cost(e);
+                if (d > budget) {
+                    /* The budget runs out on this edge; reach as far along it as it allows. */
+                    double f = (budget - dv) / model.cost(e);
+                    extend(sectors, x0, y0, cg.lon(v) + f * (cg.lon(w) - cg.lon(v)),
+                            cg.lat(v) + f * (cg.lat(w) - cg.lat(v)));
+                    continue;
+                }
+                if (sc.isSettled(w)) {
+                    continue;
+                }
+                if (!sc.isReached(w)) {
+                    sc.reach(w, d, v, 0);
+                    fringe.insert(w, d);
+                } else if (d < sc.distTo(w)) {
+                    sc.relax(w, d, v);
+                    fringe.decreaseKey(w, d);
+                }
+            }
+        }
+
+        int n = sc.settledCount();
+        long[] ids = new long[n];
+        double[] costs = new double[n];
+        for (int i = 0; i < n; i += 1) {
+            int v = sc.settledVertex(i);
+            ids[i] = cg.id(v);
+            costs[i] = sc.distTo(v);
+        }
+        return new Isochrone(ids, costs, outline(sectors));
+    }
+
+    /** Returns the OSM ids of the reachable vertices, cheapest first. */
+    public long[] ids() {
+        return ids;
+    }
+
+    /** Returns the cost to each vertex of <code>ids()</code>, in the same order. */
+    public double[] costs() {
+        return costs;
+    }
+
+    /**
+     * Returns the outline of the reachable area as a closed ring of {lon, lat} points, the first
+     * point repeated at the end, counterclockwise as in GeoJSON. With fewer than three sectors
+     * reached, e.g. for a budget of 0, the ring is degenerate.
+     */
+    public double[][] polygon() {
+        return polygon;
+    }
+
+    /** Keeps (lon, lat) if it is the farthest point so far in its sector. */
+    private static void extend(double[][] sectors, double x0, double y0, double lon, double lat) {
+        double dx = GraphDB.projectToX(lon, lat) - x0;
+        double dy = GraphDB.projectToY(lon, lat) - y0;
+        double r2 = dx * dx + dy * dy;
+        int s = (int) ((Math.atan2(dy, dx) + Math.PI) / (2 * Math.PI) * SECTORS);
+        s = Math.min(s, SECTORS - 1);
+        if (r2 > sectors[0][s]) {
+            sectors[0][s] = r2;
+            sectors[1][s] = lon;
+            sectors[2][s] = lat;
+        }
+    }
+
+    /** Returns the farthest point of every sector that was reached, as a closed ring. */
+    private static double[][] outline(double[][] sectors) {
+        int k = 0;
+        for (int s = 0; s < SECTORS; s += 1) {
+            if (sectors[0][s] >= 0) {
+                k += 1;
+            }
+        }
+        double[][] ring = new double[k + 1][];
+        int i = 0;
+        for (int s = 0; s < SECTORS; s += 1) {
+            if (sectors[0][s] >= 0) {
+                ring[i] = new double[]{sectors[1][s], sectors[2][s]};
+                i += 1;
+            }
+        }
+        /* The start itself is always reached, so there is at least one point. */
+        ring[k] = ring[0];
+        return ring;
+    }
+
+    /** Number of equal angles the outline is built from, 5 degrees each. */
+    private static final int SECTORS = 72;
+}
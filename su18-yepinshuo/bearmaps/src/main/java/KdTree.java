@@ -1,9 +1,425 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
 
+/**
+ * Two-dimensional k-d tree over the vertices of a <code>CompactGraph</code>, stored flat in
+ * arrays rather than as linked nodes.
+ *
+ * Points are kept in projected (Transverse Mercator) coordinates, so queries project the query
+ * point once and then only compare doubles. The tree over slots [lo, hi) has its splitting point
+ * at slot mid = (lo + hi) / 2, its left subtree in [lo, mid) and its right subtree in
+ * [mid + 1, hi). Even depths split on x and odd depths split on y.
+ */
 public class KdTree {
-    private KdNode root;
+    /** points[k] is the compact index of the vertex in slot k. */
+    private final int[] points;
+    /** Projected coordinates of the vertex in each slot. */
+    private final double[] xs;
+    private final double[] ys;
 
-    public KdTree(KdNode root) {
-        this.root = root;
+    /** The indexed graph, for great-circle filtering. */
+    private final CompactGraph graph;
+
+    /** Per-thread traversal stacks and nearest-point heaps, so that closest does not allocate. */
+    private final ThreadLocal<Stack> stacks = ThreadLocal.withInitial(Stack::new);
+    private final ThreadLocal<Nearest> singles = ThreadLocal.withInitial(() -> new Nearest(1));
+
+    /**
+     * Builds the tree over every vertex of g in O(n log n): each subtree only needs its median
+     * in place, which is found by quickselect on the primitive arrays rather than by sorting.
+     * Large subtrees are built in parallel on the common fork/join pool.
+     * @param g The graph whose vertices to index.
+     */
+    public KdTree(CompactGraph g) {
+        int n = g.size();
+        points = new int[n];
+        xs = new double[n];
+        ys = new double[n];
+        graph = g;
+        for (int v = 0; v < n; v += 1) {
+            points[v] = v;
+            xs[v] = GraphDB.projectToX(g.lon(v), g.lat(v));
+            ys[v] = GraphDB.projectToY(g.lon(v), g.lat(v));
+        }
+        ForkJoinPool.commonPool().invoke(new BuildTask(0, n, 0));
+    }
+
+    /** Creates a tree from a previously built layout, as read back by GraphSnapshot. */
+    KdTree(CompactGraph g, int[] points, double[] xs, double[] ys) {
+        this.points = points;
+        this.xs = xs;
+        this.ys = ys;
+        graph = g;
+    }
+
+    /** Subtrees smaller than this are built on the current thread. */
+    private static final int PARALLEL_THRESHOLD = 1 << 13;
+    /** Factor by which radius searches widen their projected circle, see withinRadius. */
+    private static final double RADIUS_SLACK = 1.01;
+
+    /** Lays out the subtree over slots [lo, hi), splitting on x at even depths. */
+    private class BuildTask extends RecursiveAction {
+        /** Tasks are never serialized; declared to keep the serialization lint quiet. */
+        private static final long serialVersionUID = 1L;
+        private final int lo;
+        private final int hi;
+        private final int depth;
+
+        BuildTask(int lo, int hi, int depth) {
+            this.lo = lo;
+            this.hi = hi;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo < PARALLEL_THRESHOLD) {
+                build(lo, hi, depth);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            select(lo, hi, mid, depth % 2 == 0 ? xs : ys);
+            invokeAll(new BuildTask(lo, mid, depth + 1), new BuildTask(mid + 1, hi, depth + 1));
+        }
+    }
+
+    private void build(int lo, int hi, int depth) {
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            select(lo, hi, mid, depth % 2 == 0 ? xs : ys);
+            build(lo, mid, depth + 1);
+            lo = mid + 1;
+            depth += 1;
+        }
+    }
+
+    /**
+     * Rearranges slots [lo, hi) so that slot k holds the value it would have if the range were
+     * sorted by keys, everything before it is no greater and everything after it is no smaller.
+     * Uses a three-way partition, so runs of equal keys do not degrade it.
+     */
+    private void select(int lo, int hi, int k, double[] keys) {
+        while (hi - lo > 1) {
+            double pivot = medianOfThree(keys[lo], keys[(lo + hi) >>> 1], keys[hi - 1]);
+            int lt = lo;
+            int gt = hi;
+            int i = lo;
+            while (i < gt) {
+                if (keys[i] < pivot) {
+                    swap(i, lt);
+                    lt += 1;
+                    i += 1;
+                } else if (keys[i] > pivot) {
+                    gt -= 1;
+                    swap(i, gt);
+                } else {
+                    i += 1;
+                }
+            }
+            if (k < lt) {
+                hi = lt;
+            } else if (k >= gt) {
+                lo = gt;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static double medianOfThree(double a, double b, double c) {
+        return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+    }
+
+    private void swap(int i, int j) {
+        int p = points[i];
+        points[i] = points[j];
+        points[j] = p;
+        double t = xs[i];
+        xs[i] = xs[j];
+        xs[j] = t;
+        t = ys[i];
+        ys[i] = ys[j];
+        ys[j] = t;
+    }
+
+    /** Returns the number of points in the tree. */
+    public int size() {
+        return points.length;
+    }
+
+    /** Returns the compact index of the vertex in slot k. */
+    int point(int k) {
+        return points[k];
+    }
+
+    /** Returns the projected x-value of slot k. */
+    double x(int k) {
+        return xs[k];
+    }
+
+    /** Returns the projected y-value of slot k. */
+    double y(int k) {
+        return ys[k];
+    }
+
+    /**
+     * Returns the vertex closest to the given point in projected Euclidean distance.
+     * @param lon The longitude of the query point.
+     * @param lat The latitude of the query point.
+     * @return The compact index of the closest vertex, or -1 if the tree is empty.
+     */
+    public int nearest(double lon, double lat) {
+        Nearest single = singles.get();
+        single.reset();
+        search(GraphDB.projectToX(lon, lat), GraphDB.projectToY(lon, lat), single);
+        return single.size == 0 ? -1 : points[single.slots[0]];
+    }
+
+    /**
+     * Returns the k vertices closest to the given point in projected Euclidean distance.
+     * @param lon The longitude of the query point.
+     * @param lat The latitude of the query point.
+     * @param k The number of vertices wanted.
+     * @return Compact indices of up to k vertices, closest first; empty if k is 0.
+     * @throws IllegalArgumentException If k is negative.
+     */
+    public int[] kNearest(double lon, double lat, int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative: " + k);
+        }
+        if (k == 0) {
+            return new int[0];
+        }
+        Nearest found = new Nearest(k);
+        search(GraphDB.projectToX(lon, lat), GraphDB.projectToY(lon, lat), found);
+        return found.sortedPoints();
+    }
+
+    /**
+     * Returns every vertex within the given great-circle distance of a point.
+     * @param lon The longitude of the query point.
+     * @param lat The latitude of the query point.
+     * @param miles The radius in miles.
+     * @return Compact indices of the vertices in the radius, closest first.
+     */
+    public int[] withinRadius(double lon, double lat, double miles) {
+        /*
+         * The projection stretches distances by at most a fraction of a percent over the map,
+         * so search a slightly larger projected circle and filter by great-circle distance.
+         */
+        double r = miles / GraphDB.R * RADIUS_SLACK;
+        InRadius found = new InRadius(r * r);
+        search(GraphDB.projectToX(lon, lat), GraphDB.projectToY(lon, lat), found);
+
+        int count = 0;
+        int[] slots = new int[found.size];
+        double[] dists = new double[found.size];
+        for (int i = 0; i < found.size; i += 1) {
+            int slot = found.slots[i];
+            int v = points[slot];
+            double d = GraphDB.greatCircle(lon, lat, graph.lon(v), graph.lat(v));
+            if (d <= miles) {
+                slots[count] = slot;
+                dists[count] = d;
+                count += 1;
+            }
+        }
+        return sortByDistance(slots, dists, count);
+    }
+
+    /** Runs <code>kNearest</code> for every query point, in parallel. */
+    public int[][] kNearest(double[] lons, double[] lats, int k) {
+        int[][] results = new int[lons.length][];
+        IntStream.range(0, lons.length).parallel()
+                .forEach(i -> results[i] = kNearest(lons[i], lats[i], k));
+        return results;
+    }
+
+    /** Runs <code>withinRadius</code> for every query point, in parallel. */
+    public int[][] withinRadius(double[] lons, double[] lats, double miles) {
+        int[][] results = new int[lons.length][];
+        IntStream.range(0, lons.length).parallel()
+                .forEach(i -> results[i] = withinRadius(lons[i], lats[i], miles));
+        return results;
+    }
+
+    /**
+     * Visits every subtree that could hold a point closer than <code>found.bound()</code>,
+     * offering each point on the way.
+     */
+    private void search(double qx, double qy, Candidates found) {
+        Stack stack = stacks.get();
+        stack.push(0, points.length, 0, 0.0);
+
+        while (stack.size > 0) {
+            stack.pop();
+            if (stack.bound >= found.bound()) {
+                continue;
+            }
+            int lo = stack.lo;
+            int hi = stack.hi;
+            int depth = stack.depth;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                double dx = qx - xs[mid];
+                double dy = qy - ys[mid];
+                double d = dx * dx + dy * dy;
+                if (d < found.bound()) {
+                    found.offer(mid, d);
+                }
+                double diff = depth % 2 == 0 ? dx : dy;
+                /* Descend into the near side now, visit the far side later if still useful. */
+                if (diff < 0) {
+                    if (diff * diff < found.bound()) {
+                        stack.push(mid + 1, hi, depth + 1, diff * diff);
+                    }
+                    hi = mid;
+                } else {
+                    if (diff * diff < found.bound()) {
+                        stack.push(lo, mid, depth + 1, diff * diff);
+                    }
+                    lo = mid + 1;
+                }
+                depth += 1;
+            }
+        }
+    }
+
+    /** Sorts the first count slots by distance and returns their compact indices. */
+    private int[] sortByDistance(int[] slots, double[] dists, int count) {
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i += 1) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (i, j) -> Double.compare(dists[i], dists[j]));
+        int[] result = new int[count];
+        for (int i = 0; i < count; i += 1) {
+            result[i] = points[slots[order[i]]];
+        }
+        return result;
+    }
+
+    /** Points collected by a search. */
+    private abstract static class Candidates {
+        int[] slots;
+        int size;
+
+        /** Only points with a squared projected distance below this are of interest. */
+        abstract double bound();
+
+        abstract void offer(int slot, double d);
     }
 
+    /** The k closest points seen so far, as a max-heap on squared distance; k is positive. */
+    private class Nearest extends Candidates {
+        private final double[] dists;
+
+        Nearest(int k) {
+            slots = new int[k];
+            dists = new double[k];
+        }
+
+        void reset() {
+            size = 0;
+        }
+
+        @Override
+        double bound() {
+            return size < slots.length ? Double.POSITIVE_INFINITY : dists[0];
+        }
+
+        @Override
+        void offer(int slot, double d) {
+            int k;
+            if (size < slots.length) {
+                /* Sift up from the new last position. */
+                k = size;
+                size += 1;
+                while (k > 0 && dists[(k - 1) / 2] < d) {
+                    slots[k] = slots[(k - 1) / 2];
+                    dists[k] = dists[(k - 1) / 2];
+                    k = (k - 1) / 2;
+                }
+            } else {
+                /* Replace the farthest point and sift down. */
+                k = 0;
+                while (2 * k + 1 < size) {
+                    int j = 2 * k + 1;
+                    if (j + 1 < size && dists[j + 1] > dists[j]) {
+                        j += 1;
+                    }
+                    if (dists[j] <= d) {
+                        break;
+                    }
+                    slots[k] = slots[j];
+                    dists[k] = dists[j];
+                    k = j;
+                }
+            }
+            slots[k] = slot;
+            dists[k] = d;
+        }
+
+        int[] sortedPoints() {
+            return sortByDistance(slots, dists, size);
+        }
+    }
+
+    /** Every point within a fixed squared distance. */
+    private static class InRadius extends Candidates {
+        private final double radius2;
+
+        InRadius(double radius2) {
+            this.radius2 = radius2;
+            slots = new int[16];
+        }
+
+        @Override
+        double bound() {
+            return radius2;
+        }
+
+        @Override
+        void offer(int slot, double d) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            slots[size] = slot;
+            size += 1;
+        }
+    }
+
+    /** Explicit stack of pending subtrees with a lower bound on their squared distance. */
+    private static class Stack {
+        private int[] ranges = new int[3 * 64];
+        private double[] bounds = new double[64];
+        private int size;
+        /** The entry last popped. */
+        private int lo;
+        private int hi;
+        private int depth;
+        private double bound;
+
+        void push(int l, int h, int d, double b) {
+            if (size == bounds.length) {
+                ranges = Arrays.copyOf(ranges, ranges.length * 2);
+                bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            }
+            ranges[3 * size] = l;
+            ranges[3 * size + 1] = h;
+            ranges[3 * size + 2] = d;
+            bounds[size] = b;
+            size += 1;
+        }
+
+        void pop() {
+            size -= 1;
+            lo = ranges[3 * size];
+            hi = ranges[3 * size + 1];
+            depth = ranges[3 * size + 2];
+            bound = bounds[size];
+        }
+    }
 }
@@ -0,0 +1,367 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * ALT (A*, Landmarks, Triangle inequality) lower bounds for one <code>CostModel</code> over a
+ * <code>CompactGraph</code>.
+ *
+ * A few landmarks L are chosen far apart, near the edges of the map, and the cost of the
+ * cheapest route from every vertex to every landmark and back is computed once with Dijkstra.
+ * By the triangle inequality, the cost from v to t is then at least
+ * <code>d(L, t) - d(L, v)</code> and at least <code>d(v, L) - d(t, L)</code> for every L, and
+ * the largest of these bounds is a far better A* heuristic than the great-circle distance:
+ * when L lies behind t as seen from v, the bound is exact along the whole route. Unlike a
+ * contraction hierarchy, preprocessing is only 2k searches, and <code>Router.shortestPath</code>
+ * itself is unchanged apart from its heuristic.
+ *
+ * Distances are stored as floats, vertex by vertex, so the k bounds of a vertex sit next to each
+ * other in memory. A float keeps 24 bits, so every bound is lowered by a small slack to make up
+ * for rounding and never overestimates.
+ *
+ * Layout of the file written by <code>write</code> (all values big-endian):
+ * <pre>
+ *   header:    int MAGIC, int VERSION, long fingerprint of the graph and costs, string profile,
+ *              int number of landmarks asked for
+ *   landmarks: int k, int[k] vertices, float[n * k] from, float[n * k] to
+ * </pre>
+ * @source Goldberg and Harrelson, Computing the Shortest Path: A* Search Meets Graph Theory,
+ *         SODA 2005.
+ */
+public class Landmarks {
+    private final CompactGraph graph;
+    private final CostModel model;
+    /** The number of landmarks asked for, which may be more than were chosen. */
+    private final int requested;
+    /** Compact index of each landmark. */
+    private final int[] vertices;
+    /** from[v * k + i] is the cost from landmark i to v, infinite if v cannot be reached. */
+    private final float[] from;
+    /** to[v * k + i] is the cost from v to landmark i, infinite if there is no route. */
+    private final float[] to;
+    /** Subtracted from every bound to make up for float rounding. */
+    private final double slack;
+
+    /**
+     * Chooses up to k landmarks and computes the distances to and from each. Landmarks are
+     * chosen greedily, each one the vertex farthest from all landmarks chosen before it,
+     * starting from the vertex farthest from the center of the map.
+     * @param graph The graph.
+     * @param model The costs the bounds hold for.
+     * @param k The number of landmarks; fewer are chosen if the graph has fewer vertices.
+     */
+    public Landmarks(CompactGraph graph, CostModel model, int k) {
+        this.graph = graph;
+        this.model = model;
+        this.requested = k;
+        int n = graph.size();
+        int[] chosen = new int[Math.min(k, n)];
+        double[][] fromDist = new double[chosen.length][];
+        SearchContext sc = new SearchContext(graph);
+        /* Distance to the nearest landmark so far, which the next landmark maximises. */
+        double[] nearest = new double[n];
+        Arrays.fill(nearest, Double.POSITIVE_INFINITY);
+        int count = 0;
+        if (chosen.length > 0) {
+            double[] fromCenter = dijkstra(graph, model, sc, center(graph), false);
+            int next = farthest(fromCenter);
+            while (count < chosen.length && next >= 0) {
+                chosen[count] = next;
+                fromDist[count] = dijkstra(graph, model, sc, next, false);
+                for (int v = 0; v < n; v += 1) {
+                    nearest[v] = Math.min(nearest[v], fromDist[count][v]);
+                }
+                count += 1;
+                next = farthest(nearest);
+            }
+        }
+        vertices = Arrays.copyOf(chosen, count);
+        int[] landmarks = vertices;
+        double[][] toDist = new double[count][];
+        IntStream.range(0, count).parallel().forEach(i ->
+                toDist[i] = dijkstra(graph, model, new SearchContext(graph), landmarks[i], true));
+        from = new float[n * count];
+        to = new float[n * count];
+        for (int i = 0; i < count; i += 1) {
+            for (int v = 0; v < n; v += 1) {
+                from[v * count + i] = (float) fromDist[i][v];
+                to[v * count + i] = (float) toDist[i][v];
+            }
+        }
+        slack = slack(from, to);
+    }
+
+    /** Creates landmarks from arrays read back by <code>read</code>. */
+    private Landmarks(CompactGraph graph, CostModel model, int requested, int[] vertices,
+                      float[] from, float[] to) {
+        this.graph = graph;
+        this.model = model;
+        this.requested = requested;
+        this.vertices = vertices;
+        this.from = from;
+        this.to = to;
+        this.slack = slack(from, to);
+    }
+
+    /** Returns the profile the bounds hold for. */
+    public CostModel model() {
+        return model;
+    }
+
+    /** Returns the number of landmarks. */
+    public int size() {
+        return vertices.length;
+    }
+
+    /** Returns the compact index of landmark i. */
+    public int vertex(int i) {
+        return vertices[i];
+    }
+
+    /**
+     * Returns a lower bound on the cost of the cheapest route from v to t, the largest of the
+     * triangle inequality bounds over all landmarks, or 0 if none applies.
+     * @param v Compact index of the vertex.
+     * @param t Compact index of the destination.
+     * @return The bound, which is infinite if t cannot be reached from v.
+     */
+    public double lowerBound(int v, int t) {
+        int k = vertices.length;
+        int vi = v * k;
+        int ti = t * k;
+        double best = 0;
+        for (int i = 0; i < k; i += 1) {
+            /* NaN, from infinity minus infinity, never compares greater and so is skipped. */
+            double forward = (double) from[ti + i] - from[vi + i];
+            if (forward > best) {
+                best = forward;
+            }
+            double backward = (double) to[vi + i] - to[ti + i];
+            if (backward > best) {
+                best = backward;
+            }
+        }
+        return best > slack ? best - slack : 0;
+    }
+
+    /**
+     * Writes the landmarks to <code>file</code>, through a temporary file that is then moved into
+     * place, like <code>GraphSnapshot.write</code>.
+     */
+    public void write(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fingerprint(graph, model));
+            byte[] name = model.name().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(name.length);
+            out.write(name);
+            out.writeInt(requested);
+            out.writeInt(vertices.length);
+            for (int v : vertices) {
+                out.writeInt(v);
+            }
+            for (float d : from) {
+                out.writeFloat(d);
+            }
+            for (float d : to) {
+                out.writeFloat(d);
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Reads landmarks written by <code>write</code> for the same graph, costs and number of
+     * landmarks.
+     * @param file The landmarks file.
+     * @param graph The graph the landmarks are for.
+     * @param model The costs the landmarks are for.
+     * @param k The number of landmarks asked for.
+     * @return The landmarks, or null if the file does not exist, was written by another
+     * version, for another graph, other costs or another k, or is truncated.
+     */
+    public static Landmarks read(File file, CompactGraph graph, CostModel model, int k)
+            throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION
+                    || buf.getLong() != fingerprint(graph, model)) {
+                return null;
+            }
+            int nameLength = buf.getInt();
+            if (nameLength < 0 || nameLength > buf.remaining() - 2 * Integer.BYTES) {
+                return null;
+            }
+            byte[] name = new byte[nameLength];
+            buf.get(name);
+            if (!new String(name, StandardCharsets.UTF_8).equals(model.name())
+                    || buf.getInt() != k) {
+                return null;
+            }
+            int count = buf.getInt();
+            long n = graph.size();
+            if (count < 0 || count > Math.min(k, n)
+                    || buf.remaining() != count * (1 + 2 * n) * Integer.BYTES) {
+                return null;
+            }
+            int[] vertices = new int[count];
+            buf.asIntBuffer().get(vertices);
+            buf.position(buf.position() + count * Integer.BYTES);
+            float[] from = new float[graph.size() * count];
+            buf.asFloatBuffer().get(from);
+            buf.position(buf.position() + from.length * Float.BYTES);
+            float[] to = new float[graph.size() * count];
+            buf.asFloatBuffer().get(to);
+            for (int v : vertices) {
+                if (v < 0 || v >= n) {
+                    return null;
+                }
+            }
+            return new Landmarks(graph, model, k, vertices, from, to);
+        }
+    }
+
+    /**
+     * Runs Dijkstra over the whole graph from s, or towards s over reversed edges.
+     * @return The cost from s to every vertex, or from every vertex to s if
+     * <code>reverse</code>; infinite where there is no route.
+     */
+    private static double[] dijkstra(CompactGraph graph, CostModel model, SearchContext sc,
+                                     int s, boolean reverse) {
+        double[] dist = new double[graph.size()];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        sc.begin();
+        IndexedMinHeap fringe = sc.fringe();
+        sc.reach(s, 0, -1, 0);
+        fringe.insert(s, 0);
+        while (!fringe.isEmpty()) {
+            int v = fringe.removeMin();
+            sc.settle(v);
+            dist[v] = sc.distTo(v);
+            for (int e = graph.firstEdge(v); e < graph.endEdge(v); e += 1) {
+                int w = graph.target(e);
+                if (sc.isSettled(w)) {
+                    continue;
+                }
+                /* Edges are two-way, so the edge w - v exists whenever v - w does. */
+                int edge = reverse ? graph.edge(w, v) : e;
+                if (edge < 0) {
+                    continue;
+                }
+                double d = dist[v] + model.cost(edge);
+                if (!sc.isReached(w)) {
+                    sc.reach(w, d, v, 0);
+                    fringe.insert(w, d);
+                } else if (d < sc.distTo(w)) {
+                    sc.relax(w, d, v);
+                    fringe.decreaseKey(w, d);
+                }
+            }
+        }
+        return dist;
+    }
+
+    /** Returns the vertex nearest the middle of the graph's bounding box. */
+    private static int center(CompactGraph graph) {
+        double minLon = Double.POSITIVE_INFINITY;
+        double maxLon = Double.NEGATIVE_INFINITY;
+        double minLat = Double.POSITIVE_INFINITY;
+        double maxLat = Double.NEGATIVE_INFINITY;
+        for (int v = 0; v < graph.size(); v += 1) {
+            minLon = Math.min(minLon, graph.lon(v));
+            maxLon = Math.max(maxLon, graph.lon(v));
+            minLat = Math.min(minLat, graph.lat(v));
+            maxLat = Math.max(maxLat, graph.lat(v));
+        }
+        double lon = (minLon + maxLon) / 2;
+        double lat = (minLat + maxLat) / 2;
+        int best = 0;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        for (int v = 0; v < graph.size(); v += 1) {
+            double d = GraphDB.greatCircle(lon, lat, graph.lon(v), graph.lat(v));
+            if (d < bestDistance) {
+                best = v;
+                bestDistance = d;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the vertex with the largest finite, positive distance, or -1 if there is none,
+     * i.e. every vertex that can be reached is already a landmark.
+     */
+    private static int farthest(double[] dist) {
+        int best = -1;
+        double bestDistance = 0;
+        for (int v = 0; v < dist.length; v += 1) {
+            if (dist[v] > bestDistance && dist[v] != Double.POSITIVE_INFINITY) {
+                best = v;
+                bestDistance = dist[v];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns how far a difference of two stored distances can be off: each is rounded by at
+     * most 2^-24 of the largest finite distance.
+     */
+    private static double slack(float[] from, float[] to) {
+        double max = 0;
+        for (int i = 0; i < from.length; i += 1) {
+            if (from[i] != Float.POSITIVE_INFINITY) {
+                max = Math.max(max, from[i]);
+            }
+            if (to[i] != Float.POSITIVE_INFINITY) {
+                max = Math.max(max, to[i]);
+            }
+        }
+        return max * ROUNDING_SLACK;
+    }
+
+    /** Hashes the graph's vertex ids and edges and every edge cost under <code>model</code>. */
+    private static long fingerprint(CompactGraph graph, CostModel model) {
+        long h = graph.size() * 31L + graph.edgeCount();
+        for (int v = 0; v < graph.size(); v += 1) {
+            h = h * 31 + graph.id(v);
+            h = h * 31 + graph.firstEdge(v);
+        }
+        for (int e = 0; e < graph.edgeCount(); e += 1) {
+            h = h * 31 + graph.target(e);
+            h = h * 31 + Double.doubleToLongBits(model.cost(e));
+        }
+        return h;
+    }
+
+    /** "LMRK" in ASCII. */
+    private static final int MAGIC = 0x4c4d524b;
+    /** Bump whenever the layout changes. */
+    private static final int VERSION = 2;
+    /**
+     * Smallest file: magic, version, fingerprint, an empty profile name, the number of
+     * landmarks asked for and the number chosen.
+     */
+    private static final int HEADER_BYTES = 5 * Integer.BYTES + Long.BYTES;
+    /** Twice the relative rounding error of a float, 2^-24, with room for the subtraction. */
+    private static final double ROUNDING_SLACK = 0x1p-22;
+}
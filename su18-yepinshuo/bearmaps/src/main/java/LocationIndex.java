@@ -0,0 +1,289 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Autocomplete and exact lookup over the names of OSM locations.
+ *
+ * Every distinct full name is an entry, and entries are sorted by their cleaned name (see
+ * <code>GraphDB.cleanString</code>). This is the leaf order of a trie over cleaned names, so the
+ * entries under any trie node, i.e. matching any prefix, form one contiguous range. A
+ * <code>Cursor</code> is such a node: extending it by a character narrows its range with two
+ * binary searches inside the previous range, so a caller that keeps one user's cursor, e.g. per
+ * session, reuses the work done for the shorter prefix when the user types one more character.
+ * <code>complete</code> keeps no such state and searches all entries on every call.
+ *
+ * Matches are ranked by weight, the number of locations that share a name, which favours chains
+ * and landmarks that are mapped many times. A sparse table answers "heaviest entry in a range" in
+ * O(1), so the top k matches of any prefix come out in O(k log k) however many names match.
+ */
+public class LocationIndex {
+    /** The raw locations, in the order they were given. */
+    private final long[] ids;
+    private final double[] lons;
+    private final double[] lats;
+    private final String[] names;
+
+    /** Cleaned name of each entry, in ascending order. */
+    private final String[] keys;
+    /** Full name of each entry. */
+    private final String[] fullNames;
+    /** Number of locations with each entry's name. */
+    private final int[] weights;
+    /** Locations of entry e are byEntry[entryOffsets[e]] ... byEntry[entryOffsets[e + 1] - 1]. */
+    private final int[] entryOffsets;
+    private final int[] byEntry;
+    /** maxTable[j][i] is the heaviest entry in [i, i + 2^j), the leftmost on ties. */
+    private final int[][] maxTable;
+
+    /**
+     * Builds the index. The arrays are parallel, one element per named location.
+     * @param ids OSM ids of the locations.
+     * @param lons Longitudes of the locations.
+     * @param lats Latitudes of the locations.
+     * @param names Full names of the locations.
+     */
+    public LocationIndex(long[] ids, double[] lons, double[] lats, String[] names) {
+        this.ids = ids;
+        this.lons = lons;
+        this.lats = lats;
+        this.names = names;
+        int n = ids.length;
+        String[] cleaned = new String[n];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i += 1) {
+            cleaned[i] = GraphDB.cleanString(names[i]);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int c = cleaned[a].compareTo(cleaned[b]);
+            return c != 0 ? c : names[a].compareTo(names[b]);
+        });
+
+        int entries = 0;
+        for (int i = 0; i < n; i += 1) {
+            if (i == 0 || !names[order[i]].equals(names[order[i - 1]])) {
+                entries += 1;
+            }
+        }
+        keys = new String[entries];
+        fullNames = new String[entries];
+        weights = new int[entries];
+        entryOffsets = new int[entries + 1];
+        byEntry = new int[n];
+        int e = -1;
+        for (int i = 0; i < n; i += 1) {
+            int loc = order[i];
+            if (i == 0 || !names[loc].equals(names[order[i - 1]])) {
+                e += 1;
+                keys[e] = cleaned[loc];
+                fullNames[e] = names[loc];
+                entryOffsets[e] = i;
+            }
+            weights[e] += 1;
+            byEntry[i] = loc;
+        }
+        entryOffsets[entries] = n;
+
+        int levels = 1;
+        while ((1 << levels) <= entries) {
+            levels += 1;
+        }
+        maxTable = new int[levels][];
+        maxTable[0] = new int[entries];
+        for (int i = 0; i < entries; i += 1) {
+            maxTable[0][i] = i;
+        }
+        for (int j = 1; j < levels; j += 1) {
+            int half = 1 << (j - 1);
+            maxTable[j] = new int[entries - (1 << j) + 1];
+            for (int i = 0; i < maxTable[j].length; i += 1) {
+                maxTable[j][i] = heavier(maxTable[j - 1][i], maxTable[j - 1][i + half]);
+            }
+        }
+    }
+
+    /** Returns the number of named locations. */
+    public int size() {
+        return ids.length;
+    }
+
+    long id(int i) {
+        return ids[i];
+    }
+
+    double lon(int i) {
+        return lons[i];
+    }
+
+    double lat(int i) {
+        return lats[i];
+    }
+
+    String name(int i) {
+        return names[i];
+    }
+
+    /** Returns a cursor at the root, matching every name. */
+    public Cursor cursor() {
+        return new Cursor(0, keys.length, "");
+    }
+
+    /**
+     * Returns up to k full names whose cleaned form starts with the cleaned prefix, heaviest
+     * first. The range of matching entries is found with two binary searches over all entries.
+     * @param prefix The prefix, with or without punctuation and in any case; null matches
+     *               nothing.
+     * @param k The maximum number of names to return.
+     * @return The matching names.
+     */
+    public List<String> complete(String prefix, int k) {
+        if (prefix == null) {
+            return Collections.emptyList();
+        }
+        String cleaned = GraphDB.cleanString(prefix);
+        return new Cursor(lowerBound(cleaned), prefixEnd(cleaned), cleaned).top(k);
+    }
+
+    /**
+     * Returns every location whose cleaned name equals the cleaned <code>name</code>.
+     * @param name A location name, with or without punctuation and in any case; null matches
+     *             nothing.
+     * @return The matching locations.
+     */
+    public List<LocationParams> lookup(String name) {
+        if (name == null) {
+            return new ArrayList<>();
+        }
+        String cleaned = GraphDB.cleanString(name);
+        int lo = lowerBound(cleaned);
+        List<LocationParams> result = new ArrayList<>();
+        for (int e = lo; e < keys.length && keys[e].equals(cleaned); e += 1) {
+            for (int i = entryOffsets[e]; i < entryOffsets[e + 1]; i += 1) {
+                int loc = byEntry[i];
+                result.add(new LocationParams(lats[loc], lons[loc], names[loc], ids[loc]));
+            }
+        }
+        return result;
+    }
+
+    /** Returns the first entry whose key is not less than key. */
+    private int lowerBound(String key) {
+        int lo = 0;
+        int hi = keys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid].compareTo(key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Returns the first entry that neither starts with prefix nor sorts before it. */
+    private int prefixEnd(String prefix) {
+        int lo = 0;
+        int hi = keys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid].compareTo(prefix) < 0 || keys[mid].startsWith(prefix)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Returns the heaviest entry in [lo, hi), which must not be empty. */
+    private int heaviest(int lo, int hi) {
+        int j = 31 - Integer.numberOfLeadingZeros(hi - lo);
+        return heavier(maxTable[j][lo], maxTable[j][hi - (1 << j)]);
+    }
+
+    private int heavier(int a, int b) {
+        if (weights[a] != weights[b]) {
+            return weights[a] > weights[b] ? a : b;
+        }
+        return Math.min(a, b);
+    }
+
+    /**
+     * A node of the name trie: the range [lo, hi) of entries whose keys start with
+     * <code>prefix</code>. Cursors are immutable and can be shared between threads.
+     */
+    public class Cursor {
+        private final int lo;
+        private final int hi;
+        private final String prefix;
+
+        private Cursor(int lo, int hi, String prefix) {
+            this.lo = lo;
+            this.hi = hi;
+            this.prefix = prefix;
+        }
+
+        /**
+         * Returns the cursor for this prefix followed by c. Characters that cleaning removes
+         * leave the cursor unchanged.
+         */
+        public Cursor extend(char c) {
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == ' ')) {
+                return this;
+            }
+            c = Character.toLowerCase(c);
+            int depth = prefix.length();
+            return new Cursor(firstAtLeast(depth, c), firstAtLeast(depth, (char) (c + 1)),
+                    prefix + c);
+        }
+
+        /** Returns the first entry in [lo, hi) whose character at depth is at least c. */
+        private int firstAtLeast(int depth, char c) {
+            int a = lo;
+            int b = hi;
+            while (a < b) {
+                int mid = (a + b) >>> 1;
+                String key = keys[mid];
+                /* Keys equal to the prefix sort before every longer key. */
+                if (key.length() <= depth || key.charAt(depth) < c) {
+                    a = mid + 1;
+                } else {
+                    b = mid;
+                }
+            }
+            return a;
+        }
+
+        /** Returns the number of distinct names under this cursor. */
+        public int count() {
+            return hi - lo;
+        }
+
+        /** Returns up to k full names under this cursor, heaviest first. */
+        public List<String> top(int k) {
+            if (lo >= hi || k <= 0) {
+                return Collections.emptyList();
+            }
+            List<String> result = new ArrayList<>(Math.min(k, hi - lo));
+            /* Ranges {lo, hi, heaviest}, ordered by the weight of their heaviest entry. */
+            PriorityQueue<int[]> ranges = new PriorityQueue<>((x, y) -> x[2] == y[2]
+                    ? 0 : heavier(x[2], y[2]) == x[2] ? -1 : 1);
+            ranges.add(new int[]{lo, hi, heaviest(lo, hi)});
+            while (!ranges.isEmpty() && result.size() < k) {
+                int[] r = ranges.poll();
+                result.add(fullNames[r[2]]);
+                if (r[0] < r[2]) {
+                    ranges.add(new int[]{r[0], r[2], heaviest(r[0], r[2])});
+                }
+                if (r[2] + 1 < r[1]) {
+                    ranges.add(new int[]{r[2] + 1, r[1], heaviest(r[2] + 1, r[1])});
+                }
+            }
+            return result;
+        }
+    }
+}
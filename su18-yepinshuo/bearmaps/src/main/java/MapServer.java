@@ -1,20 +1,27 @@
-import java.awt.Graphics;
-import java.awt.Graphics2D;
-import java.awt.BasicStroke;
-import java.awt.Color;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
 import javax.imageio.ImageIO;
 import java.io.IOException;
-import java.util.Base64;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.IntStream;
 
 import com.google.gson.FieldNamingPolicy;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
+import spark.Request;
+import spark.Response;
+
 import static spark.Spark.*;
 
 /**
@@ -48,11 +55,18 @@ public class MapServer {
     private static GraphDB graph;
     /** The <code>Rasterer</code> responsible for computing the shortest path and directions. */
     private static Rasterer rasterer;
+    /** Decoded tile images shared by all raster requests. */
+    private static TileCache tileCache;
+    /** Encodes rastered images for the <code>/raster</code> response. */
+    private static PngEncoder pngEncoder;
+    /** Finished <code>/raster</code> images, keyed by tile rectangle and route. */
+    private static RasterCache rasterCache;
     /**
-     * The most recently-requested shortest-paths route. The <code>renderImage</code> method redraws
-     * this route every time a new rastering result is requested from the browser.
+     * The most recently-requested shortest-paths route of each session. The
+     * <code>renderImage</code> method redraws the session's route every time a new rastering
+     * result is requested from the browser.
      */
-    private static List<Long> route;
+    private static RouteStore routes;
     /** The configured Gson Java serializer. */
     private static Gson gson;
 
@@ -61,12 +75,34 @@ public class MapServer {
      * independently of the main method for the tests to function properly.
      */
     public static void initialize() {
-        graph = new GraphDB(OSM_DB_PATH);
+        graph = GraphDB.load(OSM_DB_PATH, OSM_SNAPSHOT_PATH);
+        if (USE_CONTRACTION_HIERARCHY) {
+            graph.prepareContractionHierarchy();
+        }
+        if (LANDMARK_COUNT > 0) {
+            for (String profile : new String[]{CostModel.DISTANCE, CostModel.TRAVEL_TIME}) {
+                graph.prepareLandmarks(graph.getCostModel(profile), LANDMARK_COUNT,
+                        String.format(LANDMARKS_PATH, profile));
+            }
+        }
         rasterer = new Rasterer();
-        route = Collections.emptyList();
+        tileCache = new TileCache(TILE_CACHE_BYTES, MapServer::decodeTile);
+        pngEncoder = new PngEncoder(PNG_COMPRESSION_LEVEL);
+        rasterCache = new RasterCache(RASTER_CACHE_BYTES);
+        routes = new RouteStore(MAX_ROUTE_SESSIONS, ROUTE_TTL_MILLIS);
         gson = new GsonBuilder()
                 .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
                 .create();
+        Metrics.counter("bearmaps_tile_cache_hits_total",
+                "Tiles found decoded in the tile cache.", tileCache::hits);
+        Metrics.counter("bearmaps_tile_cache_misses_total",
+                "Tiles that had to be read and decoded.", tileCache::misses);
+        Metrics.counter("bearmaps_tile_cache_evictions_total",
+                "Tiles evicted from the tile cache.", tileCache::evictions);
+        Metrics.counter("bearmaps_raster_cache_hits_total",
+                "Rasters served from the raster cache.", rasterCache::hits);
+        Metrics.counter("bearmaps_raster_cache_misses_total",
+                "Rasters that had to be rendered.", rasterCache::misses);
     }
 
     /**
@@ -87,20 +123,35 @@ public class MapServer {
         get("/raster", (req, res) -> {
             RasterResultParams resultParams = null;
             try {
+                long start = Metrics.start();
                 RasterRequestParams params = RasterRequestParams.from(req.queryMap().toMap());
+                Metrics.record(Metrics.Stage.RASTER_PARAMS, start);
+                start = Metrics.start();
                 resultParams = rasterer.getMapRaster(params);
+                Metrics.record(Metrics.Stage.GET_MAP_RASTER, start);
             } catch (IllegalArgumentException e) {
                 halt(HALT_RESPONSE, e.getMessage());
             }
+            if (!resultParams.querySuccess) {
+                return gson.toJson(resultParams);
+            }
+            RouteOverlay overlay = routes.get(req.cookie(SESSION_COOKIE));
             try {
-                ByteArrayOutputStream os = new ByteArrayOutputStream();
-                BufferedImage img = renderImage(resultParams);
-                ImageIO.write(img, "png", os);
-                return gson.toJson(
-                        new RenderedRasterResultParams(
-                                resultParams, img.getWidth(), img.getHeight(),
-                                Base64.getEncoder().encodeToString(os.toByteArray())
-                        ));
+                RasterCache.Entry raster = rasterCache.get(resultParams, overlay.id());
+                if (raster == null) {
+                    long start = Metrics.start();
+                    BufferedImage img = renderImage(resultParams, overlay);
+                    Metrics.record(Metrics.Stage.COMPOSE, start);
+                    start = Metrics.start();
+                    raster = encodeRaster(img);
+                    Metrics.record(Metrics.Stage.PNG_ENCODE, start);
+                    rasterCache.put(resultParams, overlay.id(), raster);
+                }
+                res.type("application/json");
+                long start = Metrics.start();
+                writeRasterResponse(resultParams, raster, res.raw().getOutputStream());
+                Metrics.record(Metrics.Stage.RASTER_JSON, start);
+                return "";
             } catch (IOException e) {
                 e.printStackTrace();
             }
@@ -110,37 +161,140 @@ public class MapServer {
 
         /* Define the routing endpoint for HTTP GET requests. */
         get("/route", (req, res) -> {
+            long start = Metrics.start();
             RouteRequestParams  params = null;
             try {
                 params = RouteRequestParams.from(req.queryMap().toMap());
             } catch (IllegalArgumentException e) {
                 halt(HALT_RESPONSE, e.getMessage());
             }
-            route = Router.shortestPath(graph,
-                    params.startLon, params.startLat, params.endLon, params.endLat);
+            String profile = req.queryParams("profile");
+            if (profile == null) {
+                profile = CostModel.DISTANCE;
+            }
+            CostModel model = graph.getCostModel(profile);
+            if (model == null) {
+                halt(HALT_RESPONSE, "Unknown routing profile: " + profile);
+            }
+            Metrics.record(Metrics.Stage.ROUTE_PARAMS, start);
+            start = Metrics.start();
+            /* The contraction hierarchy is built for distances only. */
+            List<Long> route = profile.equals(CostModel.DISTANCE)
+                    ? Router.shortestPathCH(graph,
+                            params.startLon, params.startLat, params.endLon, params.endLat)
+                    : Router.shortestPath(graph, model,
+                            params.startLon, params.startLat, params.endLon, params.endLat);
+            Metrics.record(Metrics.Stage.SHORTEST_PATH, start);
+            RouteOverlay previous = routes.put(session(req, res), RouteOverlay.of(graph, route));
+            rasterCache.invalidate(previous.id());
+            start = Metrics.start();
             String directions = getDirectionsText(Router.routeDirections(graph, route));
+            Metrics.record(Metrics.Stage.ROUTE_DIRECTIONS, start);
+            start = Metrics.start();
             RouteResultParams routeParams = new RouteResultParams(!route.isEmpty(), directions);
-            return gson.toJson(routeParams);
+            String json = gson.toJson(routeParams);
+            Metrics.record(Metrics.Stage.ROUTE_JSON, start);
+            return json;
         });
 
         /* Define the API endpoint for clearing the current route. */
         get("/clear_route", (req, res) -> {
-            route = Collections.emptyList();
+            RouteOverlay previous = routes.remove(session(req, res));
+            rasterCache.invalidate(previous.id());
             return true;
         });
 
+        /* Define the API endpoint for many-to-many route costs, e.g.
+         * /matrix?sources=lon,lat;lon,lat&targets=lon,lat&profile=time */
+        get("/matrix", (req, res) -> {
+            double[][] sources = null;
+            double[][] targets = null;
+            try {
+                sources = parsePoints(req.queryParams("sources"));
+                targets = parsePoints(req.queryParams("targets"));
+            } catch (IllegalArgumentException e) {
+                halt(HALT_RESPONSE, e.getMessage());
+            }
+            String profile = req.queryParams("profile");
+            CostModel model = graph.getCostModel(profile == null ? CostModel.DISTANCE : profile);
+            if (model == null) {
+                halt(HALT_RESPONSE, "Unknown routing profile: " + profile);
+            }
+            long start = Metrics.start();
+            double[][] costs = Router.distanceMatrix(graph, model,
+                    sources[0], sources[1], targets[0], targets[1]);
+            Metrics.record(Metrics.Stage.MATRIX, start);
+            /* JSON has no infinity, so unreachable targets are null. */
+            List<List<Double>> rows = new ArrayList<>();
+            for (double[] row : costs) {
+                List<Double> cells = new ArrayList<>();
+                for (double c : row) {
+                    cells.add(Double.isInfinite(c) ? null : c);
+                }
+                rows.add(cells);
+            }
+            Map<String, Object> result = new HashMap<>();
+            result.put("profile", model.name());
+            result.put("costs", rows);
+            return gson.toJson(result);
+        });
+
+        /* Define the API endpoint for everything reachable within a budget, e.g.
+         * /isochrone?lon=-122.26&lat=37.87&minutes=5 or ...&miles=2 */
+        get("/isochrone", (req, res) -> {
+            Isochrone reachable = null;
+            String profile = null;
+            try {
+                double lon = parseParam(req, "lon");
+                double lat = parseParam(req, "lat");
+                boolean minutes = req.queryParams("minutes") != null;
+                if (minutes == (req.queryParams("miles") != null)) {
+                    throw new IllegalArgumentException(
+                            "Request failed: exactly one of miles and minutes is required.");
+                }
+                profile = minutes ? CostModel.TRAVEL_TIME : CostModel.DISTANCE;
+                double budget = minutes
+                        ? parseParam(req, "minutes") * SECONDS_PER_MINUTE
+                        : parseParam(req, "miles");
+                long start = Metrics.start();
+                reachable = Router.isochrone(graph, graph.getCostModel(profile), lon, lat, budget);
+                Metrics.record(Metrics.Stage.ISOCHRONE, start);
+            } catch (IllegalArgumentException e) {
+                halt(HALT_RESPONSE, e.getMessage());
+            }
+            /* The outline is a GeoJSON geometry. */
+            Map<String, Object> polygon = new HashMap<>();
+            polygon.put("type", "Polygon");
+            polygon.put("coordinates", Collections.singletonList(reachable.polygon()));
+            Map<String, Object> result = new HashMap<>();
+            result.put("profile", profile);
+            result.put("vertices", reachable.ids());
+            result.put("polygon", polygon);
+            return gson.toJson(result);
+        });
+
         /* Define the API endpoint for search */
         get("/search", (req, res) -> {
+            long start = Metrics.start();
             String term = req.queryParams("term");
+            String json;
             /* Search for actual location data. */
             if (req.queryParams().contains("full")) {
                 List<LocationParams> data = graph.getLocations(term);
-                return gson.toJson(data);
+                json = gson.toJson(data);
             } else {
                 /* Search for prefix matching strings. */
-                List<String> matches = graph.getLocationsByPrefix(term);
-                return gson.toJson(matches);
+                List<String> matches = graph.getLocationsByPrefix(term, SEARCH_RESULT_LIMIT);
+                json = gson.toJson(matches);
             }
+            Metrics.record(Metrics.Stage.SEARCH, start);
+            return json;
+        });
+
+        /* Define the endpoint Prometheus scrapes for latency histograms and counters. */
+        get("/metrics", (req, res) -> {
+            res.type(PROMETHEUS_CONTENT_TYPE);
+            return Metrics.prometheus();
         });
 
         /* Define map application redirect */
@@ -151,49 +305,193 @@ public class MapServer {
     }
 
     /**
-     * Return the image defined by the <code>resultParams</code>.
+     * Returns query parameter <code>name</code> of req as a number.
+     * @throws IllegalArgumentException If it is missing or not a finite number.
+     */
+    private static double parseParam(Request req, String name) {
+        String value = req.queryParams(name);
+        if (value == null) {
+            throw new IllegalArgumentException(
+                    String.format("Request failed: %s not found.", name));
+        }
+        try {
+            double d = Double.parseDouble(value);
+            if (Double.isFinite(d)) {
+                return d;
+            }
+        } catch (NumberFormatException e) {
+            e.printStackTrace();
+        }
+        throw new IllegalArgumentException(
+                String.format("Incorrect parameters: unable to parse %s.", name));
+    }
+
+    /**
+     * Parses points written as <code>lon,lat;lon,lat;...</code>.
+     * @param points The points.
+     * @return The longitudes and the latitudes, as two arrays.
+     * @throws IllegalArgumentException If the points are missing, malformed, not on the globe
+     *                                  or too many.
+     */
+    static double[][] parsePoints(String points) {
+        if (points == null || points.isEmpty()) {
+            throw new IllegalArgumentException("Request failed: points not found.");
+        }
+        String[] pairs = points.split(";");
+        if (pairs.length > MAX_MATRIX_POINTS) {
+            throw new IllegalArgumentException(String.format(
+                    "Request failed: at most %d points are allowed.", MAX_MATRIX_POINTS));
+        }
+        double[][] result = new double[2][pairs.length];
+        for (int i = 0; i < pairs.length; i += 1) {
+            String[] lonLat = pairs[i].split(",", -1);
+            if (lonLat.length != 2) {
+                throw unparsable(pairs[i]);
+            }
+            try {
+                result[0][i] = Double.parseDouble(lonLat[0].trim());
+                result[1][i] = Double.parseDouble(lonLat[1].trim());
+            } catch (NumberFormatException e) {
+                throw unparsable(pairs[i]);
+            }
+            /* Also false for NaN. */
+            if (!(Math.abs(result[0][i]) <= MAX_LON && Math.abs(result[1][i]) <= MAX_LAT)) {
+                throw unparsable(pairs[i]);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the error for a point that is not a lon,lat pair on the globe. */
+    private static IllegalArgumentException unparsable(String pair) {
+        return new IllegalArgumentException(
+                String.format("Incorrect parameters: unable to parse %s.", pair));
+    }
+
+    /**
+     * Returns the session token of a request, issuing a new one in a cookie if it has none.
+     * @param req The request.
+     * @param res The response, which receives the cookie of a new session.
+     * @return The session token.
+     */
+    private static String session(Request req, Response res) {
+        String session = req.cookie(SESSION_COOKIE);
+        if (session == null || session.isEmpty()) {
+            session = UUID.randomUUID().toString();
+            res.cookie(SESSION_COOKIE, session);
+        }
+        return session;
+    }
+
+    /**
+     * Return the image defined by the <code>resultParams</code>. The image depends only on the
+     * arguments, so equal arguments always render the same image.
      * @param resultParams <code>RasterResultParams</code> from <code>Rasterer.getMapRaster</code>
+     * @param overlay The route to draw over the map.
      * @return The final, rastered image including any shortest-paths routes.
      */
-    private static BufferedImage renderImage(RasterResultParams resultParams) {
+    static BufferedImage renderImage(RasterResultParams resultParams, RouteOverlay overlay) {
         String[][] renderGrid = resultParams.renderGrid;
         int numVertTiles = renderGrid.length;
         int numHorizTiles = renderGrid[0].length;
 
         BufferedImage img = new BufferedImage(numHorizTiles * MapServer.TILE_SIZE,
                 numVertTiles * MapServer.TILE_SIZE, BufferedImage.TYPE_INT_RGB);
-        Graphics graphic = img.getGraphics();
-        int x = 0, y = 0;
-        for (int r = 0; r < numVertTiles; r += 1) {
-            for (int c = 0; c < numHorizTiles; c += 1) {
-                graphic.drawImage(readImage(IMG_ROOT + renderGrid[r][c]), x, y, null);
-                x += MapServer.TILE_SIZE;
-                if (x >= img.getWidth()) {
-                    x = 0;
-                    y += MapServer.TILE_SIZE;
-                }
+        int ulX = Rasterer.ulTileX(resultParams);
+        int ulY = Rasterer.ulTileY(resultParams);
+        /* Tiles cover disjoint parts of the image, so each is decoded and composed with the part
+         * of the route that crosses it in a buffer of its own, then copied into its own region of
+         * the raster. No Graphics is shared between the threads. */
+        WritableRaster raster = img.getRaster();
+        IntStream.range(0, numVertTiles * numHorizTiles).parallel().forEach(i -> {
+            int r = i / numHorizTiles;
+            int c = i % numHorizTiles;
+            int[] pixels = new int[MapServer.TILE_SIZE * MapServer.TILE_SIZE];
+            composite(pixels, tileCache.get(renderGrid[r][c]));
+            BufferedImage routeTile = overlay.tile(resultParams.depth, ulX + c, ulY + r);
+            if (routeTile != null) {
+                composite(pixels, routeTile);
             }
+            raster.setDataElements(c * MapServer.TILE_SIZE, r * MapServer.TILE_SIZE,
+                    MapServer.TILE_SIZE, MapServer.TILE_SIZE, pixels);
+        });
+        return img;
+    }
+
+    /**
+     * Draws src over pixels, a tile of RGB values, with the same source-over rounding as
+     * <code>Graphics.drawImage</code> onto a <code>TYPE_INT_RGB</code> image.
+     * @param pixels <code>TILE_SIZE * TILE_SIZE</code> RGB values, row by row.
+     * @param src The image to draw at the top left of the tile, or null to draw nothing.
+     */
+    static void composite(int[] pixels, BufferedImage src) {
+        if (src == null) {
+            return;
         }
-        /* If there is a route, draw it. */
-        if (route != null && !route.isEmpty()) {
-            double ullon = resultParams.rasterUlLon;
-            double ullat = resultParams.rasterUlLat;
-            double lrlon = resultParams.rasterLrLon;
-            double lrlat = resultParams.rasterLrLat;
-            double wdpp = (lrlon - ullon) / img.getWidth();
-            double hdpp = (ullat - lrlat) / img.getHeight();
-            Graphics2D g2d = (Graphics2D) graphic;
-            g2d.setColor(MapServer.ROUTE_STROKE_COLOR);
-            g2d.setStroke(new BasicStroke(MapServer.ROUTE_STROKE_WIDTH_PX,
-                    BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-            route.stream().reduce((v, w) -> {
-                g2d.drawLine((int) ((graph.lon(v) - ullon) * (1 / wdpp)),
-                        (int) ((ullat - graph.lat(v)) * (1 / hdpp)),
-                        (int) ((graph.lon(w) - ullon) * (1 / wdpp)),
-                        (int) ((ullat - graph.lat(w)) * (1 / hdpp)));
-                return w;
-            });
+        int width = Math.min(src.getWidth(), MapServer.TILE_SIZE);
+        int height = Math.min(src.getHeight(), MapServer.TILE_SIZE);
+        int[] argb = src.getRGB(0, 0, width, height, null, 0, width);
+        for (int y = 0; y < height; y += 1) {
+            for (int x = 0; x < width; x += 1) {
+                int s = argb[y * width + x];
+                int a = s >>> 24;
+                int k = y * MapServer.TILE_SIZE + x;
+                if (a == 0xff) {
+                    pixels[k] = s & 0xffffff;
+                } else if (a != 0) {
+                    int d = pixels[k];
+                    int red = mul8(a, (s >> 16) & 0xff) + mul8(0xff - a, (d >> 16) & 0xff);
+                    int green = mul8(a, (s >> 8) & 0xff) + mul8(0xff - a, (d >> 8) & 0xff);
+                    int blue = mul8(a, s & 0xff) + mul8(0xff - a, d & 0xff);
+                    pixels[k] = (red << 16) | (green << 8) | blue;
+                }
+            }
         }
+    }
+
+    /** Returns a * b / 255 for bytes a and b, rounded as Java2D's blending loops round it. */
+    private static int mul8(int a, int b) {
+        /* a * b * 0x10101 stays below 2^32, so the unsigned shift reads it correctly. */
+        return (a * b * 0x10101 + 0x800000) >>> 24;
+    }
+
+    /**
+     * Encodes img as the Base64 PNG payload of a <code>/raster</code> response.
+     * @param img The rendered image.
+     * @return The image's size and payload.
+     */
+    private static RasterCache.Entry encodeRaster(BufferedImage img) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream(ENCODE_BUFFER_BYTES);
+        pngEncoder.writeBase64(img, os);
+        return new RasterCache.Entry(img.getWidth(), img.getHeight(), os.toByteArray());
+    }
+
+    /**
+     * Writes the JSON form of <code>RenderedRasterResultParams</code> to <code>out</code>,
+     * copying the encoded image straight into the stream rather than into a JSON string first.
+     * @param resultParams <code>RasterResultParams</code> from <code>Rasterer.getMapRaster</code>
+     * @param raster The encoded image.
+     * @param out The response stream.
+     */
+    private static void writeRasterResponse(RasterResultParams resultParams,
+                                            RasterCache.Entry raster, OutputStream out)
+            throws IOException {
+        /* Gson leaves out the null image field, so its output ends with the last other field. */
+        String json = gson.toJson(new RenderedRasterResultParams(
+                resultParams, raster.width, raster.height, null));
+        OutputStream buffered = new BufferedOutputStream(out, RESPONSE_BUFFER_BYTES);
+        buffered.write(json.substring(0, json.length() - 1).getBytes(StandardCharsets.UTF_8));
+        buffered.write(IMAGE_FIELD_PREFIX);
+        buffered.write(raster.payload);
+        buffered.write(IMAGE_FIELD_SUFFIX);
+        buffered.flush();
+    }
+
+    /** Reads and decodes the tile image with the given file name, as the tile cache's loader. */
+    private static BufferedImage decodeTile(String name) {
+        long start = Metrics.start();
+        BufferedImage img = readImage(IMG_ROOT + name);
+        Metrics.record(Metrics.Stage.TILE_DECODE, start);
         return img;
     }
 
@@ -228,12 +526,61 @@ public class MapServer {
         return sb.toString();
     }
 
+    /**
+     * Whether to prepare a contraction hierarchy at startup, set with -Dbearmaps.ch=true. Startup
+     * gets slower but route queries no longer depend on route length.
+     */
+    private static final boolean USE_CONTRACTION_HIERARCHY = Boolean.getBoolean("bearmaps.ch");
+    /**
+     * Number of ALT landmarks per routing profile, set with -Dbearmaps.landmarks=16; 0, the
+     * default, routes with plain A*. Much faster to prepare than a contraction hierarchy.
+     */
+    private static final int LANDMARK_COUNT = Integer.getInteger("bearmaps.landmarks", 0);
+    /** Maximum number of autocomplete suggestions returned by /search. */
+    private static final int SEARCH_RESULT_LIMIT = 10;
+    /** Most sources, and most targets, in one <code>/matrix</code> request. */
+    private static final int MAX_MATRIX_POINTS = 200;
+    /** Largest longitude, east or west, of a point on the globe. */
+    private static final double MAX_LON = 180;
+    /** Largest latitude, north or south, of a point on the globe. */
+    private static final double MAX_LAT = 90;
+    /** Cookie holding the session token that routes are stored under. */
+    private static final String SESSION_COOKIE = "bearmaps_session";
+    /** Most sessions whose routes are kept at once. */
+    private static final int MAX_ROUTE_SESSIONS = 10000;
+    /** How long a route is kept after its session last used it: one hour. */
+    private static final long ROUTE_TTL_MILLIS = 60 * 60 * 1000;
+    /** Converts an <code>/isochrone</code> budget in minutes to the seconds of travel time. */
+    private static final double SECONDS_PER_MINUTE = 60;
+    /** Content type of the Prometheus text exposition format. */
+    private static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4";
     /** HTTP failed response. */
     private static final int HALT_RESPONSE = 403;
-    /** Route stroke information: typically roads are not more than 5px wide. */
-    private static final float ROUTE_STROKE_WIDTH_PX = 5.0f;
-    /** Route stroke information: semi-transparent cyan. */
-    private static final Color ROUTE_STROKE_COLOR = new Color(108, 181, 230, 200);
+    /**
+     * Memory for decoded tiles, 256 MB by default, set in megabytes with -Dbearmaps.tileCacheMb.
+     * A decoded tile takes 256 KB, so the default holds about a thousand tiles.
+     */
+    private static final long TILE_CACHE_BYTES =
+            Long.getLong("bearmaps.tileCacheMb", 256) * 1024 * 1024;
+    /**
+     * Deflate level of rastered PNGs, 0 (fastest) to 9 (smallest), set with
+     * -Dbearmaps.pngLevel. Lower levels spend less time encoding large viewports.
+     */
+    private static final int PNG_COMPRESSION_LEVEL = Integer.getInteger("bearmaps.pngLevel", 4);
+    /**
+     * Memory for finished raster images, 64 MB by default, set in megabytes with
+     * -Dbearmaps.rasterCacheMb. A full-screen raster is typically a few hundred KB of Base64.
+     */
+    private static final long RASTER_CACHE_BYTES =
+            Long.getLong("bearmaps.rasterCacheMb", 64) * 1024 * 1024;
+    /** Initial size of the buffer a raster is encoded into. */
+    private static final int ENCODE_BUFFER_BYTES = 1 << 18;
+    /** Size of the buffer between the encoded raster and the response stream. */
+    private static final int RESPONSE_BUFFER_BYTES = 1 << 16;
+    /** JSON around the streamed image, named as Gson names <code>b64EncodedImageData</code>. */
+    private static final byte[] IMAGE_FIELD_PREFIX =
+            ",\"b64_encoded_image_data\":\"".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] IMAGE_FIELD_SUFFIX = "\"}".getBytes(StandardCharsets.UTF_8);
     /** The directory where tile images can be found. */
     private static final String IMG_ROOT = "../library-su18/bearmaps/img/";
     /**
@@ -241,6 +588,13 @@ public class MapServer {
      * using custom region selection.
      */
     private static final String OSM_DB_PATH = "../library-su18/bearmaps/berkeley-2018.osm.xml";
+    /**
+     * Binary snapshot of the graph built from <code>OSM_DB_PATH</code>. Written on the first start
+     * and rewritten whenever the XML file changes.
+     */
+    private static final String OSM_SNAPSHOT_PATH = "../library-su18/bearmaps/berkeley-2018.graph";
+    /** Landmarks of each routing profile, saved next to the snapshot; %s is the profile. */
+    private static final String LANDMARKS_PATH = "../library-su18/bearmaps/berkeley-2018.%s.alt";
 
     /** An adapter class for extending RasterResultParams with the final image. */
     private static class RenderedRasterResultParams {
@@ -0,0 +1,209 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Process-wide latency histograms and counters for the server, written out in the Prometheus text
+ * format by <code>/metrics</code>.
+ *
+ * Recording is cheap enough for every request: a stage is timed with two
+ * <code>System.nanoTime</code> calls, and a value is recorded by a binary search over fixed bucket
+ * bounds and two atomic increments, without allocating. The buckets are spaced logarithmically,
+ * two per power of two, in the style of HdrHistogram, so every bucket's upper bound is at most
+ * 1.5 times its lower bound, from a microsecond up to a minute.
+ *
+ * Counters kept elsewhere, such as the hits of a cache, are registered once with
+ * <code>counter</code> and only read when the metrics are written.
+ */
+public class Metrics {
+    /** The stages of request handling that are timed. */
+    public enum Stage {
+        RASTER_PARAMS, GET_MAP_RASTER, TILE_DECODE, COMPOSE, PNG_ENCODE, RASTER_JSON,
+        ROUTE_PARAMS, SHORTEST_PATH, ROUTE_DIRECTIONS, ROUTE_JSON, MATRIX, ISOCHRONE, SEARCH;
+
+        /** Returns the stage's Prometheus label value, e.g. "get_map_raster". */
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private static final Histogram[] STAGES = new Histogram[Stage.values().length];
+    static {
+        for (int i = 0; i < STAGES.length; i += 1) {
+            STAGES[i] = new Histogram(Metrics.NANOS_LOW, Metrics.NANOS_HIGH);
+        }
+    }
+    /** Vertices settled by each route search. */
+    public static final Histogram SETTLED_NODES = new Histogram(1, Metrics.SETTLED_HIGH);
+
+    private static final List<Registered> COUNTERS = new ArrayList<>();
+
+    /** Returns the start time of a stage, to pass to <code>record</code>. */
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    /** Records that stage s, started at <code>startNanos</code>, has just finished. */
+    public static void record(Stage s, long startNanos) {
+        STAGES[s.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    /** Returns the latency histogram of stage s, in nanoseconds. */
+    public static Histogram histogram(Stage s) {
+        return STAGES[s.ordinal()];
+    }
+
+    /**
+     * Registers a counter that is read when the metrics are written. Registering a name again
+     * replaces the earlier counter.
+     * @param name The metric name, e.g. "bearmaps_tile_cache_hits_total".
+     * @param help A description of the metric.
+     * @param value Reads the counter's current value.
+     */
+    public static void counter(String name, String help, LongSupplier value) {
+        synchronized (COUNTERS) {
+            COUNTERS.removeIf(c -> c.name.equals(name));
+            COUNTERS.add(new Registered(name, help, value));
+        }
+    }
+
+    /** Writes every metric in the Prometheus text exposition format. */
+    public static String prometheus() {
+        StringBuilder out = new StringBuilder(PROMETHEUS_CAPACITY);
+        out.append("# HELP bearmaps_stage_seconds Time spent in each stage of requests.\n");
+        out.append("# TYPE bearmaps_stage_seconds histogram\n");
+        for (Stage s : Stage.values()) {
+            STAGES[s.ordinal()].write(out, "bearmaps_stage_seconds",
+                    "stage=\"" + s.label() + "\",", NANOS_PER_SECOND);
+        }
+        out.append("# HELP bearmaps_route_settled_nodes Vertices settled by each route search.\n");
+        out.append("# TYPE bearmaps_route_settled_nodes histogram\n");
+        SETTLED_NODES.write(out, "bearmaps_route_settled_nodes", "", 1);
+        synchronized (COUNTERS) {
+            for (Registered c : COUNTERS) {
+                out.append("# HELP ").append(c.name).append(' ').append(c.help).append('\n');
+                out.append("# TYPE ").append(c.name).append(" counter\n");
+                out.append(c.name).append(' ').append(c.value.getAsLong()).append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * A histogram of non-negative long values with logarithmic buckets. Values above the highest
+     * bound are counted in an overflow bucket.
+     */
+    public static class Histogram {
+        /** Upper bound of each bucket, inclusive, ascending. */
+        private final long[] bounds;
+        /** Count of each bucket; the last one is the overflow bucket. */
+        private final AtomicLongArray counts;
+        private final LongAdder sum = new LongAdder();
+
+        /**
+         * @param lowest Upper bound of the first bucket; a power of two.
+         * @param highest Values above this are only counted as overflow; a power of two.
+         */
+        Histogram(long lowest, long highest) {
+            List<Long> b = new ArrayList<>();
+            b.add(lowest);
+            for (long p = lowest; p < highest; p *= 2) {
+                for (int k = 1; k <= SUB_BUCKETS; k += 1) {
+                    long bound = p + p * k / SUB_BUCKETS;
+                    if (bound > b.get(b.size() - 1)) {
+                        b.add(bound);
+                    }
+                }
+            }
+            bounds = b.stream().mapToLong(x -> x).toArray();
+            counts = new AtomicLongArray(bounds.length + 1);
+        }
+
+        /** Records one value. */
+        public void record(long value) {
+            int i = Arrays.binarySearch(bounds, value);
+            counts.incrementAndGet(i >= 0 ? i : -i - 1);
+            sum.add(value);
+        }
+
+        /** Returns the number of values recorded. */
+        public long count() {
+            long n = 0;
+            for (int i = 0; i < counts.length(); i += 1) {
+                n += counts.get(i);
+            }
+            return n;
+        }
+
+        /** Returns the sum of the values recorded. */
+        public long sum() {
+            return sum.sum();
+        }
+
+        /**
+         * Returns an upper bound on the qth quantile of the values recorded, the bound of the
+         * bucket it falls in, or 0 if there are none.
+         * @param q The quantile, in [0, 1].
+         */
+        public long quantile(double q) {
+            long n = count();
+            if (n == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(q * n));
+            long seen = 0;
+            for (int i = 0; i < bounds.length; i += 1) {
+                seen += counts.get(i);
+                if (seen >= rank) {
+                    return bounds[i];
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+
+        /** Writes the cumulative buckets, sum and count, with bounds and sum divided by
+         * <code>unit</code>. */
+        private void write(StringBuilder out, String name, String labels, double unit) {
+            long cumulative = 0;
+            for (int i = 0; i < bounds.length; i += 1) {
+                cumulative += counts.get(i);
+                out.append(name).append("_bucket{").append(labels).append("le=\"")
+                        .append(bounds[i] / unit).append("\"} ").append(cumulative).append('\n');
+            }
+            cumulative += counts.get(bounds.length);
+            out.append(name).append("_bucket{").append(labels).append("le=\"+Inf\"} ")
+                    .append(cumulative).append('\n');
+            String plain = labels.isEmpty()
+                    ? "" : "{" + labels.substring(0, labels.length() - 1) + "}";
+            out.append(name).append("_sum").append(plain).append(' ').append(sum() / unit)
+                    .append('\n');
+            out.append(name).append("_count").append(plain).append(' ').append(cumulative)
+                    .append('\n');
+        }
+    }
+
+    private static class Registered {
+        private final String name;
+        private final String help;
+        private final LongSupplier value;
+
+        private Registered(String name, String help, LongSupplier value) {
+            this.name = name;
+            this.help = help;
+            this.value = value;
+        }
+    }
+
+    /** Buckets per power of two. */
+    private static final int SUB_BUCKETS = 2;
+    /** Latency buckets run from about a microsecond to about a minute. */
+    private static final long NANOS_LOW = 1L << 10;
+    private static final long NANOS_HIGH = 1L << 36;
+    private static final long SETTLED_HIGH = 1L << 26;
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final int PROMETHEUS_CAPACITY = 1 << 14;
+}
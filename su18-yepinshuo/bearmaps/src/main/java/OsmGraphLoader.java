@@ -0,0 +1,336 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Builds the road graph from OSM XML with <code>OsmReader</code>, as a faster alternative to
+ * <code>GraphBuildingHandler</code> that keeps the same rules for which ways are roads.
+ *
+ * Loading runs in two stages. <code>parse</code> streams the file once on the calling thread and
+ * only appends to primitive arrays: node ids and coordinates, the ways of the graph and their
+ * segments (recorded in the <code>EdgeAttributes.Builder</code> of the graph), and the named
+ * nodes for search. No <code>GraphDB.Vertex</code> or neighbor list is made per node.
+ * <code>assemble</code> then turns the arrays into a <code>CompactGraph</code> on all cores: the
+ * node ids are sorted in parallel, segment ends are resolved to indices by binary search in
+ * parallel, and the adjacency is laid out by a parallel sort of packed (from, to) pairs. Nodes
+ * that no segment touches are dropped there, which is what <code>GraphDB.clean</code> does for the
+ * other loader.
+ *
+ * Reading the file once keeps every node until assembly, although most nodes of a real extract
+ * are building corners and points of interest that no road uses. For large files the load can
+ * instead read the file twice: <code>parseWays</code> collects the ways, and so the ids of the
+ * nodes the roads use, then <code>parseNodes</code> keeps only those nodes, plus the named ones
+ * search needs. Peak memory is then proportional to the road network rather than the file.
+ */
+public class OsmGraphLoader {
+    private final GraphDB g;
+
+    private long[] nodeIds = new long[INITIAL_CAPACITY];
+    private double[] nodeLons = new double[INITIAL_CAPACITY];
+    private double[] nodeLats = new double[INITIAL_CAPACITY];
+    private int nodeCount;
+
+    /** Named nodes, by their position in the node arrays, for the location index. */
+    private int[] namedNodes = new int[INITIAL_CAPACITY];
+    private final List<String> nodeNames = new ArrayList<>();
+
+    /** Sorted ids of the nodes the graph's ways use, once known; null keeps every node. */
+    private long[] referenced;
+    /** False if only the ways that are part of the graph are kept. */
+    private boolean keepAllWays = true;
+
+    /**
+     * Creates a loader for g.
+     * @param g The graph whose ways and edge attributes to fill.
+     */
+    public OsmGraphLoader(GraphDB g) {
+        this.g = g;
+    }
+
+    /**
+     * Reads every node and way of an OSM file in one pass.
+     * @param in The OSM XML. It is read to the end and closed.
+     */
+    public void parse(InputStream in) throws IOException {
+        read(in, true, true);
+    }
+
+    /**
+     * First of the two passes of a low-memory load: reads only the ways. Only ways that are part
+     * of the graph are kept in the graph's ways, not every way the file has.
+     * @param in The OSM XML. It is read to the end and closed.
+     */
+    public void parseWays(InputStream in) throws IOException {
+        keepAllWays = false;
+        read(in, false, true);
+    }
+
+    /**
+     * Second of the two passes of a low-memory load: reads the nodes, keeping only the ones the
+     * ways read by <code>parseWays</code> use, and the named ones for search.
+     * @param in The OSM XML. It is read to the end and closed.
+     */
+    public void parseNodes(InputStream in) throws IOException {
+        EdgeAttributes.Builder builder = g.getEdgeAttributeBuilder();
+        int segments = builder.segmentCount();
+        long[] ids = new long[2 * segments];
+        IntStream.range(0, segments).parallel().forEach(s -> {
+            ids[2 * s] = builder.segmentFrom(s);
+            ids[2 * s + 1] = builder.segmentTo(s);
+        });
+        Arrays.parallelSort(ids);
+        int distinct = 0;
+        for (int i = 0; i < ids.length; i += 1) {
+            if (i == 0 || ids[i] != ids[i - 1]) {
+                ids[distinct] = ids[i];
+                distinct += 1;
+            }
+        }
+        referenced = Arrays.copyOf(ids, distinct);
+        read(in, true, false);
+    }
+
+    /** Reads the nodes, the ways, or both, from in. */
+    private void read(InputStream in, boolean nodes, boolean ways) throws IOException {
+        try (OsmReader reader = new OsmReader(in)) {
+            int state = OsmReader.OTHER;
+            /* The current node, added to the node arrays once it is known to be needed. */
+            long nodeId = 0;
+            double nodeLon = 0;
+            double nodeLat = 0;
+            boolean nodeAdded = false;
+            GraphDB.Edge way = null;
+            boolean isValidWay = true;
+            boolean connecting = false;
+            int event;
+            while ((event = reader.next()) != OsmReader.END_OF_INPUT) {
+                int element = reader.element();
+                if (event == OsmReader.END) {
+                    if (element == OsmReader.WAY && way != null) {
+                        endWay(way, isValidWay, connecting);
+                        way = null;
+                    }
+                    if (element == OsmReader.NODE || element == OsmReader.WAY
+                            || element == OsmReader.RELATION) {
+                        state = OsmReader.OTHER;
+                    }
+                } else if (element == OsmReader.NODE) {
+                    if (!nodes) {
+                        continue;
+                    }
+                    state = OsmReader.NODE;
+                    nodeId = reader.longValue(ID);
+                    nodeLon = reader.doubleValue(LON);
+                    nodeLat = reader.doubleValue(LAT);
+                    nodeAdded = referenced == null || Arrays.binarySearch(referenced, nodeId) >= 0;
+                    if (nodeAdded) {
+                        addNode(nodeId, nodeLon, nodeLat);
+                    }
+                } else if (element == OsmReader.WAY) {
+                    if (!ways) {
+                        continue;
+                    }
+                    state = OsmReader.WAY;
+                    way = new GraphDB.Edge(reader.longValue(ID), new ArrayList<>());
+                    isValidWay = true;
+                    connecting = false;
+                } else if (element == OsmReader.RELATION) {
+                    state = OsmReader.RELATION;
+                } else if (state == OsmReader.WAY && element == OsmReader.ND) {
+                    way.addVertex(reader.longValue(REF));
+                } else if (state == OsmReader.WAY && element == OsmReader.TAG) {
+                    if (reader.valueEquals(K, MAXSPEED)) {
+                        way.setMaxSpeed(reader.value(V));
+                    } else if (reader.valueEquals(K, HIGHWAY)) {
+                        int c = reader.valueIndex(V, HIGHWAY_CLASSES);
+                        if (c >= 0) {
+                            way.setHighway(EdgeAttributes.HIGHWAY_CLASSES[c]);
+                            connecting = true;
+                        } else {
+                            isValidWay = false;
+                        }
+                    } else if (reader.valueEquals(K, NAME)) {
+                        way.setName(reader.value(V));
+                    }
+                } else if (state == OsmReader.NODE && element == OsmReader.TAG
+                        && reader.valueEquals(K, NAME)) {
+                    if (!nodeAdded) {
+                        addNode(nodeId, nodeLon, nodeLat);
+                        nodeAdded = true;
+                    }
+                    addName(nodeCount - 1, reader.value(V));
+                }
+            }
+        }
+    }
+
+    /**
+     * Finishes a way the same way <code>GraphBuildingHandler.endElement</code> does: it is
+     * connected if it had an allowed highway type, and dropped from the graph's ways if it had
+     * another one.
+     */
+    private void endWay(GraphDB.Edge way, boolean isValidWay, boolean connecting) {
+        if (isValidWay && (connecting || keepAllWays)) {
+            g.geteMap().put(way.id, way);
+        }
+        if (connecting) {
+            EdgeAttributes.Builder attributes = g.getEdgeAttributeBuilder();
+            int number = attributes.addWay(way.id, way.name, way.highway, way.maxSpeed);
+            for (int i = 0; i < way.vertexList.size() - 1; i += 1) {
+                attributes.addSegment(number, way.vertexList.get(i), way.vertexList.get(i + 1));
+            }
+        }
+    }
+
+    private void addNode(long id, double lon, double lat) {
+        if (nodeCount == nodeIds.length) {
+            int size = nodeCount * 2;
+            nodeIds = Arrays.copyOf(nodeIds, size);
+            nodeLons = Arrays.copyOf(nodeLons, size);
+            nodeLats = Arrays.copyOf(nodeLats, size);
+        }
+        nodeIds[nodeCount] = id;
+        nodeLons[nodeCount] = lon;
+        nodeLats[nodeCount] = lat;
+        nodeCount += 1;
+    }
+
+    /** Names node number <code>node</code>; a later name of the same node replaces it. */
+    private void addName(int node, String name) {
+        int n = nodeNames.size();
+        if (n > 0 && namedNodes[n - 1] == node) {
+            nodeNames.set(n - 1, name);
+            return;
+        }
+        if (n == namedNodes.length) {
+            namedNodes = Arrays.copyOf(namedNodes, n * 2);
+        }
+        namedNodes[n] = node;
+        nodeNames.add(name);
+    }
+
+    /** Returns every named node, including ones no road touches, for search. */
+    public LocationIndex locations() {
+        int n = nodeNames.size();
+        long[] ids = new long[n];
+        double[] lons = new double[n];
+        double[] lats = new double[n];
+        for (int i = 0; i < n; i += 1) {
+            int node = namedNodes[i];
+            ids[i] = nodeIds[node];
+            lons[i] = nodeLons[node];
+            lats[i] = nodeLats[node];
+        }
+        return new LocationIndex(ids, lons, lats, nodeNames.toArray(new String[0]));
+    }
+
+    /**
+     * Lays out the parsed nodes and segments as a compact graph, in parallel. Vertices are in
+     * ascending id order. Segments whose ends are not in the file are skipped; if a node id
+     * appears more than once, one of its occurrences is kept.
+     * @return The graph of every node that at least one segment touches.
+     */
+    public CompactGraph assemble() {
+        long[] sorted = Arrays.copyOf(nodeIds, nodeCount);
+        Arrays.parallelSort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < sorted.length; i += 1) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[distinct] = sorted[i];
+                distinct += 1;
+            }
+        }
+        long[] ids = Arrays.copyOf(sorted, distinct);
+        /* node[k] is the position in the node arrays of the node with id ids[k]. */
+        int[] node = new int[distinct];
+        IntStream.range(0, nodeCount).parallel()
+                .forEach(i -> node[Arrays.binarySearch(ids, nodeIds[i])] = i);
+
+        EdgeAttributes.Builder builder = g.getEdgeAttributeBuilder();
+        int segments = builder.segmentCount();
+        int[] froms = new int[segments];
+        int[] tos = new int[segments];
+        byte[] used = new byte[distinct];
+        IntStream.range(0, segments).parallel().forEach(s -> {
+            froms[s] = Arrays.binarySearch(ids, builder.segmentFrom(s));
+            tos[s] = Arrays.binarySearch(ids, builder.segmentTo(s));
+            if (froms[s] >= 0 && tos[s] >= 0) {
+                used[froms[s]] = 1;
+                used[tos[s]] = 1;
+            }
+        });
+
+        /* Renumber the used nodes densely. */
+        int[] vertex = new int[distinct];
+        int n = 0;
+        for (int k = 0; k < distinct; k += 1) {
+            vertex[k] = used[k] == 1 ? n : -1;
+            n += used[k];
+        }
+        long[] vertexIds = new long[n];
+        double[] lons = new double[n];
+        double[] lats = new double[n];
+        IntStream.range(0, distinct).parallel().filter(k -> vertex[k] >= 0).forEach(k -> {
+            vertexIds[vertex[k]] = ids[k];
+            lons[vertex[k]] = nodeLons[node[k]];
+            lats[vertex[k]] = nodeLats[node[k]];
+        });
+
+        /* Both directions of every segment, packed as from << 32 | to so that sorting groups
+         * them by source; skipped segments sort to the end. */
+        long[] arcs = new long[2 * segments];
+        IntStream.range(0, segments).parallel().forEach(s -> {
+            if (froms[s] < 0 || tos[s] < 0) {
+                arcs[2 * s] = Long.MAX_VALUE;
+                arcs[2 * s + 1] = Long.MAX_VALUE;
+            } else {
+                long v = vertex[froms[s]];
+                long w = vertex[tos[s]];
+                arcs[2 * s] = v << 32 | w;
+                arcs[2 * s + 1] = w << 32 | v;
+            }
+        });
+        Arrays.parallelSort(arcs);
+
+        int[] offsets = new int[n + 1];
+        int[] targets = new int[arcs.length];
+        int m = 0;
+        for (int a = 0; a < arcs.length && arcs[a] != Long.MAX_VALUE; a += 1) {
+            if (a > 0 && arcs[a] == arcs[a - 1]) {
+                continue;
+            }
+            offsets[(int) (arcs[a] >>> 32) + 1] += 1;
+            targets[m] = (int) arcs[a];
+            m += 1;
+        }
+        for (int v = 0; v < n; v += 1) {
+            offsets[v + 1] += offsets[v];
+        }
+        int[] edgeTargets = Arrays.copyOf(targets, m);
+        double[] lengths = new double[m];
+        IntStream.range(0, n).parallel().forEach(v -> {
+            for (int e = offsets[v]; e < offsets[v + 1]; e += 1) {
+                int w = edgeTargets[e];
+                lengths[e] = GraphDB.greatCircle(lons[v], lats[v], lons[w], lats[w]);
+            }
+        });
+        return new CompactGraph(vertexIds, lons, lats, offsets, edgeTargets, lengths);
+    }
+
+    private static final byte[] ID = OsmReader.bytes("id");
+    private static final byte[] LON = OsmReader.bytes("lon");
+    private static final byte[] LAT = OsmReader.bytes("lat");
+    private static final byte[] REF = OsmReader.bytes("ref");
+    private static final byte[] K = OsmReader.bytes("k");
+    private static final byte[] V = OsmReader.bytes("v");
+    private static final byte[] NAME = OsmReader.bytes("name");
+    private static final byte[] HIGHWAY = OsmReader.bytes("highway");
+    private static final byte[] MAXSPEED = OsmReader.bytes("maxspeed");
+    /** The bytes of each of <code>EdgeAttributes.HIGHWAY_CLASSES</code>. */
+    private static final byte[][] HIGHWAY_CLASSES = Arrays.stream(EdgeAttributes.HIGHWAY_CLASSES)
+            .map(OsmReader::bytes).toArray(byte[][]::new);
+    private static final int INITIAL_CAPACITY = 1 << 12;
+}
@@ -0,0 +1,550 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A streaming pull parser for OSM XML, reading straight from bytes.
+ *
+ * Each call to <code>next</code> moves to the next start or end tag and reports which OSM element
+ * it is as a small int, so callers never compare element names as strings. The attributes of a
+ * start tag stay as byte ranges in the read buffer until asked for: ids and coordinates are
+ * parsed directly from the bytes, and a <code>String</code> is only made for values the caller
+ * keeps. A self-closing tag such as <code>&lt;nd ref="1"/&gt;</code> is reported as a start tag
+ * followed by an end tag.
+ *
+ * Only what OSM files use is supported: comments, processing instructions, a DOCTYPE without an
+ * internal subset and CDATA sections are skipped, and text content is ignored. Attribute values
+ * are decoded as UTF-8 with the predefined and numeric character references. The reader does not
+ * check that the document is well formed.
+ */
+public class OsmReader implements Closeable {
+    /** <code>next</code> found a start tag. */
+    public static final int START = 1;
+    /** <code>next</code> found an end tag, or the end of a self-closing tag. */
+    public static final int END = 2;
+    /** <code>next</code> reached the end of the input. */
+    public static final int END_OF_INPUT = -1;
+
+    /** Element codes returned by <code>element</code>. */
+    public static final int NODE = 0;
+    public static final int WAY = 1;
+    public static final int ND = 2;
+    public static final int TAG = 3;
+    public static final int RELATION = 4;
+    public static final int OTHER = 5;
+
+    private final InputStream in;
+    private byte[] buf = new byte[BUFFER_BYTES];
+    /** Position of the next unread byte in <code>buf</code>. */
+    private int pos;
+    /** One past the last byte read into <code>buf</code>. */
+    private int limit;
+    private boolean eof;
+
+    private int element = OTHER;
+    private boolean pendingEnd;
+    /** Attributes of the current start tag, as [start, end) ranges of <code>buf</code>. */
+    private int attributeCount;
+    private int[] nameStarts = new int[8];
+    private int[] nameEnds = new int[8];
+    private int[] valueStarts = new int[8];
+    private int[] valueEnds = new int[8];
+
+    /** Creates a reader over in, which it reads in large blocks and closes with the reader. */
+    public OsmReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Moves to the next start or end tag.
+     * @return <code>START</code>, <code>END</code> or <code>END_OF_INPUT</code>.
+     */
+    public int next() throws IOException {
+        if (pendingEnd) {
+            pendingEnd = false;
+            attributeCount = 0;
+            return END;
+        }
+        attributeCount = 0;
+        while (true) {
+            /* Skip text up to the next tag. */
+            while (true) {
+                if (pos == limit && !fill(pos)) {
+                    return END_OF_INPUT;
+                }
+                if (buf[pos] == '<') {
+                    break;
+                }
+                pos += 1;
+            }
+            if (!ensure(pos, 2)) {
+                return END_OF_INPUT;
+            }
+            byte c = buf[pos + 1];
+            if (c == '/') {
+                int end = findTagEnd();
+                element = elementCode(pos + 2, end);
+                pos = end + 1;
+                return END;
+            } else if (c == '!') {
+                if (startsWith(COMMENT_OPEN)) {
+                    skipPast(COMMENT_OPEN, COMMENT_CLOSE);
+                } else if (startsWith(CDATA_OPEN)) {
+                    skipPast(CDATA_OPEN, CDATA_CLOSE);
+                } else {
+                    pos = findTagEnd() + 1;
+                }
+            } else if (c == '?') {
+                pos = findTagEnd() + 1;
+            } else {
+                int end = findTagEnd();
+                element = elementCode(pos + 1, end);
+                readAttributes(pos + 1, end);
+                pendingEnd = buf[end - 1] == '/';
+                pos = end + 1;
+                return START;
+            }
+        }
+    }
+
+    /** Returns the element code of the current tag, e.g. <code>NODE</code>. */
+    public int element() {
+        return element;
+    }
+
+    /** Returns true if the current start tag has the attribute <code>name</code>. */
+    public boolean hasAttribute(byte[] name) {
+        return attribute(name) >= 0;
+    }
+
+    /**
+     * Returns the value of an integer attribute of the current start tag.
+     * @throws NumberFormatException If the attribute is missing or not an integer.
+     */
+    public long longValue(byte[] name) {
+        int a = attribute(name);
+        if (a < 0) {
+            throw new NumberFormatException("Missing attribute " + ascii(name));
+        }
+        return parseLong(buf, valueStarts[a], valueEnds[a]);
+    }
+
+    /**
+     * Returns the value of a decimal attribute of the current start tag.
+     * @throws NumberFormatException If the attribute is missing or not a number.
+     */
+    public double doubleValue(byte[] name) {
+        int a = attribute(name);
+        if (a < 0) {
+            throw new NumberFormatException("Missing attribute " + ascii(name));
+        }
+        return parseDouble(buf, valueStarts[a], valueEnds[a]);
+    }
+
+    /**
+     * Returns true if the attribute <code>name</code> of the current start tag is exactly
+     * <code>value</code>, compared as raw bytes without allocating.
+     */
+    public boolean valueEquals(byte[] name, byte[] value) {
+        int a = attribute(name);
+        return a >= 0 && rangeEquals(valueStarts[a], valueEnds[a], value);
+    }
+
+    /**
+     * Returns the index in <code>values</code> of the one the attribute <code>name</code>
+     * equals, or -1 if it equals none of them or is missing.
+     */
+    public int valueIndex(byte[] name, byte[][] values) {
+        int a = attribute(name);
+        if (a < 0) {
+            return -1;
+        }
+        for (int i = 0; i < values.length; i += 1) {
+            if (rangeEquals(valueStarts[a], valueEnds[a], values[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the decoded value of attribute <code>name</code>, or null if it is missing. */
+    public String value(byte[] name) {
+        int a = attribute(name);
+        if (a < 0) {
+            return null;
+        }
+        int start = valueStarts[a];
+        int end = valueEnds[a];
+        boolean plain = true;
+        for (int i = start; i < end && plain; i += 1) {
+            plain = buf[i] >= 0 && buf[i] != '&';
+        }
+        if (plain) {
+            return new String(buf, start, end - start, StandardCharsets.ISO_8859_1);
+        }
+        return new String(unescape(start, end), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /** Returns the index of the attribute called <code>name</code>, or -1. */
+    private int attribute(byte[] name) {
+        for (int a = 0; a < attributeCount; a += 1) {
+            if (rangeEquals(nameStarts[a], nameEnds[a], name)) {
+                return a;
+            }
+        }
+        return -1;
+    }
+
+    private boolean rangeEquals(int start, int end, byte[] bytes) {
+        if (end - start != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i += 1) {
+            if (buf[start + i] != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the element code of the name starting at <code>start</code>. */
+    private int elementCode(int start, int end) {
+        int nameEnd = start;
+        while (nameEnd < end && !isNameEnd(buf[nameEnd])) {
+            nameEnd += 1;
+        }
+        for (int code = 0; code < ELEMENT_NAMES.length; code += 1) {
+            if (rangeEquals(start, nameEnd, ELEMENT_NAMES[code])) {
+                return code;
+            }
+        }
+        return OTHER;
+    }
+
+    /** Records the attributes of the start tag between <code>start</code> and the
+     * <code>&gt;</code> at <code>end</code>. */
+    private void readAttributes(int start, int end) {
+        int i = start;
+        while (i < end && !isNameEnd(buf[i])) {
+            i += 1;
+        }
+        while (true) {
+            while (i < end && isSpace(buf[i])) {
+                i += 1;
+            }
+            if (i >= end || buf[i] == '/') {
+                return;
+            }
+            int nameStart = i;
+            while (i < end && buf[i] != '=' && !isSpace(buf[i])) {
+                i += 1;
+            }
+            int nameEnd = i;
+            while (i < end && buf[i] != '\'' && buf[i] != '"') {
+                i += 1;
+            }
+            if (i >= end) {
+                return;
+            }
+            byte quote = buf[i];
+            int valueStart = i + 1;
+            i = valueStart;
+            while (i < end && buf[i] != quote) {
+                i += 1;
+            }
+            if (attributeCount == nameStarts.length) {
+                int size = attributeCount * 2;
+                nameStarts = Arrays.copyOf(nameStarts, size);
+                nameEnds = Arrays.copyOf(nameEnds, size);
+                valueStarts = Arrays.copyOf(valueStarts, size);
+                valueEnds = Arrays.copyOf(valueEnds, size);
+            }
+            nameStarts[attributeCount] = nameStart;
+            nameEnds[attributeCount] = nameEnd;
+            valueStarts[attributeCount] = valueStart;
+            valueEnds[attributeCount] = i;
+            attributeCount += 1;
+            i += 1;
+        }
+    }
+
+    /**
+     * Returns the position of the <code>&gt;</code> closing the tag that starts at
+     * <code>pos</code>, reading more input as needed. A <code>&gt;</code> inside a quoted
+     * attribute value does not close the tag.
+     */
+    private int findTagEnd() throws IOException {
+        int i = pos + 1;
+        byte quote = 0;
+        while (true) {
+            if (i == limit) {
+                int shift = pos;
+                if (!fill(pos)) {
+                    throw new IOException("Unterminated tag at end of input");
+                }
+                i -= shift;
+            }
+            byte c = buf[i];
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '>') {
+                return i;
+            }
+            i += 1;
+        }
+    }
+
+    /** Returns true if the input at <code>pos</code> starts with prefix. */
+    private boolean startsWith(byte[] prefix) throws IOException {
+        if (!ensure(pos, prefix.length)) {
+            return false;
+        }
+        return rangeEquals(pos, pos + prefix.length, prefix);
+    }
+
+    /** Moves <code>pos</code> past opening and then just past the next terminator. */
+    private void skipPast(byte[] opening, byte[] terminator) throws IOException {
+        pos += opening.length;
+        while (true) {
+            if (!ensure(pos, terminator.length)) {
+                pos = limit;
+                return;
+            }
+            if (rangeEquals(pos, pos + terminator.length, terminator)) {
+                pos += terminator.length;
+                return;
+            }
+            pos += 1;
+        }
+    }
+
+    /**
+     * Makes sure <code>count</code> bytes from position i, at or after <code>pos</code>, are in
+     * the buffer. Reading more input moves the buffered bytes, so callers must only use
+     * positions relative to <code>pos</code> afterwards.
+     */
+    private boolean ensure(int i, int count) throws IOException {
+        while (i + count > limit) {
+            int shift = pos;
+            if (!fill(pos)) {
+                return false;
+            }
+            i -= shift;
+        }
+        return true;
+    }
+
+    /** Discards the bytes before <code>keep</code> and reads more. Returns false at end of
+     * input. */
+    private boolean fill(int keep) throws IOException {
+        if (eof) {
+            return false;
+        }
+        compact(keep);
+        if (limit == buf.length) {
+            buf = Arrays.copyOf(buf, buf.length * 2);
+        }
+        int read = in.read(buf, limit, buf.length - limit);
+        if (read < 0) {
+            eof = true;
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+
+    private void compact(int keep) {
+        if (keep > 0) {
+            System.arraycopy(buf, keep, buf, 0, limit - keep);
+            limit -= keep;
+            pos -= keep;
+            for (int a = 0; a < attributeCount; a += 1) {
+                nameStarts[a] -= keep;
+                nameEnds[a] -= keep;
+                valueStarts[a] -= keep;
+                valueEnds[a] -= keep;
+            }
+        }
+    }
+
+    /** Decodes the character references in buf[start, end) into raw UTF-8 bytes. */
+    private byte[] unescape(int start, int end) {
+        byte[] out = new byte[end - start];
+        int n = 0;
+        int i = start;
+        while (i < end) {
+            if (buf[i] != '&') {
+                out[n] = buf[i];
+                n += 1;
+                i += 1;
+                continue;
+            }
+            int semi = i + 1;
+            while (semi < end && buf[semi] != ';') {
+                semi += 1;
+            }
+            int cp = entity(i + 1, semi);
+            if (semi >= end || cp < 0) {
+                out[n] = buf[i];
+                n += 1;
+                i += 1;
+                continue;
+            }
+            byte[] encoded = new String(Character.toChars(cp)).getBytes(StandardCharsets.UTF_8);
+            System.arraycopy(encoded, 0, out, n, encoded.length);
+            n += encoded.length;
+            i = semi + 1;
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /** Returns the code point of the reference named by buf[start, end), or -1. */
+    private int entity(int start, int end) {
+        if (end - start >= 2 && buf[start] == '#') {
+            int radix = 10;
+            int i = start + 1;
+            if (buf[i] == 'x' || buf[i] == 'X') {
+                radix = 16;
+                i += 1;
+            }
+            int cp = 0;
+            for (; i < end; i += 1) {
+                int digit = Character.digit(buf[i], radix);
+                if (digit < 0 || cp > Character.MAX_CODE_POINT) {
+                    return -1;
+                }
+                cp = cp * radix + digit;
+            }
+            return Character.isValidCodePoint(cp) ? cp : -1;
+        }
+        for (int k = 0; k < ENTITY_NAMES.length; k += 1) {
+            if (rangeEquals(start, end, ENTITY_NAMES[k])) {
+                return ENTITY_CHARS[k];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parses an integer from bytes without allocating. Falls back to
+     * <code>Long.parseLong</code> for anything unusual, such as a leading plus sign or more
+     * digits than a long is sure to hold.
+     */
+    static long parseLong(byte[] b, int start, int end) {
+        int i = start;
+        boolean negative = i < end && b[i] == '-';
+        if (negative) {
+            i += 1;
+        }
+        if (i == end || end - i > MAX_FAST_DIGITS) {
+            return Long.parseLong(ascii(b, start, end));
+        }
+        long value = 0;
+        for (; i < end; i += 1) {
+            int digit = b[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return Long.parseLong(ascii(b, start, end));
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses a decimal number from bytes without allocating. Coordinates such as
+     * "-122.2590814" have few enough digits that the digits, read as an integer, and the power of
+     * ten to divide by are both exact doubles, so one division gives the correctly rounded
+     * result, the same as <code>Double.parseDouble</code>. Anything else, such as exponents or
+     * long mantissas, falls back to <code>Double.parseDouble</code>.
+     */
+    static double parseDouble(byte[] b, int start, int end) {
+        int i = start;
+        boolean negative = i < end && b[i] == '-';
+        if (negative) {
+            i += 1;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean point = false;
+        for (; i < end; i += 1) {
+            byte c = b[i];
+            if (c == '.' && !point) {
+                point = true;
+            } else if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits += 1;
+                if (point) {
+                    fractionDigits += 1;
+                }
+                if (digits > MAX_FAST_DIGITS) {
+                    break;
+                }
+            } else {
+                break;
+            }
+        }
+        if (i != end || digits == 0 || mantissa > MAX_EXACT_MANTISSA
+                || fractionDigits >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(ascii(b, start, end));
+        }
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    private static boolean isSpace(byte c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    private static boolean isNameEnd(byte c) {
+        return isSpace(c) || c == '/' || c == '>';
+    }
+
+    private static String ascii(byte[] b, int start, int end) {
+        return new String(b, start, end - start, StandardCharsets.ISO_8859_1);
+    }
+
+    private static String ascii(byte[] b) {
+        return ascii(b, 0, b.length);
+    }
+
+    /** Returns the ASCII bytes of s, for naming attributes and values. */
+    public static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /** Element names, indexed by element code. */
+    private static final byte[][] ELEMENT_NAMES = {
+        bytes("node"), bytes("way"), bytes("nd"), bytes("tag"), bytes("relation")
+    };
+    private static final byte[][] ENTITY_NAMES = {
+        bytes("amp"), bytes("lt"), bytes("gt"), bytes("quot"), bytes("apos")
+    };
+    private static final int[] ENTITY_CHARS = {'&', '<', '>', '"', '\''};
+    private static final byte[] COMMENT_OPEN = bytes("<!--");
+    private static final byte[] COMMENT_CLOSE = bytes("-->");
+    private static final byte[] CDATA_OPEN = bytes("<![CDATA[");
+    private static final byte[] CDATA_CLOSE = bytes("]]>");
+    /** Exact powers of ten as doubles; 10^22 is the largest one. */
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    /** Largest integer below which every integer is an exact double. */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    /** Digit count that cannot overflow a long. */
+    private static final int MAX_FAST_DIGITS = 18;
+    /** Size of the read buffer; it grows if a single tag does not fit. */
+    private static final int BUFFER_BYTES = 1 << 20;
+}
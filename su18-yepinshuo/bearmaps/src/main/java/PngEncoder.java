@@ -0,0 +1,96 @@
+import java.awt.image.BufferedImage;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Base64;
+import java.util.Iterator;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * Encodes rastered images as PNG straight into an output stream, optionally as Base64 text, so
+ * that neither the PNG bytes nor their Base64 form is ever held in memory in full.
+ *
+ * The deflate level trades encoding time against response size: 0 stores the pixels
+ * uncompressed, 9 compresses hardest. The JDK's own default is 4.
+ */
+public class PngEncoder {
+    private final int level;
+
+    /**
+     * @param level The deflate level, from 0 (fastest) to 9 (smallest).
+     */
+    public PngEncoder(int level) {
+        if (level < 0 || level > 9) {
+            throw new IllegalArgumentException("PNG compression level must be 0-9: " + level);
+        }
+        this.level = level;
+    }
+
+    public int level() {
+        return level;
+    }
+
+    /**
+     * Writes img to out as PNG. The stream is flushed but not closed.
+     * @param img The image to encode.
+     * @param out The destination.
+     */
+    public void write(BufferedImage img, OutputStream out) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("png");
+        if (!writers.hasNext()) {
+            throw new IOException("No PNG writer available");
+        }
+        ImageWriter writer = writers.next();
+        ImageOutputStream ios = new MemoryCacheImageOutputStream(out);
+        try {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                /* The PNG writer maps quality q to deflate level 9 - round(9q). */
+                param.setCompressionQuality((9 - level) / 9f);
+            }
+            writer.write(null, new IIOImage(img, null, null), param);
+            ios.flush();
+        } finally {
+            writer.dispose();
+            ios.close();
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes img to out as Base64-encoded PNG, with no line breaks or quotes. The stream is
+     * flushed but not closed.
+     * @param img The image to encode.
+     * @param out The destination.
+     */
+    public void writeBase64(BufferedImage img, OutputStream out) throws IOException {
+        OutputStream b64 = Base64.getEncoder().wrap(new Unclosable(out));
+        write(img, b64);
+        /* Closing the encoder writes the final padding; Unclosable keeps out open. */
+        b64.close();
+    }
+
+    /** Passes writes through but only flushes on close. */
+    private static class Unclosable extends FilterOutputStream {
+        Unclosable(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
+}
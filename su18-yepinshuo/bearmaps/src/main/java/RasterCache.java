@@ -0,0 +1,175 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of finished <code>/raster</code> images, as the Base64-encoded PNG sent to the browser.
+ *
+ * Every viewport that Rasterer maps to the same depth and tile rectangle renders the same image
+ * as long as the route drawn over it is the same, so entries are keyed on the tile rectangle and
+ * the id of the <code>RouteOverlay</code> drawn. Rasters without a route are shared by every
+ * session. When a session's route is replaced, <code>invalidate</code> drops the entries of the
+ * old route, and remembers the route as dead so that a render of it still in flight when it was
+ * replaced is not stored afterwards. Entries are evicted least recently used first once their
+ * payloads exceed the byte budget.
+ */
+public class RasterCache {
+    private final long maxBytes;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes;
+    /**
+     * The most recently invalidated route ids, oldest first. Overlay ids are never reused, so
+     * only renders that were in flight during an invalidation can still ask to store them.
+     */
+    private final LinkedHashMap<Long, Boolean> deadRoutes = new LinkedHashMap<Long, Boolean>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+            return size() > MAX_DEAD_ROUTES;
+        }
+    };
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param maxBytes The most Base64 payload to keep, in bytes.
+     */
+    public RasterCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Drops every entry rendered with the given route. Rasters without a route are kept.
+     * @param routeId The id of a <code>RouteOverlay</code> that is no longer in use.
+     */
+    public synchronized void invalidate(long routeId) {
+        if (routeId == RouteOverlay.EMPTY.id()) {
+            return;
+        }
+        deadRoutes.put(routeId, Boolean.TRUE);
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Entry> e = it.next();
+            if (e.getKey().routeId == routeId) {
+                bytes -= e.getValue().payload.length;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the cached image for the tile rectangle of params and the given route, or null.
+     * @param params A successful result of <code>Rasterer.getMapRaster</code>.
+     * @param routeId The id of the <code>RouteOverlay</code> drawn over the raster.
+     */
+    public Entry get(RasterResultParams params, long routeId) {
+        Entry e;
+        synchronized (this) {
+            e = entries.get(new Key(params, routeId));
+        }
+        if (e == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return e;
+    }
+
+    /**
+     * Stores a rendered image, unless its route has been invalidated since the render began.
+     * @param params The result of <code>Rasterer.getMapRaster</code> the image was rendered from.
+     * @param routeId The id of the <code>RouteOverlay</code> drawn over the raster.
+     * @param entry The rendered image.
+     */
+    public synchronized void put(RasterResultParams params, long routeId, Entry entry) {
+        if (entry.payload.length > maxBytes || deadRoutes.containsKey(routeId)) {
+            return;
+        }
+        Entry previous = entries.put(new Key(params, routeId), entry);
+        if (previous != null) {
+            bytes -= previous.payload.length;
+        }
+        bytes += entry.payload.length;
+        Iterator<Entry> it = entries.values().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            Entry eldest = it.next();
+            if (eldest == entry) {
+                continue;
+            }
+            bytes -= eldest.payload.length;
+            it.remove();
+        }
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    /** A rendered raster: its size in pixels and its PNG bytes in Base64. */
+    public static class Entry {
+        final int width;
+        final int height;
+        final byte[] payload;
+
+        public Entry(int width, int height, byte[] payload) {
+            this.width = width;
+            this.height = height;
+            this.payload = payload;
+        }
+    }
+
+    /** The depth, tile rectangle and route of a raster. */
+    private static class Key {
+        private final int depth;
+        private final int ulX, ulY, lrX, lrY;
+        private final long routeId;
+
+        private Key(RasterResultParams params, long routeId) {
+            this.depth = params.depth;
+            this.ulX = Rasterer.ulTileX(params);
+            this.ulY = Rasterer.ulTileY(params);
+            this.lrX = ulX + params.renderGrid[0].length - 1;
+            this.lrY = ulY + params.renderGrid.length - 1;
+            this.routeId = routeId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key k = (Key) o;
+            return depth == k.depth && ulX == k.ulX && ulY == k.ulY && lrX == k.lrX
+                    && lrY == k.lrY && routeId == k.routeId;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = depth;
+            h = 31 * h + ulX;
+            h = 31 * h + ulY;
+            h = 31 * h + lrX;
+            h = 31 * h + lrY;
+            return 31 * h + Long.hashCode(routeId);
+        }
+    }
+
+    /** How many invalidated route ids are remembered; far more than renders ever in flight. */
+    private static final int MAX_DEAD_ROUTES = 4096;
+}
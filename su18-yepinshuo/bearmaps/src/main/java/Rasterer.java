@@ -79,6 +79,24 @@ public class Rasterer {
         return result.create();
     }
 
+    /**
+     * Returns the x index, at the result's depth, of the left-most column of tiles in a result.
+     * @param result A successful result of <code>getMapRaster</code>.
+     */
+    static int ulTileX(RasterResultParams result) {
+        return (int) Math.round((result.rasterUlLon - MapServer.ROOT_ULLON)
+                / MapServer.ROOT_LON_DELTA * (1 << result.depth));
+    }
+
+    /**
+     * Returns the y index, at the result's depth, of the top row of tiles in a result.
+     * @param result A successful result of <code>getMapRaster</code>.
+     */
+    static int ulTileY(RasterResultParams result) {
+        return (int) Math.round((MapServer.ROOT_ULLAT - result.rasterUlLat)
+                / MapServer.ROOT_LAT_DELTA * (1 << result.depth));
+    }
+
     /**
      * Calculates the lonDPP of an image or query box
      * @param lrlon Lower right longitudinal value of the image or query box
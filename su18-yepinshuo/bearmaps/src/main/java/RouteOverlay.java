@@ -0,0 +1,217 @@
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A computed route together with its vertices projected into map pixels, so that drawing it never
+ * goes back to the graph.
+ *
+ * Points are kept in root pixels, the pixel space of the single depth-0 tile: x runs from 0 at
+ * <code>ROOT_ULLON</code> to <code>TILE_SIZE</code> at <code>ROOT_LRLON</code>, y from 0 at
+ * <code>ROOT_ULLAT</code> down to <code>TILE_SIZE</code> at <code>ROOT_LRLAT</code>. A tile at depth
+ * d is <code>TILE_SIZE / 2^d</code> root pixels wide.
+ *
+ * The route is drawn as transparent tiles on the same grid as the map tiles, so that a raster only
+ * composites the overlay tiles inside its viewport, however long the route is. At each depth the
+ * segments are first bucketed by the tiles they touch; a tile is then drawn from its own segments
+ * the first time a raster needs it. Drawn tiles are kept in one byte-bounded LRU shared by all
+ * overlays, so the tiles of routes no longer looked at, or replaced, are evicted first.
+ *
+ * Each overlay has an id that no other overlay shares, so rendered rasters can be cached by it.
+ * The empty overlay has id 0.
+ */
+public class RouteOverlay {
+    /** The overlay of no route. */
+    public static final RouteOverlay EMPTY =
+            new RouteOverlay(0, Collections.emptyList(), new double[0], new double[0]);
+
+    private static final AtomicLong NEXT_ID = new AtomicLong(1);
+    /**
+     * Drawn tiles of every overlay, keyed by <code>tileKey</code>. 64 MB by default, about 256
+     * tiles, set in megabytes with -Dbearmaps.overlayCacheMb.
+     */
+    private static final TileCache TILES = new TileCache(
+            Long.getLong("bearmaps.overlayCacheMb", 64) * 1024 * 1024);
+
+    private final long id;
+    private final List<Long> route;
+    private final double[] xs;
+    private final double[] ys;
+    /** The overlay tiles of each depth, built on first use. */
+    private final Layer[] layers = new Layer[Rasterer.MAX_DEPTH + 1];
+
+    private RouteOverlay(long id, List<Long> route, double[] xs, double[] ys) {
+        this.id = id;
+        this.route = route;
+        this.xs = xs;
+        this.ys = ys;
+    }
+
+    /**
+     * Projects route onto the map.
+     * @param g The graph the route was found in.
+     * @param route The vertex ids along the route.
+     * @return The route's overlay, or <code>EMPTY</code> if the route is empty.
+     */
+    public static RouteOverlay of(GraphDB g, List<Long> route) {
+        if (route.isEmpty()) {
+            return EMPTY;
+        }
+        double[] xs = new double[route.size()];
+        double[] ys = new double[route.size()];
+        int i = 0;
+        for (long v : route) {
+            xs[i] = (g.lon(v) - MapServer.ROOT_ULLON) / MapServer.ROOT_LON_DELTA
+                    * MapServer.TILE_SIZE;
+            ys[i] = (MapServer.ROOT_ULLAT - g.lat(v)) / MapServer.ROOT_LAT_DELTA
+                    * MapServer.TILE_SIZE;
+            i += 1;
+        }
+        return new RouteOverlay(NEXT_ID.getAndIncrement(), Collections.unmodifiableList(route),
+                xs, ys);
+    }
+
+    public long id() {
+        return id;
+    }
+
+    public List<Long> route() {
+        return route;
+    }
+
+    public boolean isEmpty() {
+        return xs.length == 0;
+    }
+
+    /** Returns the number of points along the route. */
+    public int size() {
+        return xs.length;
+    }
+
+    /** Returns the x coordinate of the ith point in root pixels. */
+    public double x(int i) {
+        return xs[i];
+    }
+
+    /** Returns the y coordinate of the ith point in root pixels. */
+    public double y(int i) {
+        return ys[i];
+    }
+
+    /**
+     * Returns the overlay tile at the given grid position, aligned with the map tile Rasterer
+     * names <code>d{depth}_x{x}_y{y}.png</code>.
+     * @return A transparent <code>TILE_SIZE</code> square image with the part of the route inside
+     * the tile, or null if the route does not touch the tile.
+     */
+    public BufferedImage tile(int depth, int x, int y) {
+        if (isEmpty()) {
+            return null;
+        }
+        return layer(depth).tile(x, y);
+    }
+
+    private Layer layer(int depth) {
+        synchronized (layers) {
+            if (layers[depth] == null) {
+                layers[depth] = new Layer(depth);
+            }
+            return layers[depth];
+        }
+    }
+
+    /** The overlay tiles of one depth. */
+    private class Layer {
+        /** Pixels per root pixel at this depth. */
+        private final double scale;
+        /** Segments touching each tile, keyed by <code>key(x, y)</code>. Segment i joins points
+         * i and i + 1. */
+        private final Map<Long, int[]> segments = new HashMap<>();
+        private final int depth;
+
+        private Layer(int depth) {
+            this.depth = depth;
+            scale = 1 << depth;
+            int tilesPerSide = 1 << depth;
+            /* The stroke reaches half its width past each end and side of a segment. */
+            double pad = ROUTE_STROKE_WIDTH_PX / 2 + 1;
+            Map<Long, List<Integer>> buckets = new HashMap<>();
+            for (int i = 0; i + 1 < size(); i += 1) {
+                double x0 = xs[i] * scale;
+                double y0 = ys[i] * scale;
+                double x1 = xs[i + 1] * scale;
+                double y1 = ys[i + 1] * scale;
+                int loX = clamp((int) Math.floor((Math.min(x0, x1) - pad) / TILE), tilesPerSide);
+                int hiX = clamp((int) Math.floor((Math.max(x0, x1) + pad) / TILE), tilesPerSide);
+                int loY = clamp((int) Math.floor((Math.min(y0, y1) - pad) / TILE), tilesPerSide);
+                int hiY = clamp((int) Math.floor((Math.max(y0, y1) + pad) / TILE), tilesPerSide);
+                for (int tx = loX; tx <= hiX; tx += 1) {
+                    for (int ty = loY; ty <= hiY; ty += 1) {
+                        buckets.computeIfAbsent(key(tx, ty), k -> new ArrayList<>()).add(i);
+                    }
+                }
+            }
+            for (Map.Entry<Long, List<Integer>> e : buckets.entrySet()) {
+                segments.put(e.getKey(), e.getValue().stream().mapToInt(i -> i).toArray());
+            }
+        }
+
+        private BufferedImage tile(int x, int y) {
+            long key = key(x, y);
+            int[] touching = segments.get(key);
+            if (touching == null) {
+                return null;
+            }
+            return TILES.get(tileKey(depth, x, y), k -> draw(x, y, touching));
+        }
+
+        /** Draws the given segments into a new transparent tile at grid position (x, y). */
+        private BufferedImage draw(int x, int y, int[] touching) {
+            BufferedImage img = new BufferedImage(TILE, TILE, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g2d = img.createGraphics();
+            g2d.setColor(ROUTE_STROKE_COLOR);
+            g2d.setStroke(new BasicStroke(ROUTE_STROKE_WIDTH_PX,
+                    BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+            double offX = (double) x * TILE;
+            double offY = (double) y * TILE;
+            for (int i : touching) {
+                g2d.drawLine(pixel(xs[i] * scale - offX), pixel(ys[i] * scale - offY),
+                        pixel(xs[i + 1] * scale - offX), pixel(ys[i + 1] * scale - offY));
+            }
+            g2d.dispose();
+            return img;
+        }
+    }
+
+    private static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xffffffffL);
+    }
+
+    /** Names this overlay's tile like the map tile under it, prefixed with the overlay id. */
+    private String tileKey(int depth, int x, int y) {
+        return id + "_d" + depth + "_x" + x + "_y" + y;
+    }
+
+    /** Rounds down, so points just left of or above a tile land on the neighbouring tile's edge
+     * pixel rather than this tile's. */
+    private static int pixel(double p) {
+        return (int) Math.floor(p);
+    }
+
+    private static int clamp(int t, int tilesPerSide) {
+        return Math.max(0, Math.min(tilesPerSide - 1, t));
+    }
+
+    private static final int TILE = MapServer.TILE_SIZE;
+    /** Route stroke information: typically roads are not more than 5px wide. */
+    private static final float ROUTE_STROKE_WIDTH_PX = 5.0f;
+    /** Route stroke information: semi-transparent cyan. */
+    private static final Color ROUTE_STROKE_COLOR = new Color(108, 181, 230, 200);
+}
@@ -0,0 +1,99 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * The current route of each browser session. Sessions that have not been touched for longer than
+ * the time to live are forgotten, and once there are more than the maximum number of sessions the
+ * least recently used are forgotten first. A forgotten session simply has no route.
+ */
+public class RouteStore {
+    private final int maxSessions;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    /** Sessions in access order, least recently used first. */
+    private final LinkedHashMap<String, Slot> sessions = new LinkedHashMap<>(64, 0.75f, true);
+
+    /**
+     * @param maxSessions The most sessions to keep a route for.
+     * @param ttlMillis How long an untouched route is kept, in milliseconds.
+     */
+    public RouteStore(int maxSessions, long ttlMillis) {
+        this(maxSessions, ttlMillis, System::nanoTime);
+    }
+
+    /** Creates a store that reads the time in nanoseconds from clock. */
+    RouteStore(int maxSessions, long ttlMillis, LongSupplier clock) {
+        this.maxSessions = maxSessions;
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the route of a session, or <code>RouteOverlay.EMPTY</code> if it has none.
+     * @param session The session token, or null.
+     */
+    public synchronized RouteOverlay get(String session) {
+        if (session == null) {
+            return RouteOverlay.EMPTY;
+        }
+        long now = clock.getAsLong();
+        Slot slot = sessions.get(session);
+        if (slot == null) {
+            return RouteOverlay.EMPTY;
+        }
+        if (now - slot.touched > ttlNanos) {
+            sessions.remove(session);
+            return RouteOverlay.EMPTY;
+        }
+        slot.touched = now;
+        return slot.overlay;
+    }
+
+    /**
+     * Replaces the route of a session.
+     * @param session The session token.
+     * @param overlay The new route.
+     * @return The session's previous route, or <code>RouteOverlay.EMPTY</code>.
+     */
+    public synchronized RouteOverlay put(String session, RouteOverlay overlay) {
+        long now = clock.getAsLong();
+        Slot previous = overlay.isEmpty()
+                ? sessions.remove(session) : sessions.put(session, new Slot(overlay, now));
+        evict(now);
+        return previous == null ? RouteOverlay.EMPTY : previous.overlay;
+    }
+
+    /** Removes the route of a session and returns it. */
+    public RouteOverlay remove(String session) {
+        return put(session, RouteOverlay.EMPTY);
+    }
+
+    public synchronized int size() {
+        return sessions.size();
+    }
+
+    /** Drops expired sessions from the old end, then the oldest sessions over the limit. */
+    private void evict(long now) {
+        Iterator<Map.Entry<String, Slot>> it = sessions.entrySet().iterator();
+        while (it.hasNext()) {
+            Slot eldest = it.next().getValue();
+            if (sessions.size() > maxSessions || now - eldest.touched > ttlNanos) {
+                it.remove();
+            } else {
+                break;
+            }
+        }
+    }
+
+    private static class Slot {
+        private final RouteOverlay overlay;
+        private long touched;
+
+        private Slot(RouteOverlay overlay, long touched) {
+            this.overlay = overlay;
+            this.touched = touched;
+        }
+    }
+}
@@ -1,8 +1,8 @@
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.PriorityQueue;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Collections;
 import java.util.Objects;
@@ -25,63 +25,136 @@ public class Router {
     public static List<Long> shortestPath(GraphDB g,
                                           double stlon, double stlat,
                                           double destlon, double destlat) {
-        // TODO
-        long startVertex = g.closest(stlon, stlat);
-        long destVertex = g.closest(destlon, destlat);
-        PriorityQueue<GraphDB.Vertex> fringe =
-                new PriorityQueue<GraphDB.Vertex>((x, y) ->
-                        comparatorHelper(destVertex, x, y, g));
-        fringe.add(g.getvMap().get(startVertex));
-        HashSet<GraphDB.Vertex> visited = new HashSet<>();
+        return shortestPath(g, g.getCostModel(CostModel.DISTANCE), stlon, stlat, destlon, destlat);
+    }
+
+    /**
+     * Return a <code>List</code> of vertex IDs corresponding to the cheapest path under a routing
+     * profile from a given starting coordinate and destination coordinate.
+     * @param g <code>GraphDB</code> data source.
+     * @param model The cost of each edge, e.g. <code>g.getCostModel(CostModel.TRAVEL_TIME)</code>.
+     * @param stlon The longitude of the starting coordinate.
+     * @param stlat The latitude of the starting coordinate.
+     * @param destlon The longitude of the destination coordinate.
+     * @param destlat The latitude of the destination coordinate.
+     * @return The <code>List</code> of vertex IDs corresponding to the cheapest path.
+     */
+    public static List<Long> shortestPath(GraphDB g, CostModel model,
+                                          double stlon, double stlat,
+                                          double destlon, double destlat) {
+        CompactGraph cg = g.getCompactGraph();
+        int start = cg.indexOf(g.closest(stlon, stlat));
+        int dest = cg.indexOf(g.closest(destlon, destlat));
+        SearchContext sc = SearchContext.acquire(cg);
+        IndexedMinHeap fringe = sc.fringe();
+        double perMile = model.minCostPerMile();
+        Landmarks landmarks = g.getLandmarks(model);
+        sc.reach(start, 0, -1, heuristic(cg, landmarks, perMile, start, dest));
+        fringe.insert(start, sc.heuristic(start));
 
         while (!fringe.isEmpty()) {
-            GraphDB.Vertex v = fringe.poll();
-            if (v.id == destVertex) {
-                List<Long> lst = new LinkedList<>();
-                ((LinkedList<Long>) lst).addFirst(v.id);
-                GraphDB.Vertex x = v.predecessor;
-                while (x != null) {
-                    ((LinkedList<Long>) lst).addFirst(x.id);
-                    x = x.predecessor;
-                }
-                for (GraphDB.Vertex vertex : g.getvMap().values()) {
-                    vertex.distance = 0;
-                    vertex.predecessor = null;
-                }
-                return lst;
+            int v = fringe.removeMin();
+            if (v == dest) {
+                Metrics.SETTLED_NODES.record(sc.settledCount());
+                return pathTo(cg, sc, dest);
             }
+            sc.settle(v);
 
-            for (Long i : v.neighbors) {
-                GraphDB.Vertex w = g.getvMap().get(i);
-
-                if (!visited.contains(w)) {
-                    if (!fringe.contains(w)) {
-                        w.distance = v.distance + g.distance(i, v.id);
-                        w.predecessor = v;
-                        fringe.add(w);
-                    } else {
-                        if (v.distance + g.distance(i, v.id) < w.distance) {
-                            w.distance = v.distance + g.distance(v.id, i);
-                            w.predecessor = v;
-                            fringe.add(w);
-                        }
-                    }
+            for (int e = cg.firstEdge(v); e < cg.endEdge(v); e += 1) {
+                int w = cg.target(e);
+                double d = sc.distTo(v) + model.cost(e);
+                if (sc.isSettled(w)) {
+                    continue;
+                }
+                if (!sc.isReached(w)) {
+                    sc.reach(w, d, v, heuristic(cg, landmarks, perMile, w, dest));
+                    fringe.insert(w, d + sc.heuristic(w));
+                } else if (d < sc.distTo(w)) {
+                    sc.relax(w, d, v);
+                    fringe.decreaseKey(w, d + sc.heuristic(w));
                 }
             }
-            visited.add(v);
         }
+        Metrics.SETTLED_NODES.record(sc.settledCount());
         return Collections.emptyList();
     }
 
-    public static int comparatorHelper(long dest, GraphDB.Vertex x, GraphDB.Vertex y, GraphDB g) {
-        if (g.distance(dest, x.id) + x.distance > g.distance(dest, y.id) + y.distance) {
-            return 1;
-        } else if (g.distance(dest, x.id) + x.distance > g.distance(dest, y.id) + y.distance) {
-            return 0;
-        } else {
-            return -1;
+    /**
+     * Returns the A* lower bound on the cost from v to dest: the great-circle distance at the
+     * profile's lowest cost per mile, or the landmark bound if that is larger.
+     */
+    private static double heuristic(CompactGraph cg, Landmarks landmarks, double perMile,
+                                    int v, int dest) {
+        double h = cg.distance(v, dest) * perMile;
+        return landmarks == null ? h : Math.max(h, landmarks.lowerBound(v, dest));
+    }
+
+    /**
+     * Same as <code>shortestPath</code>, but answered with a bidirectional query on the graph's
+     * contraction hierarchy. Falls back to <code>shortestPath</code> when
+     * <code>GraphDB.prepareContractionHierarchy</code> has not been called.
+     * @param g <code>GraphDB</code> data source.
+     * @param stlon The longitude of the starting coordinate.
+     * @param stlat The latitude of the starting coordinate.
+     * @param destlon The longitude of the destination coordinate.
+     * @param destlat The latitude of the destination coordinate.
+     * @return The <code>List</code> of vertex IDs corresponding to the shortest path.
+     */
+    public static List<Long> shortestPathCH(GraphDB g,
+                                            double stlon, double stlat,
+                                            double destlon, double destlat) {
+        ContractionHierarchy ch = g.getContractionHierarchy();
+        if (ch == null) {
+            return shortestPath(g, stlon, stlat, destlon, destlat);
         }
+        CompactGraph cg = g.getCompactGraph();
+        int start = cg.indexOf(g.closest(stlon, stlat));
+        int dest = cg.indexOf(g.closest(destlon, destlat));
+        return ch.shortestPath(start, dest);
     }
+
+    /**
+     * Returns the cost of the cheapest route from each source to each target under a routing
+     * profile. See <code>DistanceMatrix</code>.
+     * @param g <code>GraphDB</code> data source.
+     * @param model The routing profile.
+     * @param srcLons The longitudes of the sources.
+     * @param srcLats The latitudes of the sources.
+     * @param destLons The longitudes of the targets.
+     * @param destLats The latitudes of the targets.
+     * @return <code>result[i][j]</code> is the cost from source i to target j, or
+     * <code>Double.POSITIVE_INFINITY</code> if there is no route.
+     */
+    public static double[][] distanceMatrix(GraphDB g, CostModel model,
+                                            double[] srcLons, double[] srcLats,
+                                            double[] destLons, double[] destLats) {
+        return DistanceMatrix.compute(g, model, srcLons, srcLats, destLons, destLats);
+    }
+
+    /**
+     * Returns everything reachable from a point within a cost budget under a routing profile.
+     * See <code>Isochrone</code>.
+     * @param g <code>GraphDB</code> data source.
+     * @param model The routing profile.
+     * @param lon The longitude of the starting point.
+     * @param lat The latitude of the starting point.
+     * @param budget The largest cost to spend, e.g. miles or seconds.
+     * @return The reachable vertices and their outline.
+     */
+    public static Isochrone isochrone(GraphDB g, CostModel model,
+                                      double lon, double lat, double budget) {
+        return Isochrone.compute(g, model, lon, lat, budget);
+    }
+
+    /** Follows the back pointers in sc from dest and returns the OSM ids, start first. */
+    private static List<Long> pathTo(CompactGraph cg, SearchContext sc, int dest) {
+        LinkedList<Long> lst = new LinkedList<>();
+        for (int x = dest; x != -1; x = sc.edgeTo(x)) {
+            lst.addFirst(cg.id(x));
+        }
+        return lst;
+    }
+
     /**
      * Given a <code>route</code> of vertex IDs, return a <code>List</code> of
      * <code>NavigationDirection</code> objects representing the travel directions in order.
@@ -90,10 +163,84 @@ public class Router {
      * @return A new <code>List</code> of <code>NavigationDirection</code> objects.
      */
     public static List<NavigationDirection> routeDirections(GraphDB g, List<Long> route) {
-        // TODO
-        return Collections.emptyList();
+        List<NavigationDirection> directions = new ArrayList<>();
+        if (route.size() < 2) {
+            return directions;
+        }
+        CompactGraph cg = g.getCompactGraph();
+        Iterator<Long> it = route.iterator();
+        long prev = it.next();
+        int prevIndex = cg.indexOf(prev);
+        NavigationDirection current = null;
+        double prevBearing = 0;
+        while (it.hasNext()) {
+            long next = it.next();
+            int nextIndex = cg.indexOf(next);
+            int e = prevIndex < 0 || nextIndex < 0 ? -1 : cg.edge(prevIndex, nextIndex);
+            String way = wayName(g, e);
+            double bearing;
+            double distance;
+            if (e >= 0) {
+                bearing = GraphDB.bearing(cg.lon(prevIndex), cg.lat(prevIndex),
+                        cg.lon(nextIndex), cg.lat(nextIndex));
+                distance = cg.length(e);
+            } else {
+                /* Not a segment of the graph, e.g. a route read from elsewhere. */
+                bearing = g.bearing(prev, next);
+                distance = g.distance(prev, next);
+            }
+            if (current == null) {
+                current = new NavigationDirection();
+                current.direction = NavigationDirection.START;
+                current.way = way;
+            } else if (!current.way.equals(way)) {
+                directions.add(current);
+                current = new NavigationDirection();
+                current.direction = turn(prevBearing, bearing);
+                current.way = way;
+            }
+            current.distance += distance;
+            prev = next;
+            prevIndex = nextIndex;
+            prevBearing = bearing;
+        }
+        directions.add(current);
+        return directions;
+    }
+
+    /** Returns the name of the way of edge e, or <code>UNKNOWN_ROAD</code>. */
+    private static String wayName(GraphDB g, int e) {
+        String name = e < 0 ? null : g.getEdgeAttributes().name(e);
+        return name == null ? UNKNOWN_ROAD : name;
+    }
+
+    /**
+     * Returns the direction to take when the bearing changes from <code>from</code> to
+     * <code>to</code>. Bearings grow clockwise, so a positive change is a right turn.
+     */
+    private static int turn(double from, double to) {
+        double change = to - from;
+        if (change > 180) {
+            change -= 360;
+        } else if (change < -180) {
+            change += 360;
+        }
+        double size = Math.abs(change);
+        boolean left = change < 0;
+        if (size <= 15) {
+            return NavigationDirection.STRAIGHT;
+        } else if (size <= 30) {
+            return left ? NavigationDirection.SLIGHT_LEFT : NavigationDirection.SLIGHT_RIGHT;
+        } else if (size <= 100) {
+            return left ? NavigationDirection.LEFT : NavigationDirection.RIGHT;
+        } else {
+            return left ? NavigationDirection.SHARP_LEFT : NavigationDirection.SHARP_RIGHT;
+        }
     }
 
+    /** Name given to ways that have none. */
+    private static final String UNKNOWN_ROAD = "unknown road";
+
     /**
      * Class to represent a navigation direction, which consists of 3 attributes:
      * a direction to go, a way, and the distance to travel for.
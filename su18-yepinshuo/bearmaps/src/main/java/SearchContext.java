@@ -0,0 +1,135 @@
+import java.util.Arrays;
+
+/**
+ * Per-query state for shortest-path searches over a <code>CompactGraph</code>: tentative
+ * distances, back pointers, cached heuristics, settled flags and the fringe.
+ *
+ * Nothing is written into the graph, so any number of searches can run concurrently against one
+ * graph as long as each thread uses its own context. Contexts are reused between queries on the
+ * same thread instead of being cleared: every entry is stamped with the epoch of the query that
+ * wrote it, and <code>begin</code> starts a new epoch, which invalidates all entries in O(1).
+ */
+public class SearchContext {
+    private static final ThreadLocal<SearchContext> CONTEXTS = new ThreadLocal<>();
+
+    private final CompactGraph graph;
+    private final double[] distTo;
+    private final int[] edgeTo;
+    private final double[] heuristic;
+    /** reached[v] == epoch iff distTo, edgeTo and heuristic of v belong to this query. */
+    private final int[] reached;
+    /** settled[v] == epoch iff v was settled in this query. */
+    private final int[] settled;
+    /** The vertices settled in this query, in the order they were settled. */
+    private final int[] settledOrder;
+    private final IndexedMinHeap fringe;
+    private int epoch;
+    /** Number of vertices settled in this query. */
+    private int settledCount;
+
+    SearchContext(CompactGraph graph) {
+        this(graph, 0);
+    }
+
+    /** Creates a context whose first query has epoch + 1, so tests can reach the wrap. */
+    SearchContext(CompactGraph graph, int epoch) {
+        int n = graph.size();
+        this.graph = graph;
+        distTo = new double[n];
+        edgeTo = new int[n];
+        heuristic = new double[n];
+        reached = new int[n];
+        settled = new int[n];
+        settledOrder = new int[n];
+        fringe = new IndexedMinHeap(n);
+        this.epoch = epoch;
+    }
+
+    /**
+     * Returns the calling thread's context for <code>graph</code>, ready for a new query.
+     * @param graph The graph to search.
+     * @return A context on which <code>begin</code> has already been called.
+     */
+    public static SearchContext acquire(CompactGraph graph) {
+        SearchContext context = CONTEXTS.get();
+        if (context == null || context.graph != graph) {
+            context = new SearchContext(graph);
+            CONTEXTS.set(context);
+        }
+        context.begin();
+        return context;
+    }
+
+    /** Forgets the previous query. */
+    public void begin() {
+        fringe.clear();
+        settledCount = 0;
+        epoch += 1;
+        if (epoch == Integer.MAX_VALUE) {
+            Arrays.fill(reached, 0);
+            Arrays.fill(settled, 0);
+            epoch = 1;
+        }
+    }
+
+    public IndexedMinHeap fringe() {
+        return fringe;
+    }
+
+    /** Returns true if v has a tentative distance in this query. */
+    public boolean isReached(int v) {
+        return reached[v] == epoch;
+    }
+
+    /** Returns the tentative distance to v, or infinity if v has not been reached. */
+    public double distTo(int v) {
+        return reached[v] == epoch ? distTo[v] : Double.POSITIVE_INFINITY;
+    }
+
+    /** Returns the vertex v was reached from, or -1 for the source. v must have been reached. */
+    public int edgeTo(int v) {
+        return edgeTo[v];
+    }
+
+    /** Returns the heuristic stored for v. v must have been reached. */
+    public double heuristic(int v) {
+        return heuristic[v];
+    }
+
+    /**
+     * Records that v was first reached with distance d from vertex <code>from</code>, and stores
+     * its heuristic h, which then stays cached for the rest of the query.
+     */
+    public void reach(int v, double d, int from, double h) {
+        reached[v] = epoch;
+        distTo[v] = d;
+        edgeTo[v] = from;
+        heuristic[v] = h;
+    }
+
+    /** Records a shorter distance d to an already reached vertex v, via <code>from</code>. */
+    public void relax(int v, double d, int from) {
+        distTo[v] = d;
+        edgeTo[v] = from;
+    }
+
+    public boolean isSettled(int v) {
+        return settled[v] == epoch;
+    }
+
+    public void settle(int v) {
+        settled[v] = epoch;
+        settledOrder[settledCount] = v;
+        settledCount += 1;
+    }
+
+    /** Returns the number of vertices settled in this query so far. */
+    public int settledCount() {
+        return settledCount;
+    }
+
+    /** Returns the i-th vertex settled in this query, for i below <code>settledCount</code>. */
+    public int settledVertex(int i) {
+        return settledOrder[i];
+    }
+}
@@ -0,0 +1,131 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * In-memory cache of decoded map tiles, keyed by the tile file names Rasterer produces
+ * (e.g. <code>d3_x2_y5.png</code>). The cache is bounded by the decoded size of its images, not
+ * by their count, and evicts the least recently used tiles first.
+ *
+ * Tiles are decoded outside the lock, so a slow decode does not block requests for other tiles.
+ * Two threads missing on the same tile at once may both decode it; the second result is dropped.
+ * The cache can also hold images drawn rather than decoded, such as route overlay tiles, by
+ * passing the function that draws them to <code>get</code>.
+ */
+public class TileCache {
+    private final long maxBytes;
+    private final Function<String, BufferedImage> loader;
+    /** Tiles in access order, least recently used first. */
+    private final LinkedHashMap<String, BufferedImage> tiles =
+            new LinkedHashMap<>(256, 0.75f, true);
+    private long bytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates an empty cache.
+     * @param maxBytes The most decoded image data to keep, in bytes.
+     * @param loader Decodes the tile with the given name, returning null if it cannot.
+     */
+    public TileCache(long maxBytes, Function<String, BufferedImage> loader) {
+        this.maxBytes = maxBytes;
+        this.loader = loader;
+    }
+
+    /**
+     * Creates an empty cache whose images are produced by the function given to each
+     * <code>get</code>.
+     * @param maxBytes The most image data to keep, in bytes.
+     */
+    public TileCache(long maxBytes) {
+        this(maxBytes, name -> null);
+    }
+
+    /**
+     * Returns the decoded tile, loading it on a miss.
+     * @param name The tile's file name.
+     * @return The tile, or null if the loader could not produce it.
+     */
+    public BufferedImage get(String name) {
+        return get(name, loader);
+    }
+
+    /**
+     * Returns the cached image, producing it with <code>loader</code> on a miss.
+     * @param name The image's key.
+     * @param loader Produces the image with the given key, or returns null if it cannot.
+     * @return The image, or null if the loader could not produce it.
+     */
+    public BufferedImage get(String name, Function<String, BufferedImage> loader) {
+        synchronized (this) {
+            BufferedImage img = tiles.get(name);
+            if (img != null) {
+                hits.incrementAndGet();
+                return img;
+            }
+        }
+        misses.incrementAndGet();
+        BufferedImage img = loader.apply(name);
+        if (img == null) {
+            return null;
+        }
+        synchronized (this) {
+            BufferedImage previous = tiles.put(name, img);
+            if (previous != null) {
+                bytes -= sizeOf(previous);
+            }
+            bytes += sizeOf(img);
+            Iterator<Map.Entry<String, BufferedImage>> it = tiles.entrySet().iterator();
+            while (bytes > maxBytes && it.hasNext()) {
+                Map.Entry<String, BufferedImage> eldest = it.next();
+                if (eldest.getValue() == img) {
+                    continue;
+                }
+                bytes -= sizeOf(eldest.getValue());
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+        return img;
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    /** Returns the decoded size of the cached tiles in bytes. */
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public synchronized int size() {
+        return tiles.size();
+    }
+
+    /** Returns the number of bytes held by the pixel data of img. */
+    static long sizeOf(BufferedImage img) {
+        DataBuffer buffer = img.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks()
+                * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TileCache{tiles=%d, bytes=%d, hits=%d, misses=%d, evictions=%d}",
+                size(), bytes(), hits(), misses(), evictions());
+    }
+}
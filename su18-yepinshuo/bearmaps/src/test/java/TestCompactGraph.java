@@ -0,0 +1,101 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the CSR layout of <code>CompactGraph</code> on a small hand-built graph, and that a
+ * parsed graph keeps no per-vertex objects once the compact graph exists.
+ */
+public class TestCompactGraph {
+    private static final String TINY_DB_PATH = "../library-su18/bearmaps/tiny-clean.osm.xml";
+    private CompactGraph graph;
+
+    /**
+     * A path 10 - 20 - 30 plus the edge 20 - 40, with 20 - 30 given twice, as two ways sharing
+     * a segment would.
+     */
+    @Before
+    public void setUp() {
+        HashMap<Long, GraphDB.Vertex> vMap = new HashMap<>();
+        long[] ids = {10, 20, 30, 40};
+        for (int i = 0; i < ids.length; i++) {
+            vMap.put(ids[i], new GraphDB.Vertex(ids[i], -122.25 + i * 0.01, 37.87));
+        }
+        connect(vMap, 10, 20);
+        connect(vMap, 20, 30);
+        connect(vMap, 20, 30);
+        connect(vMap, 20, 40);
+        graph = new CompactGraph(vMap);
+    }
+
+    @Test
+    public void testIndexOf() {
+        assertEquals(4, graph.size());
+        Set<Integer> indices = new HashSet<>();
+        for (long id : new long[]{10, 20, 30, 40}) {
+            int v = graph.indexOf(id);
+            assertTrue(v >= 0 && v < graph.size());
+            assertEquals(id, graph.id(v));
+            indices.add(v);
+        }
+        assertEquals(4, indices.size());
+        assertEquals(-1, graph.indexOf(15));
+        assertEquals(-1, graph.indexOf(0));
+        assertEquals(-1, graph.indexOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testOffsets() {
+        /* Duplicate neighbors collapse, so there are 3 segments in both directions. */
+        assertEquals(6, graph.edgeCount());
+        assertEquals(0, graph.firstEdge(0));
+        assertEquals(graph.edgeCount(), graph.endEdge(graph.size() - 1));
+        for (int v = 0; v < graph.size(); v++) {
+            assertEquals(graph.endEdge(v), v + 1 < graph.size() ? graph.firstEdge(v + 1)
+                    : graph.edgeCount());
+        }
+        assertEquals(1, degree(10));
+        assertEquals(3, degree(20));
+        assertEquals(1, degree(30));
+        assertEquals(1, degree(40));
+    }
+
+    @Test
+    public void testEdge() {
+        int a = graph.indexOf(10);
+        int b = graph.indexOf(20);
+        int c = graph.indexOf(30);
+        int e = graph.edge(a, b);
+        assertTrue(e >= graph.firstEdge(a) && e < graph.endEdge(a));
+        assertEquals(b, graph.target(e));
+        assertEquals(graph.distance(a, b), graph.length(e), 0);
+        assertEquals(graph.length(e), graph.length(graph.edge(b, a)), 0);
+        assertEquals(-1, graph.edge(a, c));
+        assertEquals(-1, graph.edge(a, a));
+    }
+
+    @Test
+    public void testParsedGraphDropsVertices() {
+        for (GraphDB.LoadMode mode : GraphDB.LoadMode.values()) {
+            GraphDB g = new GraphDB(TINY_DB_PATH, mode);
+            assertEquals(0, g.getvMap().size());
+            assertTrue(g.getCompactGraph().size() > 0);
+        }
+    }
+
+    private int degree(long id) {
+        int v = graph.indexOf(id);
+        return graph.endEdge(v) - graph.firstEdge(v);
+    }
+
+    private static void connect(HashMap<Long, GraphDB.Vertex> vMap, long a, long b) {
+        vMap.get(a).addNeighbor(b);
+        vMap.get(b).addNeighbor(a);
+    }
+}
@@ -0,0 +1,98 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares A* under each routing profile against plain Dijkstra on the same edge costs.
+ */
+public class TestCostModel {
+    private static final String OSM_DB_PATH = "../library-su18/bearmaps/berkeley-2018.osm.xml";
+    private static final int NUM_TESTS = 20;
+    private static GraphDB graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new GraphDB(OSM_DB_PATH);
+        graph.addCostModel(CostModel.of("hilly", graph,
+            (e, length, attributes) -> length * (1 + e % 5)));
+        initialized = true;
+    }
+
+    @Test
+    public void testBoundHoldsForEveryEdge() {
+        CompactGraph cg = graph.getCompactGraph();
+        for (String profile : new String[]{CostModel.DISTANCE, CostModel.TRAVEL_TIME, "hilly"}) {
+            CostModel model = graph.getCostModel(profile);
+            for (int e = 0; e < cg.edgeCount(); e++) {
+                assertTrue(model.cost(e) >= cg.length(e) * model.minCostPerMile());
+            }
+        }
+        assertEquals(1.0, graph.getCostModel(CostModel.DISTANCE).minCostPerMile(), 0);
+    }
+
+    @Test
+    public void testTravelTime() {
+        checkAgainstDijkstra(CostModel.TRAVEL_TIME);
+    }
+
+    @Test
+    public void testCustomProfile() {
+        checkAgainstDijkstra("hilly");
+    }
+
+    private void checkAgainstDijkstra(String profile) {
+        CompactGraph cg = graph.getCompactGraph();
+        CostModel model = graph.getCostModel(profile);
+        Random random = new Random(61);
+        for (int i = 0; i < NUM_TESTS; i++) {
+            int s = random.nextInt(cg.size());
+            int t = random.nextInt(cg.size());
+            List<Long> path = Router.shortestPath(graph, model,
+                    cg.lon(s), cg.lat(s), cg.lon(t), cg.lat(t));
+            double actual = 0;
+            for (int j = 0; j + 1 < path.size(); j++) {
+                int v = cg.indexOf(path.get(j));
+                int w = cg.indexOf(path.get(j + 1));
+                actual += model.cost(cg.edge(v, w));
+            }
+            int source = cg.indexOf(graph.closest(cg.lon(s), cg.lat(s)));
+            int target = cg.indexOf(graph.closest(cg.lon(t), cg.lat(t)));
+            assertEquals(dijkstra(cg, model, source)[target], actual, 1e-9 * (1 + actual));
+        }
+    }
+
+    private static double[] dijkstra(CompactGraph cg, CostModel model, int source) {
+        double[] dist = new double[cg.size()];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        dist[source] = 0;
+        PriorityQueue<double[]> pq = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+        pq.add(new double[]{0, source});
+        while (!pq.isEmpty()) {
+            double[] top = pq.poll();
+            int v = (int) top[1];
+            if (top[0] > dist[v]) {
+                continue;
+            }
+            for (int e = cg.firstEdge(v); e < cg.endEdge(v); e++) {
+                int w = cg.target(e);
+                double d = dist[v] + model.cost(e);
+                if (d < dist[w]) {
+                    dist[w] = d;
+                    pq.add(new double[]{d, w});
+                }
+            }
+        }
+        return dist;
+    }
+}
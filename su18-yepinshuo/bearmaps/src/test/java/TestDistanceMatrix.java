@@ -0,0 +1,111 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Compares distance matrices against one <code>Router.shortestPath</code> call per cell, with and
+ * without a contraction hierarchy.
+ */
+public class TestDistanceMatrix {
+    private static final String OSM_DB_PATH = "../library-su18/bearmaps/berkeley-2018.osm.xml";
+    private static final String TINY_DB_PATH = "../library-su18/bearmaps/tiny-clean.osm.xml";
+    private static final int NUM_POINTS = 12;
+    private static GraphDB graph;
+    private static GraphDB tiny;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new GraphDB(OSM_DB_PATH);
+        tiny = new GraphDB(TINY_DB_PATH);
+        tiny.prepareContractionHierarchy();
+        initialized = true;
+    }
+
+    @Test
+    public void testDijkstraRows() {
+        check(graph, graph.getCostModel(CostModel.DISTANCE));
+        check(graph, graph.getCostModel(CostModel.TRAVEL_TIME));
+    }
+
+    @Test
+    public void testContractionHierarchyBuckets() {
+        check(tiny, tiny.getCostModel(CostModel.DISTANCE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMismatchedPoints() {
+        Router.distanceMatrix(graph, graph.getCostModel(CostModel.DISTANCE),
+                new double[2], new double[1], new double[1], new double[1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonFinitePoint() {
+        Router.distanceMatrix(graph, graph.getCostModel(CostModel.DISTANCE),
+                new double[]{Double.NaN}, new double[]{37.87},
+                new double[]{-122.26}, new double[]{37.87});
+    }
+
+    @Test
+    public void testParsePoints() {
+        double[][] points = MapServer.parsePoints("-122.26,37.87; -122.25 ,37.86");
+        assertEquals(-122.25, points[0][1], 0);
+        assertEquals(37.86, points[1][1], 0);
+        String[] bad = {"1,2,3", "1", "1,", ",2", "NaN,37", "-122,Infinity", "181,37",
+            "-122,-91", "a,b"};
+        for (String s : bad) {
+            try {
+                MapServer.parsePoints(s);
+                fail(s);
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage().startsWith("Incorrect parameters"));
+            }
+        }
+    }
+
+    private static void check(GraphDB g, CostModel model) {
+        CompactGraph cg = g.getCompactGraph();
+        Random random = new Random(61);
+        double[][] sources = randomPoints(cg, random);
+        double[][] targets = randomPoints(cg, random);
+        /* Repeated points share their row or column. */
+        sources[0][1] = sources[0][0];
+        sources[1][1] = sources[1][0];
+        double[][] actual = Router.distanceMatrix(g, model,
+                sources[0], sources[1], targets[0], targets[1]);
+        assertEquals(NUM_POINTS, actual.length);
+        for (int i = 0; i < NUM_POINTS; i++) {
+            assertEquals(NUM_POINTS, actual[i].length);
+            for (int j = 0; j < NUM_POINTS; j++) {
+                List<Long> path = Router.shortestPath(g, model,
+                        sources[0][i], sources[1][i], targets[0][j], targets[1][j]);
+                double expected = path.isEmpty() ? Double.POSITIVE_INFINITY : 0;
+                for (int k = 0; k + 1 < path.size(); k++) {
+                    int v = cg.indexOf(path.get(k));
+                    int w = cg.indexOf(path.get(k + 1));
+                    expected += model.cost(cg.edge(v, w));
+                }
+                assertEquals(expected, actual[i][j], 1e-9 * (1 + expected));
+            }
+        }
+    }
+
+    private static double[][] randomPoints(CompactGraph cg, Random random) {
+        double[][] points = new double[2][NUM_POINTS];
+        for (int i = 0; i < NUM_POINTS; i++) {
+            int v = random.nextInt(cg.size());
+            points[0][i] = cg.lon(v);
+            points[1][i] = cg.lat(v);
+        }
+        return points;
+    }
+}
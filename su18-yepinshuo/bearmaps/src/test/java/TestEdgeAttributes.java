@@ -0,0 +1,79 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the per-edge way attributes against the ways they came from, and the parsing of speed
+ * limits.
+ */
+public class TestEdgeAttributes {
+    private static final String OSM_DB_PATH = "../library-su18/bearmaps/berkeley-2018.osm.xml";
+    private static GraphDB graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new GraphDB(OSM_DB_PATH);
+        initialized = true;
+    }
+
+    @Test
+    public void testEdgesMatchTheirWays() {
+        CompactGraph cg = graph.getCompactGraph();
+        EdgeAttributes attributes = graph.getEdgeAttributes();
+        assertEquals(cg.edgeCount(), attributes.size());
+        for (int v = 0; v < cg.size(); v++) {
+            for (int e = cg.firstEdge(v); e < cg.endEdge(v); e++) {
+                GraphDB.Edge way = graph.geteMap().get(attributes.wayId(e));
+                assertTrue("Edge " + e + " has no way", way != null);
+                assertEquals(way.name, attributes.name(e));
+                assertEquals(way.highway, attributes.highway(e));
+                assertEquals(Float.floatToIntBits(EdgeAttributes.parseSpeed(way.maxSpeed)),
+                        Float.floatToIntBits(attributes.maxSpeed(e)));
+                assertTrue("Way " + way.id + " does not join edge " + e,
+                        joins(way.vertexList, cg.id(v), cg.id(cg.target(e))));
+            }
+        }
+    }
+
+    /** Returns true if from and to are next to each other in vs. */
+    private static boolean joins(List<Long> vs, long from, long to) {
+        for (int i = 0; i + 1 < vs.size(); i++) {
+            if (vs.get(i) == from && vs.get(i + 1) == to
+                    || vs.get(i) == to && vs.get(i + 1) == from) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testNamesAreShared() {
+        EdgeAttributes attributes = graph.getEdgeAttributes();
+        for (int e = 1; e < attributes.size(); e++) {
+            String a = attributes.name(e - 1);
+            String b = attributes.name(e);
+            if (a != null && a.equals(b)) {
+                assertTrue(a == b);
+            }
+        }
+    }
+
+    @Test
+    public void testParseSpeed() {
+        assertEquals(25f, EdgeAttributes.parseSpeed("25 mph"), 1e-6);
+        assertEquals(25f, EdgeAttributes.parseSpeed("25mph"), 1e-6);
+        assertEquals(31.06855f, EdgeAttributes.parseSpeed("50 km/h"), 1e-4);
+        assertEquals(31.06855f, EdgeAttributes.parseSpeed("50"), 1e-4);
+        assertTrue(Float.isNaN(EdgeAttributes.parseSpeed(null)));
+        assertTrue(Float.isNaN(EdgeAttributes.parseSpeed("none")));
+        assertTrue(Float.isNaN(EdgeAttributes.parseSpeed("signals")));
+    }
+}
@@ -0,0 +1,146 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that a snapshot reads back the graph it was written from, that stale or corrupt
+ * snapshots are detected, and that <code>GraphDB.load</code> parses the XML instead of them.
+ */
+public class TestGraphSnapshot {
+    private static final String TINY_DB_PATH = "../library-su18/bearmaps/tiny-clean.osm.xml";
+    private static GraphDB tiny;
+    private static boolean initialized = false;
+    private File source;
+    private File snapshot;
+
+    @Before
+    public void setUp() throws Exception {
+        if (!initialized) {
+            tiny = new GraphDB(TINY_DB_PATH);
+            initialized = true;
+        }
+        source = File.createTempFile("tiny", ".osm.xml");
+        source.deleteOnExit();
+        Files.copy(new File(TINY_DB_PATH).toPath(), source.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        snapshot = File.createTempFile("tiny", ".snapshot");
+        snapshot.deleteOnExit();
+        GraphSnapshot.write(tiny, snapshot, source);
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        assertTrue(GraphSnapshot.isFresh(snapshot, source));
+        assertSameGraph(GraphSnapshot.read(snapshot));
+    }
+
+    @Test
+    public void testReadThroughSmallWindows() throws Exception {
+        /* Windows this small put values and arrays across window ends, as 2 GB ones would. */
+        for (int window : new int[]{Long.BYTES, 13, 4096}) {
+            assertSameGraph(GraphSnapshot.read(snapshot, window));
+        }
+        try (RandomAccessFile file = new RandomAccessFile(snapshot, "rw")) {
+            file.setLength(snapshot.length() - 1);
+        }
+        try {
+            GraphSnapshot.read(snapshot, 13);
+            fail("Read a truncated snapshot through small windows");
+        } catch (IOException e) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void testStaleSource() throws Exception {
+        assertTrue(source.setLastModified(source.lastModified() - 60_000));
+        assertFalse(GraphSnapshot.isFresh(snapshot, source));
+        Files.write(source.toPath(), new byte[]{' '}, StandardOpenOption.APPEND);
+        assertFalse(GraphSnapshot.isFresh(snapshot, source));
+        assertFalse(GraphSnapshot.isFresh(new File(snapshot.getPath() + ".missing"), source));
+    }
+
+    @Test
+    public void testVersionMismatch() throws Exception {
+        try (RandomAccessFile file = new RandomAccessFile(snapshot, "rw")) {
+            file.seek(Integer.BYTES);
+            file.writeInt(GraphSnapshot.VERSION + 1);
+        }
+        assertFalse(GraphSnapshot.isFresh(snapshot, source));
+        assertReadFails();
+    }
+
+    @Test
+    public void testTruncated() throws Exception {
+        long length = snapshot.length();
+        for (long cut : new long[]{length - 1, length / 2, 30, 4, 0}) {
+            try (RandomAccessFile file = new RandomAccessFile(snapshot, "rw")) {
+                file.setLength(cut);
+            }
+            assertReadFails();
+        }
+    }
+
+    @Test
+    public void testCorruptCount() throws Exception {
+        /* The vertex count follows the header; claim more vertices than the file holds. */
+        try (RandomAccessFile file = new RandomAccessFile(snapshot, "rw")) {
+            file.seek(2 * Integer.BYTES + 2 * Long.BYTES);
+            file.writeInt(Integer.MAX_VALUE);
+        }
+        assertTrue(GraphSnapshot.isFresh(snapshot, source));
+        assertReadFails();
+    }
+
+    @Test
+    public void testLoadParsesInsteadOfCorruptSnapshot() throws Exception {
+        try (RandomAccessFile file = new RandomAccessFile(snapshot, "rw")) {
+            file.setLength(snapshot.length() / 2);
+        }
+        GraphDB g = GraphDB.load(source.getPath(), snapshot.getPath());
+        assertSameGraph(g);
+        /* The corrupt snapshot was replaced by a good one. */
+        assertTrue(GraphSnapshot.isFresh(snapshot, source));
+        assertSameGraph(GraphSnapshot.read(snapshot));
+    }
+
+    private void assertReadFails() {
+        try {
+            GraphSnapshot.read(snapshot);
+            fail("Read a corrupt snapshot of " + snapshot.length() + " bytes");
+        } catch (IOException e) {
+            /* Expected: GraphDB.load parses the XML instead. */
+        }
+    }
+
+    private static void assertSameGraph(GraphDB g) {
+        CompactGraph expected = tiny.getCompactGraph();
+        CompactGraph actual = g.getCompactGraph();
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.edgeCount(), actual.edgeCount());
+        for (int v = 0; v < expected.size(); v++) {
+            assertEquals(expected.id(v), actual.id(v));
+            assertEquals(expected.lon(v), actual.lon(v), 0);
+            assertEquals(expected.lat(v), actual.lat(v), 0);
+            assertEquals(expected.firstEdge(v), actual.firstEdge(v));
+        }
+        for (int e = 0; e < expected.edgeCount(); e++) {
+            assertEquals(expected.target(e), actual.target(e));
+            assertEquals(expected.length(e), actual.length(e), 0);
+        }
+        assertEquals(tiny.geteMap().size(), g.geteMap().size());
+        assertEquals(tiny.closest(-122.2, 37.85), g.closest(-122.2, 37.85));
+        assertEquals(tiny.getLocationIndex().size(), g.getLocationIndex().size());
+    }
+}
@@ -0,0 +1,153 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the Hilbert curve, and that renumbering a <code>CompactGraph</code> keeps every vertex,
+ * edge and length under the same OSM ids while bringing neighbors closer together.
+ */
+public class TestHilbertOrder {
+    private static final String OSM_DB_PATH = "../library-su18/bearmaps/berkeley-2018.osm.xml";
+    private static CompactGraph graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new GraphDB(OSM_DB_PATH).getCompactGraph();
+        initialized = true;
+    }
+
+    @Test
+    public void testCurveVisitsNeighboringCells() {
+        int side = 1 << 16;
+        long[] corners = {
+            CompactGraph.hilbertIndex(0, 0), CompactGraph.hilbertIndex(side - 1, 0)
+        };
+        assertEquals(0, corners[0]);
+        assertEquals((long) side * side - 1, corners[1]);
+        /* Consecutive cells of a 64 x 64 corner of the grid are always adjacent. */
+        int n = 64;
+        int[][] cells = new int[n * n][];
+        for (int x = 0; x < n; x++) {
+            for (int y = 0; y < n; y++) {
+                long d = CompactGraph.hilbertIndex(x, y);
+                assertTrue(d < n * n);
+                cells[(int) d] = new int[]{x, y};
+            }
+        }
+        for (int d = 1; d < cells.length; d++) {
+            int dx = Math.abs(cells[d][0] - cells[d - 1][0]);
+            int dy = Math.abs(cells[d][1] - cells[d - 1][1]);
+            assertEquals(1, dx + dy);
+        }
+    }
+
+    @Test
+    public void testPermuteKeepsGraph() {
+        int n = graph.size();
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Random random = new Random(7);
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+        CompactGraph shuffled = graph.permute(order);
+        assertEquals(n, shuffled.size());
+        assertEquals(graph.edgeCount(), shuffled.edgeCount());
+        for (int v = 0; v < n; v++) {
+            int w = shuffled.indexOf(graph.id(v));
+            assertEquals(graph.id(order[w]), shuffled.id(w));
+            assertEquals(graph.lon(v), shuffled.lon(w), 0);
+            assertEquals(graph.lat(v), shuffled.lat(w), 0);
+            assertEquals(graph.endEdge(v) - graph.firstEdge(v),
+                    shuffled.endEdge(w) - shuffled.firstEdge(w));
+            for (int e = graph.firstEdge(v); e < graph.endEdge(v); e++) {
+                int f = shuffled.edge(w, shuffled.indexOf(graph.id(graph.target(e))));
+                assertTrue(f >= 0);
+                assertEquals(graph.length(e), shuffled.length(f), 0);
+            }
+            for (int f = shuffled.firstEdge(w) + 1; f < shuffled.endEdge(w); f++) {
+                assertTrue(shuffled.target(f - 1) < shuffled.target(f));
+            }
+        }
+    }
+
+    @Test
+    public void testLoadedGraphIsInHilbertOrder() {
+        int[] order = graph.hilbertOrder();
+        Set<Integer> seen = new HashSet<>();
+        for (int v : order) {
+            seen.add(v);
+        }
+        assertEquals(graph.size(), seen.size());
+        int[] identity = new int[graph.size()];
+        for (int i = 0; i < identity.length; i++) {
+            identity[i] = i;
+        }
+        assertArrayEquals(identity, order);
+    }
+
+    @Test
+    public void testOrderFollowsCurveAcrossAllQuadrants() {
+        long[] positions = graph.hilbertPositions();
+        int[] order = graph.hilbertOrder();
+        long half = 1L << 31;
+        boolean low = false;
+        boolean high = false;
+        for (int i = 0; i < order.length; i++) {
+            long p = positions[order[i]];
+            low |= p < half;
+            high |= p >= half;
+            if (i > 0) {
+                assertTrue(positions[order[i - 1]] <= p);
+            }
+        }
+        /* The map fills its bounding box, so both halves of the curve are used. */
+        assertTrue(low && high);
+    }
+
+    @Test
+    public void testNeighborsAreClose() {
+        int n = graph.size();
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Random random = new Random(3);
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+        CompactGraph shuffled = graph.permute(order);
+        CompactGraph ordered = shuffled.permute(shuffled.hilbertOrder());
+        assertTrue(10 * meanGap(ordered) < meanGap(shuffled));
+    }
+
+    /** Returns the mean distance in index between the ends of an edge. */
+    private static double meanGap(CompactGraph g) {
+        double total = 0;
+        for (int v = 0; v < g.size(); v++) {
+            for (int e = g.firstEdge(v); e < g.endEdge(v); e++) {
+                total += Math.abs(g.target(e) - v);
+            }
+        }
+        return total / g.edgeCount();
+    }
+}
@@ -0,0 +1,112 @@
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that <code>IndexedMinHeap</code> removes items in priority order when priorities are
+ * lowered in place, and that it tracks which items it holds.
+ */
+public class TestIndexedMinHeap {
+    @Test
+    public void testOrder() {
+        IndexedMinHeap heap = new IndexedMinHeap(5);
+        heap.insert(0, 5);
+        heap.insert(1, 3);
+        heap.insert(2, 4);
+        heap.insert(3, 1);
+        heap.insert(4, 2);
+        assertEquals(5, heap.size());
+        assertEquals(3, heap.min());
+        int[] order = new int[5];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = heap.removeMin();
+        }
+        assertTrue(Arrays.equals(new int[]{3, 4, 1, 2, 0}, order));
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void testDecreaseKey() {
+        IndexedMinHeap heap = new IndexedMinHeap(4);
+        heap.insert(0, 10);
+        heap.insert(1, 20);
+        heap.insert(2, 30);
+        heap.insert(3, 40);
+        heap.decreaseKey(3, 5);
+        assertEquals(5, heap.key(3), 0);
+        assertEquals(3, heap.min());
+        heap.decreaseKey(2, 15);
+        assertEquals(3, heap.removeMin());
+        assertEquals(0, heap.removeMin());
+        assertEquals(2, heap.removeMin());
+        assertEquals(1, heap.removeMin());
+    }
+
+    /** Lowers random priorities and checks the items come out sorted by their final priority. */
+    @Test
+    public void testRandomDecreaseKey() {
+        int n = 1000;
+        Random random = new Random(61);
+        IndexedMinHeap heap = new IndexedMinHeap(n);
+        double[] keys = new double[n];
+        for (int v = 0; v < n; v++) {
+            keys[v] = random.nextDouble() * 1000;
+            heap.insert(v, keys[v]);
+        }
+        for (int i = 0; i < 5 * n; i++) {
+            int v = random.nextInt(n);
+            keys[v] = keys[v] * random.nextDouble();
+            heap.decreaseKey(v, keys[v]);
+        }
+        double last = Double.NEGATIVE_INFINITY;
+        while (!heap.isEmpty()) {
+            int v = heap.removeMin();
+            assertTrue(keys[v] >= last);
+            last = keys[v];
+        }
+    }
+
+    @Test
+    public void testContains() {
+        IndexedMinHeap heap = new IndexedMinHeap(3);
+        heap.insert(0, 2);
+        heap.insert(1, 1);
+        assertTrue(heap.contains(0));
+        assertTrue(heap.contains(1));
+        assertFalse(heap.contains(2));
+        assertEquals(1, heap.removeMin());
+        assertFalse(heap.contains(1));
+        assertTrue(heap.contains(0));
+        /* A removed item can be inserted again. */
+        heap.insert(1, 3);
+        assertTrue(heap.contains(1));
+        heap.clear();
+        assertTrue(heap.isEmpty());
+        assertFalse(heap.contains(0));
+        assertFalse(heap.contains(1));
+    }
+
+    @Test
+    public void testEmpty() {
+        IndexedMinHeap heap = new IndexedMinHeap(1);
+        try {
+            heap.removeMin();
+            fail("Removed from an empty heap");
+        } catch (NoSuchElementException e) {
+            /* Expected. */
+        }
+        try {
+            heap.min();
+            fail("Read the minimum of an empty heap");
+        } catch (NoSuchElementException e) {
+            /* Expected. */
+        }
+    }
+}
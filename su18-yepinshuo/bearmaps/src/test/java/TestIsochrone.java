@@ -0,0 +1,114 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares isochrones against distance matrix costs, and checks their outlines.
+ */
+public class TestIsochrone {
+    private static final String OSM_DB_PATH = "../library-su18/bearmaps/berkeley-2018.osm.xml";
+    private static final int NUM_SAMPLES = 200;
+    private static GraphDB graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new GraphDB(OSM_DB_PATH);
+        initialized = true;
+    }
+
+    @Test
+    public void testReachableWithinBudget() {
+        check(graph.getCostModel(CostModel.DISTANCE), 0.5);
+        check(graph.getCostModel(CostModel.TRAVEL_TIME), 120);
+    }
+
+    @Test
+    public void testOutline() {
+        CompactGraph cg = graph.getCompactGraph();
+        int source = cg.size() / 2;
+        double miles = 0.5;
+        Isochrone reachable = Router.isochrone(graph, graph.getCostModel(CostModel.DISTANCE),
+                cg.lon(source), cg.lat(source), miles);
+        double[][] ring = reachable.polygon();
+        assertTrue(ring.length >= 4);
+        assertEquals(ring[0][0], ring[ring.length - 1][0], 0);
+        assertEquals(ring[0][1], ring[ring.length - 1][1], 0);
+        double previous = Double.NEGATIVE_INFINITY;
+        double x0 = GraphDB.projectToX(cg.lon(source), cg.lat(source));
+        double y0 = GraphDB.projectToY(cg.lon(source), cg.lat(source));
+        for (int i = 0; i + 1 < ring.length; i++) {
+            /* No point is farther than the budget, which no road can beat. */
+            double d = GraphDB.greatCircle(cg.lon(source), cg.lat(source), ring[i][0], ring[i][1]);
+            assertTrue(d <= miles + 1e-9);
+            /* Counterclockwise around the start. */
+            double angle = Math.atan2(GraphDB.projectToY(ring[i][0], ring[i][1]) - y0,
+                    GraphDB.projectToX(ring[i][0], ring[i][1]) - x0);
+            assertTrue(angle >= previous);
+            previous = angle;
+        }
+    }
+
+    @Test
+    public void testZeroBudget() {
+        CompactGraph cg = graph.getCompactGraph();
+        Isochrone reachable = Router.isochrone(graph, graph.getCostModel(CostModel.DISTANCE),
+                cg.lon(7), cg.lat(7), 0);
+        assertArrayEquals(new long[]{graph.closest(cg.lon(7), cg.lat(7))}, reachable.ids());
+        assertEquals(2, reachable.polygon().length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeBudget() {
+        Router.isochrone(graph, graph.getCostModel(CostModel.DISTANCE), -122.26, 37.87, -1);
+    }
+
+    private static void check(CostModel model, double budget) {
+        CompactGraph cg = graph.getCompactGraph();
+        Random random = new Random(17);
+        int source = random.nextInt(cg.size());
+        Isochrone reachable = Router.isochrone(graph, model, cg.lon(source), cg.lat(source),
+                budget);
+        long[] ids = reachable.ids();
+        double[] costs = reachable.costs();
+        assertEquals(ids.length, costs.length);
+        assertTrue(ids.length > 1 && ids.length < cg.size());
+        Map<Long, Double> costOf = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            assertTrue(costs[i] <= budget);
+            assertTrue(i == 0 || costs[i - 1] <= costs[i]);
+            costOf.put(ids[i], costs[i]);
+        }
+        assertEquals(ids.length, costOf.size());
+
+        double[] lons = new double[NUM_SAMPLES];
+        double[] lats = new double[NUM_SAMPLES];
+        int[] samples = new int[NUM_SAMPLES];
+        for (int j = 0; j < NUM_SAMPLES; j++) {
+            /* Half of the samples from the reachable set, half from anywhere. */
+            samples[j] = j % 2 == 0
+                    ? cg.indexOf(ids[random.nextInt(ids.length)]) : random.nextInt(cg.size());
+            lons[j] = cg.lon(samples[j]);
+            lats[j] = cg.lat(samples[j]);
+        }
+        double[][] exact = Router.distanceMatrix(graph, model,
+                new double[]{cg.lon(source)}, new double[]{cg.lat(source)}, lons, lats);
+        for (int j = 0; j < NUM_SAMPLES; j++) {
+            Double cost = costOf.get(cg.id(samples[j]));
+            assertEquals(exact[0][j] <= budget, cost != null);
+            if (cost != null) {
+                assertEquals(exact[0][j], cost, 1e-9);
+            }
+        }
+    }
+}
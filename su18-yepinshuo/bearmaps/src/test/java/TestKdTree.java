@@ -0,0 +1,189 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the nearest, k-nearest and radius queries on the spatial index against brute force
+ * over every vertex of the Berkeley graph.
+ */
+public class TestKdTree {
+    private static final String OSM_DB_PATH = "../library-su18/bearmaps/berkeley-2018.osm.xml";
+    private static final int NUM_TESTS = 50;
+    private static GraphDB graph;
+    private static List<Long> vertices;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new GraphDB(OSM_DB_PATH);
+        vertices = new ArrayList<>();
+        for (long v : graph.vertices()) {
+            vertices.add(v);
+        }
+        initialized = true;
+    }
+
+    @Test
+    public void testNearest() {
+        Random random = new Random(61);
+        KdTree tree = graph.getKdTree();
+        CompactGraph cg = graph.getCompactGraph();
+        for (int i = 0; i < NUM_TESTS; i++) {
+            double lon = randomLon(random);
+            double lat = randomLat(random);
+            double best = Double.POSITIVE_INFINITY;
+            for (int v = 0; v < cg.size(); v++) {
+                best = Math.min(best, GraphDB.distance2D(lon, lat, cg.lon(v), cg.lat(v)));
+            }
+            int actual = tree.nearest(lon, lat);
+            assertEquals(best, GraphDB.distance2D(lon, lat, cg.lon(actual), cg.lat(actual)), 1e-12);
+        }
+    }
+
+    @Test
+    public void testKNearest() {
+        Random random = new Random(61);
+        for (int i = 0; i < NUM_TESTS; i++) {
+            double lon = randomLon(random);
+            double lat = randomLat(random);
+            int k = 1 + random.nextInt(10);
+            List<Long> actual = graph.kNearest(lon, lat, k);
+            double[] distances = new double[vertices.size()];
+            for (int j = 0; j < distances.length; j++) {
+                long v = vertices.get(j);
+                distances[j] = GraphDB.distance2D(lon, lat, graph.lon(v), graph.lat(v));
+            }
+            Arrays.sort(distances);
+            assertEquals(k, actual.size());
+            assertEquals(graph.closest(lon, lat), (long) actual.get(0));
+            for (int j = 0; j < k; j++) {
+                long v = actual.get(j);
+                assertEquals(distances[j],
+                        GraphDB.distance2D(lon, lat, graph.lon(v), graph.lat(v)), 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void testWithinRadius() {
+        Random random = new Random(61);
+        for (int i = 0; i < NUM_TESTS; i++) {
+            double lon = randomLon(random);
+            double lat = randomLat(random);
+            double miles = random.nextDouble() * 0.5;
+            Set<Long> expected = new HashSet<>();
+            for (long v : vertices) {
+                if (GraphDB.greatCircle(lon, lat, graph.lon(v), graph.lat(v)) <= miles) {
+                    expected.add(v);
+                }
+            }
+            List<Long> actual = graph.withinRadius(lon, lat, miles);
+            assertEquals(expected.size(), actual.size());
+            assertEquals(expected, new HashSet<>(actual));
+        }
+    }
+
+    @Test
+    public void testBatchMatchesSingle() {
+        Random random = new Random(61);
+        double[] lons = new double[NUM_TESTS];
+        double[] lats = new double[NUM_TESTS];
+        for (int i = 0; i < NUM_TESTS; i++) {
+            lons[i] = randomLon(random);
+            lats[i] = randomLat(random);
+        }
+        long[] closest = graph.closest(lons, lats);
+        List<List<Long>> nearest = graph.kNearest(lons, lats, 5);
+        for (int i = 0; i < NUM_TESTS; i++) {
+            assertEquals(graph.closest(lons[i], lats[i]), closest[i]);
+            assertEquals(graph.kNearest(lons[i], lats[i], 5), nearest.get(i));
+        }
+    }
+
+    @Test
+    public void testKZero() {
+        assertEquals(0, graph.kNearest(-122.26, 37.87, 0).size());
+        List<List<Long>> batch = graph.kNearest(new double[]{-122.26, -122.25},
+                new double[]{37.87, 37.86}, 0);
+        assertEquals(2, batch.size());
+        assertEquals(0, batch.get(0).size());
+        assertEquals(0, batch.get(1).size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeK() {
+        graph.kNearest(-122.26, 37.87, -1);
+    }
+
+    /** Builds over enough random points that the build forks into parallel subtasks. */
+    @Test
+    public void testLargeBuild() {
+        int n = 50_000;
+        Random random = new Random(61);
+        double[] lons = new double[n];
+        double[] lats = new double[n];
+        long[] ids = new long[n];
+        for (int v = 0; v < n; v++) {
+            ids[v] = v;
+            lons[v] = randomLon(random);
+            lats[v] = randomLat(random);
+        }
+        CompactGraph cg = new CompactGraph(ids, lons, lats, new int[n + 1], new int[0],
+                new double[0]);
+        KdTree tree = new KdTree(cg);
+        assertEquals(n, tree.size());
+        /* Every point is in the tree. */
+        for (int v = 0; v < n; v++) {
+            int found = tree.nearest(lons[v], lats[v]);
+            assertEquals(0, GraphDB.distance2D(lons[v], lats[v], lons[found], lats[found]), 0);
+        }
+        for (int i = 0; i < NUM_TESTS; i++) {
+            double lon = randomLon(random);
+            double lat = randomLat(random);
+            double[] distances = new double[n];
+            for (int v = 0; v < n; v++) {
+                distances[v] = GraphDB.distance2D(lon, lat, lons[v], lats[v]);
+            }
+            Arrays.sort(distances);
+            int nearest = tree.nearest(lon, lat);
+            assertEquals(distances[0],
+                    GraphDB.distance2D(lon, lat, lons[nearest], lats[nearest]), 1e-12);
+            int[] k = tree.kNearest(lon, lat, 10);
+            assertEquals(10, k.length);
+            for (int j = 0; j < k.length; j++) {
+                assertEquals(distances[j],
+                        GraphDB.distance2D(lon, lat, lons[k[j]], lats[k[j]]), 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void testEmptyTree() {
+        CompactGraph empty = new CompactGraph(new long[0], new double[0], new double[0],
+                new int[]{0}, new int[0], new double[0]);
+        KdTree tree = new KdTree(empty);
+        assertEquals(0, tree.size());
+        assertEquals(-1, tree.nearest(-122.26, 37.87));
+        assertEquals(0, tree.kNearest(-122.26, 37.87, 3).length);
+        assertEquals(0, tree.withinRadius(-122.26, 37.87, 1).length);
+    }
+
+    private static double randomLon(Random random) {
+        return MapServer.ROOT_ULLON + random.nextDouble() * MapServer.ROOT_LON_DELTA;
+    }
+
+    private static double randomLat(Random random) {
+        return MapServer.ROOT_LRLAT + random.nextDouble() * MapServer.ROOT_LAT_DELTA;
+    }
+}
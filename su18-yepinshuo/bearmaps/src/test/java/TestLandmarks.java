@@ -0,0 +1,169 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that ALT landmark bounds never overestimate, that A* with them finds routes as cheap as
+ * plain A* while settling fewer vertices, and that saved landmarks are read back.
+ */
+public class TestLandmarks {
+    private static final String OSM_DB_PATH = "../library-su18/bearmaps/berkeley-2018.osm.xml";
+    private static final int NUM_LANDMARKS = 8;
+    private static final int NUM_QUERIES = 100;
+    private static GraphDB plain;
+    private static GraphDB alt;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        plain = new GraphDB(OSM_DB_PATH);
+        alt = new GraphDB(OSM_DB_PATH);
+        alt.prepareLandmarks(alt.getCostModel(CostModel.DISTANCE), NUM_LANDMARKS);
+        alt.prepareLandmarks(alt.getCostModel(CostModel.TRAVEL_TIME), NUM_LANDMARKS);
+        initialized = true;
+    }
+
+    @Test
+    public void testSameCostsFewerSettled() {
+        check(CostModel.DISTANCE);
+        check(CostModel.TRAVEL_TIME);
+    }
+
+    @Test
+    public void testLowerBound() {
+        CompactGraph cg = alt.getCompactGraph();
+        CostModel model = alt.getCostModel(CostModel.TRAVEL_TIME);
+        Landmarks landmarks = alt.getLandmarks(model);
+        assertEquals(NUM_LANDMARKS, landmarks.size());
+        Random random = new Random(23);
+        double[] lons = new double[10];
+        double[] lats = new double[10];
+        int[] vertices = new int[10];
+        for (int i = 0; i < vertices.length; i++) {
+            vertices[i] = random.nextInt(cg.size());
+            lons[i] = cg.lon(vertices[i]);
+            lats[i] = cg.lat(vertices[i]);
+        }
+        double[][] exact = Router.distanceMatrix(alt, model, lons, lats, lons, lats);
+        for (int i = 0; i < vertices.length; i++) {
+            for (int j = 0; j < vertices.length; j++) {
+                assertTrue(landmarks.lowerBound(vertices[i], vertices[j]) <= exact[i][j]);
+            }
+            assertEquals(0, landmarks.lowerBound(vertices[i], vertices[i]), 0);
+        }
+        for (int i = 0; i < landmarks.size(); i++) {
+            int l = landmarks.vertex(i);
+            assertEquals(0, landmarks.lowerBound(l, l), 0);
+        }
+    }
+
+    @Test
+    public void testReadBack() throws Exception {
+        CompactGraph cg = alt.getCompactGraph();
+        CostModel distance = alt.getCostModel(CostModel.DISTANCE);
+        CostModel time = alt.getCostModel(CostModel.TRAVEL_TIME);
+        File file = File.createTempFile("landmarks", ".alt");
+        try {
+            alt.getLandmarks(distance).write(file);
+            Landmarks read = Landmarks.read(file, cg, distance, NUM_LANDMARKS);
+            assertNotNull(read);
+            Landmarks built = alt.getLandmarks(distance);
+            Random random = new Random(5);
+            for (int q = 0; q < 1000; q++) {
+                int v = random.nextInt(cg.size());
+                int t = random.nextInt(cg.size());
+                assertEquals(built.lowerBound(v, t), read.lowerBound(v, t), 0);
+            }
+            assertNull(Landmarks.read(file, cg, time, NUM_LANDMARKS));
+            assertNull(Landmarks.read(file, cg, distance, NUM_LANDMARKS / 2));
+            assertNull(Landmarks.read(new File(file.getPath() + ".missing"), cg, distance,
+                    NUM_LANDMARKS));
+            long length = file.length();
+            for (long cut : new long[]{length - 1, length / 2, 20, 0}) {
+                try (RandomAccessFile truncated = new RandomAccessFile(file, "rw")) {
+                    truncated.setLength(cut);
+                }
+                assertNull(Landmarks.read(file, cg, distance, NUM_LANDMARKS));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testSavedLandmarksFollowK() throws Exception {
+        GraphDB g = new GraphDB("../library-su18/bearmaps/tiny-clean.osm.xml");
+        CostModel model = g.getCostModel(CostModel.DISTANCE);
+        File file = File.createTempFile("landmarks", ".alt");
+        try {
+            g.prepareLandmarks(model, 2, file.getPath());
+            assertEquals(2, g.getLandmarks(model).size());
+            g.prepareLandmarks(model, 3, file.getPath());
+            assertEquals(3, g.getLandmarks(model).size());
+            /* More landmarks than vertices: all of them are chosen, and read back next time. */
+            int k = 2 * g.getCompactGraph().size();
+            g.prepareLandmarks(model, k, file.getPath());
+            assertNotNull(Landmarks.read(file, g.getCompactGraph(), model, k));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testReplacedProfileIsIgnored() {
+        GraphDB g = new GraphDB("../library-su18/bearmaps/tiny-clean.osm.xml");
+        CostModel model = CostModel.of("hops", g, (e, length, attributes) -> 1);
+        g.addCostModel(model);
+        g.prepareLandmarks(model, 2);
+        assertNotNull(g.getLandmarks(model));
+        CostModel replaced = CostModel.of("hops", g, (e, length, attributes) -> 2);
+        g.addCostModel(replaced);
+        assertNull(g.getLandmarks(replaced));
+    }
+
+    private static void check(String profile) {
+        CompactGraph cg = alt.getCompactGraph();
+        CostModel plainModel = plain.getCostModel(profile);
+        CostModel altModel = alt.getCostModel(profile);
+        Random random = new Random(61);
+        long plainSettled = 0;
+        long altSettled = 0;
+        for (int q = 0; q < NUM_QUERIES; q++) {
+            int s = random.nextInt(cg.size());
+            int t = random.nextInt(cg.size());
+            long before = Metrics.SETTLED_NODES.sum();
+            List<Long> expected = Router.shortestPath(plain, plainModel,
+                    cg.lon(s), cg.lat(s), cg.lon(t), cg.lat(t));
+            plainSettled += Metrics.SETTLED_NODES.sum() - before;
+            before = Metrics.SETTLED_NODES.sum();
+            List<Long> actual = Router.shortestPath(alt, altModel,
+                    cg.lon(s), cg.lat(s), cg.lon(t), cg.lat(t));
+            altSettled += Metrics.SETTLED_NODES.sum() - before;
+            assertEquals(expected.isEmpty(), actual.isEmpty());
+            double expectedCost = cost(cg, altModel, expected);
+            assertEquals(expectedCost, cost(cg, altModel, actual), 1e-9 * (1 + expectedCost));
+        }
+        assertTrue(profile + ": " + altSettled + " vs " + plainSettled,
+                2 * altSettled < plainSettled);
+    }
+
+    private static double cost(CompactGraph cg, CostModel model, List<Long> path) {
+        double total = 0;
+        for (int k = 0; k + 1 < path.size(); k++) {
+            total += model.cost(cg.edge(cg.indexOf(path.get(k)), cg.indexOf(path.get(k + 1))));
+        }
+        return total;
+    }
+}
@@ -0,0 +1,95 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests autocomplete and exact lookup on a handful of made-up locations.
+ */
+public class TestLocationIndex {
+    private LocationIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        String[] names = {"Peet's Coffee", "Top Dog", "Peet's Coffee", "Peets Coffee",
+            "Top Dog", "Peet's Coffee", "Pegasus Books", "Tops", "Sather Gate"};
+        long[] ids = new long[names.length];
+        double[] lons = new double[names.length];
+        double[] lats = new double[names.length];
+        for (int i = 0; i < names.length; i++) {
+            ids[i] = 100 + i;
+            lons[i] = -122.25 - i * 0.001;
+            lats[i] = 37.87 + i * 0.001;
+        }
+        index = new LocationIndex(ids, lons, lats, names);
+    }
+
+    @Test
+    public void testCompleteRanksByWeight() {
+        List<String> expected = new ArrayList<>();
+        expected.add("Peet's Coffee");
+        expected.add("Peets Coffee");
+        expected.add("Pegasus Books");
+        assertEquals(expected, index.complete("pe", 10));
+
+        expected.clear();
+        expected.add("Peet's Coffee");
+        assertEquals(expected, index.complete("P", 1));
+    }
+
+    @Test
+    public void testCompleteIgnoresCaseAndPunctuation() {
+        assertEquals(index.complete("peets", 10), index.complete("PEET'S", 10));
+        assertEquals(2, index.complete("peets c", 10).size());
+        assertEquals(0, index.complete("peetsx", 10).size());
+        assertEquals(0, index.complete(null, 10).size());
+        assertEquals(0, index.lookup(null).size());
+    }
+
+    @Test
+    public void testCompleteMatchesCursor() {
+        /* Prefixes of two users typing on the same thread, interleaved. */
+        String[] prefixes = {"t", "p", "to", "pe", "top", "pee", "tops", "", "x", "peets coffee"};
+        for (String prefix : prefixes) {
+            LocationIndex.Cursor c = index.cursor();
+            for (int i = 0; i < prefix.length(); i++) {
+                c = c.extend(prefix.charAt(i));
+            }
+            assertEquals(prefix, c.top(10), index.complete(prefix, 10));
+        }
+    }
+
+    @Test
+    public void testCursorExtension() {
+        LocationIndex.Cursor c = index.cursor();
+        assertEquals(6, c.count());
+        c = c.extend('T').extend('o').extend('p');
+        assertEquals(2, c.count());
+        assertEquals("Top Dog", c.top(1).get(0));
+        c = c.extend('s');
+        assertEquals(1, c.count());
+        assertEquals("Tops", c.top(5).get(0));
+        assertEquals(0, c.extend('x').count());
+    }
+
+    @Test
+    public void testLookup() {
+        List<LocationParams> actual = index.lookup("peets coffee");
+        assertEquals(4, actual.size());
+        HashSet<Long> ids = new HashSet<>();
+        for (LocationParams p : actual) {
+            ids.add(p.id);
+        }
+        HashSet<Long> expected = new HashSet<>();
+        expected.add(100L);
+        expected.add(102L);
+        expected.add(103L);
+        expected.add(105L);
+        assertEquals(expected, ids);
+        assertEquals(0, index.lookup("peet").size());
+    }
+}
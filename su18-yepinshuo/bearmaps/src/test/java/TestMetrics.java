@@ -0,0 +1,66 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the histogram buckets and the Prometheus text written by <code>Metrics</code>.
+ */
+public class TestMetrics {
+    private static final String TINY_DB_PATH = "../library-su18/bearmaps/tiny-clean.osm.xml";
+    private static GraphDB tiny;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        tiny = new GraphDB(TINY_DB_PATH);
+        initialized = true;
+    }
+
+    @Test
+    public void testHistogram() {
+        Metrics.Histogram h = new Metrics.Histogram(1, 1 << 10);
+        assertEquals(0, h.quantile(0.5));
+        for (int i = 1; i <= 100; i++) {
+            h.record(i);
+        }
+        h.record(1 << 20);
+        assertEquals(101, h.count());
+        assertEquals(5050 + (1 << 20), h.sum());
+        /* The 50th value is 50, whose bucket runs up to 64. */
+        assertEquals(64, h.quantile(0.5));
+        assertEquals(1, h.quantile(0));
+        assertEquals(Long.MAX_VALUE, h.quantile(1));
+        long q = h.quantile(0.9);
+        assertTrue(q >= 90 && q <= 90 * 3 / 2);
+    }
+
+    @Test
+    public void testPrometheus() {
+        Metrics.record(Metrics.Stage.SEARCH, Metrics.start());
+        Metrics.counter("bearmaps_test_total", "A test counter.", () -> 42);
+        Metrics.counter("bearmaps_test_total", "A test counter.", () -> 43);
+
+        long settled = Metrics.SETTLED_NODES.count();
+        CompactGraph cg = tiny.getCompactGraph();
+        Router.shortestPath(tiny, cg.lon(0), cg.lat(0), cg.lon(cg.size() - 1),
+                cg.lat(cg.size() - 1));
+        assertEquals(settled + 1, Metrics.SETTLED_NODES.count());
+
+        String text = Metrics.prometheus();
+        assertTrue(text.contains("# TYPE bearmaps_stage_seconds histogram\n"));
+        assertTrue(text.contains("\nbearmaps_stage_seconds_bucket{stage=\"search\",le=\"+Inf\"} "));
+        assertTrue(text.contains("\nbearmaps_stage_seconds_count{stage=\"search\"} "));
+        assertTrue(text.contains("\nbearmaps_route_settled_nodes_count " + (settled + 1) + "\n"));
+        assertTrue(text.contains("\nbearmaps_test_total 43\n"));
+        assertEquals(text.indexOf("bearmaps_test_total 4"),
+                text.lastIndexOf("bearmaps_test_total 4"));
+        for (String line : text.split("\n")) {
+            assertTrue(line, line.startsWith("# ") || line.matches("[a-z_]+(\\{.*\\})? \\S+"));
+        }
+    }
+}
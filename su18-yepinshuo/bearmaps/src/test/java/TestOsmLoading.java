@@ -0,0 +1,168 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the streaming OSM parser on hand-written XML, and that the streaming and two-pass
+ * loaders build the same graph as the SAX loader on the Berkeley data.
+ */
+public class TestOsmLoading {
+    private static final String OSM_DB_PATH = "../library-su18/bearmaps/berkeley-2018.osm.xml";
+    private static GraphDB sax;
+    private static GraphDB streaming;
+    private static GraphDB twoPass;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        sax = new GraphDB(OSM_DB_PATH, GraphDB.LoadMode.SAX);
+        streaming = new GraphDB(OSM_DB_PATH, GraphDB.LoadMode.STREAMING);
+        twoPass = new GraphDB(OSM_DB_PATH, GraphDB.LoadMode.TWO_PASS);
+        initialized = true;
+    }
+
+    private static final String XML = "<?xml version='1.0' encoding='UTF-8'?>\n"
+            + "<osm version=\"0.6\">\n"
+            + " <!-- a <comment> with \"quotes\" -->\n"
+            + " <node id=\"53085973\" lat=\"37.8702971\" lon=\"-122.2590814\">\n"
+            + "  <tag k=\"name\" v=\"Caf&#233; &amp; &quot;Bar&quot; &gt; 1\"/>\n"
+            + " </node>\n"
+            + " <node id='-7' lat='1e-3' lon='-0.0'/>\n"
+            + " <way id=\"12\"><nd ref=\"53085973\"/><tag k=\"highway\" v=\"a>b\"/></way>\n"
+            + " <![CDATA[ <node id=\"99\"/> ]]>\n"
+            + "</osm>\n";
+
+    /** Returns one byte per read, so every tag straddles a buffer refill. */
+    private static InputStream trickle(String xml) {
+        return new FilterInputStream(
+                new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        };
+    }
+
+    @Test
+    public void testReader() throws Exception {
+        byte[] id = OsmReader.bytes("id");
+        byte[] lat = OsmReader.bytes("lat");
+        byte[] lon = OsmReader.bytes("lon");
+        byte[] v = OsmReader.bytes("v");
+        try (OsmReader reader = new OsmReader(trickle(XML))) {
+            assertEquals(OsmReader.START, reader.next());
+            assertEquals(OsmReader.OTHER, reader.element());
+
+            assertEquals(OsmReader.START, reader.next());
+            assertEquals(OsmReader.NODE, reader.element());
+            assertEquals(53085973L, reader.longValue(id));
+            assertEquals(Double.doubleToLongBits(37.8702971),
+                    Double.doubleToLongBits(reader.doubleValue(lat)));
+            assertEquals(Double.doubleToLongBits(-122.2590814),
+                    Double.doubleToLongBits(reader.doubleValue(lon)));
+
+            assertEquals(OsmReader.START, reader.next());
+            assertEquals(OsmReader.TAG, reader.element());
+            assertTrue(reader.valueEquals(OsmReader.bytes("k"), OsmReader.bytes("name")));
+            assertEquals("Caf\u00e9 & \"Bar\" > 1", reader.value(v));
+            assertEquals(OsmReader.END, reader.next());
+            assertEquals(OsmReader.END, reader.next());
+            assertEquals(OsmReader.NODE, reader.element());
+
+            assertEquals(OsmReader.START, reader.next());
+            assertEquals(-7L, reader.longValue(id));
+            assertEquals(0.001, reader.doubleValue(lat), 0);
+            assertEquals(Double.doubleToLongBits(-0.0),
+                    Double.doubleToLongBits(reader.doubleValue(lon)));
+            assertFalse(reader.hasAttribute(v));
+            assertEquals(OsmReader.END, reader.next());
+
+            assertEquals(OsmReader.START, reader.next());
+            assertEquals(OsmReader.WAY, reader.element());
+            assertEquals(OsmReader.START, reader.next());
+            assertEquals(OsmReader.ND, reader.element());
+            assertEquals(OsmReader.END, reader.next());
+            assertEquals(OsmReader.START, reader.next());
+            assertEquals("a>b", reader.value(v));
+            assertEquals(OsmReader.END, reader.next());
+            assertEquals(OsmReader.END, reader.next());
+            assertEquals(OsmReader.WAY, reader.element());
+
+            assertEquals(OsmReader.END, reader.next());
+            assertEquals(OsmReader.OTHER, reader.element());
+            assertEquals(OsmReader.END_OF_INPUT, reader.next());
+        }
+    }
+
+    @Test
+    public void testParseDoubleMatchesJdk() {
+        String[] values = {"0", "-0.5", "37.8702971", "-122.2590814", "123456789.123456789",
+            "0.1", "1.7976931348623157E308", "4.9e-324", "9007199254740993", ".25", "7."};
+        for (String s : values) {
+            byte[] b = s.getBytes(StandardCharsets.US_ASCII);
+            assertEquals(s, Double.doubleToLongBits(Double.parseDouble(s)),
+                    Double.doubleToLongBits(OsmReader.parseDouble(b, 0, b.length)));
+        }
+    }
+
+    @Test
+    public void testSameGraphAsSax() {
+        CompactGraph expected = sax.getCompactGraph();
+        CompactGraph actual = streaming.getCompactGraph();
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.edgeCount(), actual.edgeCount());
+        for (long id : sax.vertices()) {
+            assertEquals(sax.lon(id), streaming.lon(id), 0);
+            assertEquals(sax.lat(id), streaming.lat(id), 0);
+            assertEquals(neighbors(sax, id), neighbors(streaming, id));
+        }
+        assertEquals(sax.geteMap().keySet(), streaming.geteMap().keySet());
+        assertEquals(sax.getLocationIndex().size(), streaming.getLocationIndex().size());
+    }
+
+    @Test
+    public void testTwoPassKeepsOnlyRoads() {
+        assertEquals(streaming.getCompactGraph().size(), twoPass.getCompactGraph().size());
+        assertEquals(streaming.getCompactGraph().edgeCount(),
+                twoPass.getCompactGraph().edgeCount());
+        for (long id : streaming.vertices()) {
+            assertEquals(streaming.lon(id), twoPass.lon(id), 0);
+            assertEquals(streaming.lat(id), twoPass.lat(id), 0);
+            assertEquals(neighbors(streaming, id), neighbors(twoPass, id));
+        }
+        assertEquals(streaming.getLocationIndex().size(), twoPass.getLocationIndex().size());
+
+        EdgeAttributes attributes = twoPass.getEdgeAttributes();
+        Set<Long> roads = new HashSet<>();
+        for (int e = 0; e < attributes.size(); e++) {
+            roads.add(attributes.wayId(e));
+        }
+        assertTrue(streaming.geteMap().keySet().containsAll(twoPass.geteMap().keySet()));
+        for (GraphDB.Edge way : twoPass.geteMap().values()) {
+            assertTrue("Way " + way.id + " is not a road", way.highway != null);
+        }
+        assertTrue(twoPass.geteMap().keySet().containsAll(roads));
+    }
+
+    private static Set<Long> neighbors(GraphDB g, long v) {
+        Set<Long> result = new HashSet<>();
+        for (long w : g.adjacent(v)) {
+            result.add(w);
+        }
+        return result;
+    }
+}
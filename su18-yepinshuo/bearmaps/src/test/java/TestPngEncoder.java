@@ -0,0 +1,67 @@
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that streamed PNG and Base64 output decodes back to the image at every compression level.
+ */
+public class TestPngEncoder {
+    @Test
+    public void testRoundTrip() throws Exception {
+        BufferedImage img = randomImage(300, 200);
+        for (int level = 0; level <= 9; level++) {
+            PngEncoder encoder = new PngEncoder(level);
+            ByteArrayOutputStream png = new ByteArrayOutputStream();
+            encoder.write(img, png);
+            assertSamePixels(img, ImageIO.read(new ByteArrayInputStream(png.toByteArray())));
+
+            ByteArrayOutputStream b64 = new ByteArrayOutputStream();
+            encoder.writeBase64(img, b64);
+            byte[] decoded = Base64.getDecoder().decode(b64.toByteArray());
+            assertSamePixels(img, ImageIO.read(new ByteArrayInputStream(decoded)));
+        }
+    }
+
+    @Test
+    public void testLevelsShrinkOutput() throws Exception {
+        BufferedImage img = new BufferedImage(512, 512, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream stored = new ByteArrayOutputStream();
+        new PngEncoder(0).write(img, stored);
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+        new PngEncoder(9).write(img, deflated);
+        assertEquals(true, deflated.size() < stored.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsBadLevel() {
+        new PngEncoder(10);
+    }
+
+    private static BufferedImage randomImage(int width, int height) {
+        Random random = new Random(61);
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                img.setRGB(x, y, (x * 7 + y * 3) % 64 == 0 ? random.nextInt() : x * y);
+            }
+        }
+        return img;
+    }
+
+    private static void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+}
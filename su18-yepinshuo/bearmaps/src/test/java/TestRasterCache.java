@@ -0,0 +1,89 @@
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests that raster results sharing a tile rectangle and route share a cache entry, and that
+ * replaced routes are invalidated.
+ */
+public class TestRasterCache {
+    private final Rasterer rasterer = new Rasterer();
+
+    private RasterResultParams raster(double ullon, double ullat, double lrlon, double lrlat,
+                                      double w, double h) {
+        return rasterer.getMapRaster(new RasterRequestParams.Builder()
+                .setUllon(ullon).setUllat(ullat).setLrlon(lrlon).setLrlat(lrlat)
+                .setW(w).setH(h).create());
+    }
+
+    @Test
+    public void testSameGridHits() {
+        RasterCache cache = new RasterCache(1 << 20);
+        RasterResultParams a = raster(-122.2410, 37.8700, -122.2300, 37.8620, 892, 875);
+        RasterResultParams b = raster(-122.2409, 37.8699, -122.2301, 37.8621, 892, 875);
+        assertEquals(a.depth, b.depth);
+        RasterCache.Entry entry = new RasterCache.Entry(768, 768, new byte[100]);
+        assertNull(cache.get(a, 0));
+        cache.put(a, 0, entry);
+        assertSame(entry, cache.get(b, 0));
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+
+        RasterResultParams other = raster(-122.2700, 37.8800, -122.2590, 37.8720, 892, 875);
+        assertNull(cache.get(other, 0));
+    }
+
+    @Test
+    public void testInvalidate() {
+        RasterCache cache = new RasterCache(1 << 20);
+        RasterResultParams a = raster(-122.2410, 37.8700, -122.2300, 37.8620, 892, 875);
+        cache.put(a, 0, new RasterCache.Entry(768, 768, new byte[100]));
+        cache.put(a, 7, new RasterCache.Entry(768, 768, new byte[100]));
+        cache.put(a, 8, new RasterCache.Entry(768, 768, new byte[100]));
+        assertNull(cache.get(a, 9));
+        cache.invalidate(7);
+        assertNull(cache.get(a, 7));
+        assertEquals(2, cache.size());
+        assertEquals(200, cache.bytes());
+
+        /* Rasters without a route are shared and never invalidated. */
+        cache.invalidate(0);
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testRenderOfReplacedRouteIsNotStored() {
+        RasterCache cache = new RasterCache(1 << 20);
+        RasterResultParams a = raster(-122.2410, 37.8700, -122.2300, 37.8620, 892, 875);
+        /* A render of route 7 misses, then the route is replaced while it is being drawn. */
+        assertNull(cache.get(a, 7));
+        cache.invalidate(7);
+        cache.put(a, 7, new RasterCache.Entry(768, 768, new byte[100]));
+        assertNull(cache.get(a, 7));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.bytes());
+
+        /* Other routes and rasters without a route are still stored. */
+        cache.put(a, 8, new RasterCache.Entry(768, 768, new byte[100]));
+        cache.invalidate(0);
+        cache.put(a, 0, new RasterCache.Entry(768, 768, new byte[100]));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testEviction() {
+        RasterCache cache = new RasterCache(250);
+        RasterResultParams a = raster(-122.2410, 37.8700, -122.2300, 37.8620, 892, 875);
+        RasterResultParams b = raster(-122.2700, 37.8800, -122.2590, 37.8720, 892, 875);
+        RasterResultParams c = raster(-122.2600, 37.8500, -122.2490, 37.8420, 892, 875);
+        cache.put(a, 0, new RasterCache.Entry(1, 1, new byte[100]));
+        cache.put(b, 0, new RasterCache.Entry(1, 1, new byte[100]));
+        cache.get(a, 0);
+        cache.put(c, 0, new RasterCache.Entry(1, 1, new byte[100]));
+        assertEquals(2, cache.size());
+        assertEquals(200, cache.bytes());
+        assertNull(cache.get(b, 0));
+    }
+}
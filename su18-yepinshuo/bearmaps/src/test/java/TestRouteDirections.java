@@ -0,0 +1,123 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks <code>Router.routeDirections</code> on a hand-written graph: Main Street runs north
+ * through vertices 1, 2 and 3, and from vertex 3 a short branch leaves at each of several
+ * angles from north, each branch a way named after its angle.
+ */
+public class TestRouteDirections {
+    private static final double LON = -122.26;
+    private static final double LAT = 37.87;
+    /** Angles of the branches, clockwise from north; the last branch has no name. */
+    private static final int[] ANGLES = {10, -10, 25, -25, 60, -60, 150, -150, 90};
+    private static GraphDB graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        StringBuilder xml = new StringBuilder("<?xml version='1.0' encoding='UTF-8'?>\n"
+                + "<osm version=\"0.6\">\n");
+        node(xml, 1, LON, LAT - 0.002);
+        node(xml, 2, LON, LAT - 0.001);
+        node(xml, 3, LON, LAT);
+        for (int i = 0; i < ANGLES.length; i++) {
+            double angle = Math.toRadians(ANGLES[i]);
+            node(xml, 10 + i, LON + 0.0005 * Math.sin(angle) / Math.cos(Math.toRadians(LAT)),
+                    LAT + 0.0005 * Math.cos(angle));
+        }
+        way(xml, 100, "Main Street", 1, 2, 3);
+        for (int i = 0; i < ANGLES.length; i++) {
+            way(xml, 110 + i, i == ANGLES.length - 1 ? null : "Branch " + ANGLES[i], 3, 10 + i);
+        }
+        xml.append("</osm>\n");
+        File file = File.createTempFile("directions", ".osm.xml");
+        file.deleteOnExit();
+        Files.write(file.toPath(), xml.toString().getBytes(StandardCharsets.UTF_8));
+        graph = new GraphDB(file.getPath());
+        initialized = true;
+    }
+
+    /** Segments of one way are merged into a single direction with their total length. */
+    @Test
+    public void testSameWayMerges() {
+        List<Router.NavigationDirection> directions = directions(1, 2, 3);
+        assertEquals(1, directions.size());
+        assertEquals(Router.NavigationDirection.START, directions.get(0).direction);
+        assertEquals("Main Street", directions.get(0).way);
+        assertEquals(graph.distance(1, 2) + graph.distance(2, 3), directions.get(0).distance,
+                1e-12);
+        assertEquals(0, directions(1).size());
+    }
+
+    @Test
+    public void testTurnBands() {
+        int[] expected = {Router.NavigationDirection.STRAIGHT,
+            Router.NavigationDirection.STRAIGHT,
+            Router.NavigationDirection.SLIGHT_RIGHT,
+            Router.NavigationDirection.SLIGHT_LEFT,
+            Router.NavigationDirection.RIGHT,
+            Router.NavigationDirection.LEFT,
+            Router.NavigationDirection.SHARP_RIGHT,
+            Router.NavigationDirection.SHARP_LEFT};
+        for (int i = 0; i < expected.length; i++) {
+            List<Router.NavigationDirection> directions = directions(1, 2, 3, 10 + i);
+            assertEquals(2, directions.size());
+            Router.NavigationDirection turn = directions.get(1);
+            assertEquals("Branch " + ANGLES[i], expected[i], turn.direction);
+            assertEquals("Branch " + ANGLES[i], turn.way);
+            assertEquals(graph.distance(3, 10 + i), turn.distance, 1e-12);
+        }
+    }
+
+    @Test
+    public void testUnknownRoad() {
+        int unnamed = 10 + ANGLES.length - 1;
+        List<Router.NavigationDirection> directions = directions(2, 3, unnamed);
+        assertEquals(2, directions.size());
+        assertEquals(Router.NavigationDirection.RIGHT, directions.get(1).direction);
+        assertEquals("unknown road", directions.get(1).way);
+        /* Vertices 1 and 3 are not joined by a segment, so there is no way to name. */
+        directions = directions(1, 3);
+        assertEquals(1, directions.size());
+        assertEquals("unknown road", directions.get(0).way);
+        assertEquals(graph.distance(1, 3), directions.get(0).distance, 1e-12);
+    }
+
+    private static List<Router.NavigationDirection> directions(long... ids) {
+        List<Long> route = new ArrayList<>();
+        for (long id : ids) {
+            route.add(id);
+        }
+        return Router.routeDirections(graph, route);
+    }
+
+    private static void node(StringBuilder xml, long id, double lon, double lat) {
+        xml.append(String.format(Locale.ROOT, "<node id=\"%d\" lat=\"%.7f\" lon=\"%.7f\"/>\n",
+                id, lat, lon));
+    }
+
+    private static void way(StringBuilder xml, long id, String name, long... refs) {
+        xml.append("<way id=\"").append(id).append("\">\n");
+        for (long ref : refs) {
+            xml.append("<nd ref=\"").append(ref).append("\"/>\n");
+        }
+        xml.append("<tag k=\"highway\" v=\"residential\"/>\n");
+        if (name != null) {
+            xml.append("<tag k=\"name\" v=\"").append(name).append("\"/>\n");
+        }
+        xml.append("</way>\n");
+    }
+}
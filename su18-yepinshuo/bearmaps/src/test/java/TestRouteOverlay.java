@@ -0,0 +1,111 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests the projection of routes into root pixels and the overlay tiles drawn from it.
+ */
+public class TestRouteOverlay {
+    private static final String OSM_DB_PATH = "../library-su18/bearmaps/berkeley-2018.osm.xml";
+    private static GraphDB graph;
+    private static RouteOverlay overlay;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new GraphDB(OSM_DB_PATH);
+        List<Long> route = Router.shortestPath(graph, -122.2680, 37.8700, -122.2540, 37.8610);
+        overlay = RouteOverlay.of(graph, route);
+        initialized = true;
+    }
+
+    @Test
+    public void testProjection() {
+        assertEquals(false, overlay.isEmpty());
+        for (int i = 0; i < overlay.size(); i++) {
+            long v = overlay.route().get(i);
+            assertEquals(graph.lon(v), MapServer.ROOT_ULLON
+                    + overlay.x(i) / MapServer.TILE_SIZE * MapServer.ROOT_LON_DELTA, 1e-9);
+            assertEquals(graph.lat(v), MapServer.ROOT_ULLAT
+                    - overlay.y(i) / MapServer.TILE_SIZE * MapServer.ROOT_LAT_DELTA, 1e-9);
+        }
+        assertEquals(false, overlay.id() == RouteOverlay.of(graph, overlay.route()).id());
+        assertSame(RouteOverlay.EMPTY, RouteOverlay.of(graph, new ArrayList<>()));
+    }
+
+    @Test
+    public void testTilesFollowRoute() {
+        for (int depth = 0; depth <= Rasterer.MAX_DEPTH; depth++) {
+            int scale = 1 << depth;
+            for (int i = 0; i < overlay.size(); i++) {
+                double px = overlay.x(i) * scale;
+                double py = overlay.y(i) * scale;
+                int tx = (int) (px / MapServer.TILE_SIZE);
+                int ty = (int) (py / MapServer.TILE_SIZE);
+                BufferedImage tile = overlay.tile(depth, tx, ty);
+                assertNotNull(tile);
+                int x = (int) px - tx * MapServer.TILE_SIZE;
+                int y = (int) py - ty * MapServer.TILE_SIZE;
+                assertEquals(true, (tile.getRGB(x, y) >>> 24) != 0);
+            }
+        }
+        assertNull(RouteOverlay.EMPTY.tile(3, 0, 0));
+        int tx = (int) (overlay.x(0) / MapServer.TILE_SIZE);
+        int ty = (int) (overlay.y(0) / MapServer.TILE_SIZE);
+        assertSame(overlay.tile(0, tx, ty), overlay.tile(0, tx, ty));
+    }
+
+    @Test
+    public void testTilesAwayFromRouteAreEmpty() {
+        int depth = Rasterer.MAX_DEPTH;
+        int scale = 1 << depth;
+        int tx = (int) (overlay.x(0) * scale / MapServer.TILE_SIZE);
+        int ty = (int) (overlay.y(0) * scale / MapServer.TILE_SIZE);
+        int far = tx < scale / 2 ? scale - 1 : 0;
+        assertNull(overlay.tile(depth, far, ty));
+    }
+
+    /** The overlay is composed into each map tile by hand; it must match drawImage exactly. */
+    @Test
+    public void testCompositeMatchesDrawImage() {
+        int size = MapServer.TILE_SIZE;
+        Random random = new Random(61);
+        BufferedImage map = new BufferedImage(size, size, BufferedImage.TYPE_3BYTE_BGR);
+        BufferedImage route = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                map.setRGB(x, y, random.nextInt());
+                /* Mostly translucent, with some fully clear and fully opaque pixels. */
+                int alpha = random.nextInt(8) == 0 ? 255 * random.nextInt(2) : random.nextInt(256);
+                route.setRGB(x, y, (alpha << 24) | (random.nextInt() & 0xffffff));
+            }
+        }
+        BufferedImage expected = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Graphics g = expected.createGraphics();
+        g.drawImage(map, 0, 0, null);
+        g.drawImage(route, 0, 0, null);
+        g.dispose();
+
+        int[] pixels = new int[size * size];
+        MapServer.composite(pixels, map);
+        MapServer.composite(pixels, route);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                assertEquals(expected.getRGB(x, y), 0xff000000 | pixels[y * size + x]);
+            }
+        }
+    }
+}
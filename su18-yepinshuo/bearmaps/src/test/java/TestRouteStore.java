@@ -0,0 +1,82 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests session isolation, time to live and size bounds of the route store on a fake clock.
+ */
+public class TestRouteStore {
+    private static final String OSM_DB_PATH = "../library-su18/bearmaps/tiny-clean.osm.xml";
+    private static final long MINUTE_NANOS = 60L * 1000 * 1000 * 1000;
+    private static GraphDB graph;
+    private static boolean initialized = false;
+
+    private long now;
+
+    private static RouteOverlay overlay() {
+        List<Long> route = new ArrayList<>();
+        for (long v : graph.vertices()) {
+            if (route.size() < 3) {
+                route.add(v);
+            }
+        }
+        return RouteOverlay.of(graph, route);
+    }
+
+    private static void setUpGraph() {
+        if (!initialized) {
+            graph = new GraphDB(OSM_DB_PATH);
+            initialized = true;
+        }
+    }
+
+    @Test
+    public void testSessionsAreSeparate() {
+        setUpGraph();
+        RouteStore store = new RouteStore(10, 60 * 1000, () -> now);
+        RouteOverlay a = overlay();
+        RouteOverlay b = overlay();
+        store.put("a", a);
+        store.put("b", b);
+        assertSame(a, store.get("a"));
+        assertSame(b, store.get("b"));
+        assertSame(RouteOverlay.EMPTY, store.get("c"));
+        assertSame(RouteOverlay.EMPTY, store.get(null));
+        assertSame(a, store.remove("a"));
+        assertSame(RouteOverlay.EMPTY, store.get("a"));
+        assertSame(b, store.get("b"));
+    }
+
+    @Test
+    public void testTimeToLive() {
+        setUpGraph();
+        RouteStore store = new RouteStore(10, 60 * 1000, () -> now);
+        RouteOverlay a = overlay();
+        store.put("a", a);
+        store.put("b", overlay());
+        now += MINUTE_NANOS / 2;
+        assertSame(a, store.get("a"));
+        now += MINUTE_NANOS * 3 / 4;
+        assertSame(a, store.get("a"));
+        assertSame(RouteOverlay.EMPTY, store.get("b"));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void testMaxSessions() {
+        setUpGraph();
+        RouteStore store = new RouteStore(2, 60 * 1000, () -> now);
+        RouteOverlay a = overlay();
+        store.put("a", a);
+        store.put("b", overlay());
+        store.get("a");
+        store.put("c", overlay());
+        assertEquals(2, store.size());
+        assertSame(a, store.get("a"));
+        assertSame(RouteOverlay.EMPTY, store.get("b"));
+    }
+}
@@ -0,0 +1,83 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that contraction hierarchy queries return the same routes as the A* tests in TestRouter.
+ */
+public class TestRouterCH {
+    private static final String PARAMS_FILE = "path_params.txt";
+    private static final String RESULTS_FILE = "path_results.txt";
+    private static final int NUM_TESTS = 8;
+    private static final String OSM_DB_PATH = "../library-su18/bearmaps/berkeley-2018.osm.xml";
+    private static GraphDB graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new GraphDB(OSM_DB_PATH);
+        graph.prepareContractionHierarchy();
+        initialized = true;
+    }
+
+    @Test
+    public void testShortestPathCH() throws Exception {
+        List<RouteRequestParams> testParams = paramsFromFile();
+        List<List<Long>> expectedResults = resultsFromFile();
+
+        for (int i = 0; i < NUM_TESTS; i++) {
+            System.out.println(String.format("Running test: %d", i));
+            RouteRequestParams params = testParams.get(i);
+            List<Long> actual = Router.shortestPathCH(graph,
+                    params.startLon, params.startLat, params.endLon, params.endLat);
+            List<Long> expected = expectedResults.get(i);
+            assertEquals("Your results did not match the expected results", expected, actual);
+        }
+    }
+
+    private List<RouteRequestParams> paramsFromFile() throws Exception {
+        List<String> lines = Files.readAllLines(Paths.get(PARAMS_FILE), Charset.defaultCharset());
+        List<RouteRequestParams> testParams = new ArrayList<>();
+        int lineIdx = 2; // ignore comment lines
+        for (int i = 0; i < NUM_TESTS; i++) {
+            RouteRequestParams params = new RouteRequestParams.Builder()
+                    .setStartLon(Double.parseDouble(lines.get(lineIdx)))
+                    .setStartLat(Double.parseDouble(lines.get(lineIdx + 1)))
+                    .setEndLon(Double.parseDouble(lines.get(lineIdx + 2)))
+                    .setEndLat(Double.parseDouble(lines.get(lineIdx + 3)))
+                    .create();
+            testParams.add(params);
+            lineIdx += 4;
+        }
+        return testParams;
+    }
+
+    private List<List<Long>> resultsFromFile() throws Exception {
+        List<String> lines = Files.readAllLines(Paths.get(RESULTS_FILE), Charset.defaultCharset());
+        List<List<Long>> expected = new ArrayList<>();
+        int lineIdx = 2; // ignore comment lines
+        for (int i = 0; i < NUM_TESTS; i++) {
+            int numVertices = Integer.parseInt(lines.get(lineIdx));
+            lineIdx++;
+            List<Long> path = new ArrayList<>();
+            for (int j = 0; j < numVertices; j++) {
+                path.add(Long.parseLong(lines.get(lineIdx)));
+                lineIdx++;
+            }
+            expected.add(path);
+        }
+        return expected;
+    }
+}
@@ -0,0 +1,139 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a reused <code>SearchContext</code> forgets the previous query, including when the
+ * epoch wraps, and that threads routing at once do not see each other's state.
+ */
+public class TestSearchContext {
+    private static final String TINY_DB_PATH = "../library-su18/bearmaps/tiny-clean.osm.xml";
+    private static GraphDB tiny;
+    private static boolean initialized = false;
+    private CompactGraph graph;
+
+    @Before
+    public void setUp() {
+        if (!initialized) {
+            tiny = new GraphDB(TINY_DB_PATH);
+            initialized = true;
+        }
+        graph = tiny.getCompactGraph();
+    }
+
+    @Test
+    public void testBeginForgetsQuery() {
+        SearchContext sc = new SearchContext(graph);
+        sc.begin();
+        sc.reach(0, 1.5, -1, 0.5);
+        sc.reach(1, 2.5, 0, 0);
+        sc.fringe().insert(1, 2.5);
+        sc.settle(0);
+        assertTrue(sc.isReached(0));
+        assertTrue(sc.isSettled(0));
+        assertEquals(1.5, sc.distTo(0), 0);
+        assertEquals(1, sc.settledCount());
+
+        sc.begin();
+        assertFalse(sc.isReached(0));
+        assertFalse(sc.isReached(1));
+        assertFalse(sc.isSettled(0));
+        assertEquals(Double.POSITIVE_INFINITY, sc.distTo(0), 0);
+        assertEquals(0, sc.settledCount());
+        assertTrue(sc.fringe().isEmpty());
+        assertFalse(sc.fringe().contains(1));
+        /* The fringe can take the same vertex again. */
+        sc.fringe().insert(1, 1);
+        assertEquals(1, sc.fringe().min());
+    }
+
+    @Test
+    public void testEpochWrap() {
+        SearchContext sc = new SearchContext(graph, Integer.MAX_VALUE - 2);
+        sc.begin();
+        sc.reach(0, 1, -1, 0);
+        sc.settle(0);
+        /* This begin would overflow the epoch, so it clears the stamps and starts again at 1. */
+        sc.begin();
+        assertFalse(sc.isReached(0));
+        assertFalse(sc.isSettled(0));
+        sc.reach(1, 2, -1, 0);
+        sc.settle(1);
+        assertTrue(sc.isReached(1));
+        assertTrue(sc.isSettled(1));
+        sc.begin();
+        assertFalse(sc.isReached(1));
+        assertFalse(sc.isSettled(1));
+        for (int v = 0; v < graph.size(); v++) {
+            assertEquals(Double.POSITIVE_INFINITY, sc.distTo(v), 0);
+        }
+    }
+
+    @Test
+    public void testAcquireReusesPerThread() throws Exception {
+        SearchContext first = SearchContext.acquire(graph);
+        first.reach(0, 1, -1, 0);
+        SearchContext second = SearchContext.acquire(graph);
+        assertSame(first, second);
+        assertFalse(second.isReached(0));
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            assertNotSame(first, pool.submit(() -> SearchContext.acquire(graph)).get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Routes the same pairs on two threads at once and compares with routing them alone. */
+    @Test
+    public void testConcurrentRouting() throws Exception {
+        int n = graph.size();
+        Random random = new Random(61);
+        int[][] pairs = new int[100][];
+        List<List<Long>> expected = new ArrayList<>();
+        for (int i = 0; i < pairs.length; i++) {
+            pairs[i] = new int[]{random.nextInt(n), random.nextInt(n)};
+            expected.add(route(pairs[i][0], pairs[i][1]));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int thread = 0; thread < 2; thread++) {
+                boolean reverse = thread == 1;
+                results.add(pool.submit((Callable<Boolean>) () -> {
+                    for (int round = 0; round < 5; round++) {
+                        for (int i = 0; i < pairs.length; i++) {
+                            int p = reverse ? pairs.length - 1 - i : i;
+                            if (!expected.get(p).equals(route(pairs[p][0], pairs[p][1]))) {
+                                return false;
+                            }
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private List<Long> route(int s, int t) {
+        return Router.shortestPath(tiny, graph.lon(s), graph.lat(s), graph.lon(t), graph.lat(t));
+    }
+}
@@ -0,0 +1,82 @@
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests eviction and the hit and miss counts of the tile cache with a loader that makes blank
+ * tiles instead of reading them from disk.
+ */
+public class TestTileCache {
+    /** Bytes in one blank 16 by 16 ARGB tile. */
+    private static final long TILE_BYTES = 16 * 16 * 4;
+
+    private final List<String> loaded = new ArrayList<>();
+
+    private BufferedImage load(String name) {
+        if (name.startsWith("missing")) {
+            return null;
+        }
+        loaded.add(name);
+        return new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        TileCache cache = new TileCache(10 * TILE_BYTES, this::load);
+        BufferedImage a = cache.get("d1_x0_y0.png");
+        assertSame(a, cache.get("d1_x0_y0.png"));
+        cache.get("d1_x1_y0.png");
+        assertEquals(1, cache.hits());
+        assertEquals(2, cache.misses());
+        assertEquals(2, loaded.size());
+        assertEquals(2 * TILE_BYTES, cache.bytes());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        TileCache cache = new TileCache(3 * TILE_BYTES, this::load);
+        cache.get("a");
+        cache.get("b");
+        cache.get("c");
+        cache.get("a");
+        cache.get("d");
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.evictions());
+        assertEquals(3 * TILE_BYTES, cache.bytes());
+
+        loaded.clear();
+        cache.get("a");
+        cache.get("c");
+        cache.get("d");
+        assertEquals(0, loaded.size());
+        cache.get("b");
+        assertEquals(1, loaded.size());
+    }
+
+    @Test
+    public void testMissingTile() {
+        TileCache cache = new TileCache(TILE_BYTES, this::load);
+        assertNull(cache.get("missing.png"));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    public void testLoaderPerGet() {
+        TileCache cache = new TileCache(2 * TILE_BYTES);
+        assertNull(cache.get("a"));
+        BufferedImage a = cache.get("a", this::load);
+        assertSame(a, cache.get("a"));
+        cache.get("b", this::load);
+        cache.get("c", this::load);
+        assertEquals(2, cache.size());
+        assertEquals(2 * TILE_BYTES, cache.bytes());
+        assertNull(cache.get("a"));
+    }
+}